@@ -15,12 +15,17 @@ import com.redpockets.gui.StorageGUI;
 import com.redpockets.listener.ChatClickListener;
 import com.redpockets.listener.ChatInputListener;
 import com.redpockets.listener.GUIListener;
+import com.redpockets.listener.PlayerLocationListener;
+import com.redpockets.listener.PlayerSessionListener;
 import com.redpockets.logging.PluginLogger;
+import com.redpockets.manager.BroadcastRouter;
 import com.redpockets.manager.ChatInputManager;
 import com.redpockets.manager.GUIManager;
 import com.redpockets.manager.ItemEditStorageManager;
 import com.redpockets.manager.ItemRedPocketPreviewManager;
+import com.redpockets.manager.PendingPayoutManager;
 import com.redpockets.manager.RedPocketManager;
+import com.redpockets.manager.StorageMailboxManager;
 import com.redpockets.scheduler.FoliaScheduler;
 
 /**
@@ -38,7 +43,10 @@ public class RedPocketsPlugin extends JavaPlugin {
     private GUIManager guiManager;
     private ChatInputManager chatInputManager;
     private ItemEditStorageManager itemEditStorageManager;
+    private StorageMailboxManager storageMailboxManager;
+    private PendingPayoutManager pendingPayoutManager;
     private ItemRedPocketPreviewManager previewManager;
+    private BroadcastRouter broadcastRouter;
     private PluginLogger pluginLogger;
     private FoliaScheduler scheduler;
 
@@ -52,6 +60,8 @@ public class RedPocketsPlugin extends JavaPlugin {
     private GUIListener guiListener;
     private ChatInputListener chatInputListener;
     private ChatClickListener chatClickListener;
+    private PlayerSessionListener playerSessionListener;
+    private PlayerLocationListener playerLocationListener;
 
     @Override
     public void onEnable() {
@@ -82,6 +92,12 @@ public class RedPocketsPlugin extends JavaPlugin {
             return;
         }
 
+        // 初始化广播路由
+        broadcastRouter = new BroadcastRouter(this);
+
+        // 初始化待发放金额管理器
+        pendingPayoutManager = new PendingPayoutManager(this);
+
         // 初始化红包管理器
         redPocketManager = new RedPocketManager(this);
 
@@ -89,9 +105,11 @@ public class RedPocketsPlugin extends JavaPlugin {
         economyManager = new EconomyManager(this);
         economyManager.initialize();
 
-        // 初始化物品编辑存储管理器
+        // 初始化物品编辑存储管理器（表由数据库迁移创建）
         itemEditStorageManager = new ItemEditStorageManager(this);
-        itemEditStorageManager.initialize();
+
+        // 初始化储物间管理器
+        storageMailboxManager = new StorageMailboxManager(this);
 
         // 初始化物品红包预览管理器
         previewManager = new ItemRedPocketPreviewManager(this);
@@ -116,6 +134,18 @@ public class RedPocketsPlugin extends JavaPlugin {
         // 初始化GUI监听器
         guiListener = new GUIListener(this);
 
+        // 初始化玩家会话监听器，为已在线的玩家加载会话
+        playerSessionListener = new PlayerSessionListener(this);
+        for (org.bukkit.entity.Player player : getServer().getOnlinePlayers()) {
+            playerSessionListener.openSession(player);
+        }
+
+        // 初始化玩家位置监听器，为已在线的玩家建立位置索引
+        playerLocationListener = new PlayerLocationListener(this);
+        for (org.bukkit.entity.Player player : getServer().getOnlinePlayers()) {
+            playerLocationListener.track(player);
+        }
+
         // 注册命令
         registerCommands();
 
@@ -139,6 +169,26 @@ public class RedPocketsPlugin extends JavaPlugin {
             previewManager.shutdown();
         }
 
+        // 写回进行中物品红包的物品池
+        if (redPocketManager != null) {
+            redPocketManager.shutdown();
+        }
+
+        // 写回玩家编辑会话
+        if (itemEditStorageManager != null) {
+            itemEditStorageManager.shutdown();
+        }
+
+        // 写回储物间
+        if (storageMailboxManager != null) {
+            storageMailboxManager.shutdown();
+        }
+
+        // 取消尚未执行的任务，需要写回的数据已在上面写回
+        if (scheduler != null) {
+            scheduler.cancelAllTasks();
+        }
+
         // 保存数据
         if (databaseManager != null) {
             databaseManager.close();
@@ -164,6 +214,8 @@ public class RedPocketsPlugin extends JavaPlugin {
         getServer().getPluginManager().registerEvents(guiListener, this);
         getServer().getPluginManager().registerEvents(chatInputListener, this);
         getServer().getPluginManager().registerEvents(chatClickListener, this);
+        getServer().getPluginManager().registerEvents(playerSessionListener, this);
+        getServer().getPluginManager().registerEvents(playerLocationListener, this);
         pluginLogger.info("事件监听器已注册。");
     }
 
@@ -230,6 +282,18 @@ public class RedPocketsPlugin extends JavaPlugin {
         return itemRedPocketGUI;
     }
 
+    public StorageMailboxManager getStorageMailboxManager() {
+        return storageMailboxManager;
+    }
+
+    public PendingPayoutManager getPendingPayoutManager() {
+        return pendingPayoutManager;
+    }
+
+    public BroadcastRouter getBroadcastRouter() {
+        return broadcastRouter;
+    }
+
     public StorageGUI getStorageGUI() {
         return storageGUI;
     }
@@ -1,6 +1,8 @@
 package com.redpockets.command;
 
 import com.redpockets.RedPocketsPlugin;
+import com.redpockets.database.DatabaseExecutor;
+import com.redpockets.manager.RedPocketCache;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -87,11 +89,15 @@ public class RedPocketAdminCommand implements CommandExecutor {
         }
 
         String redPocketId = args[1];
-        plugin.getRedPocketManager().deleteRedPocket(redPocketId);
-
         Map<String, String> placeholders = new HashMap<>();
         placeholders.put("id", redPocketId);
-        plugin.getMessageManager().sendSuccess((Player) sender, "commands.admin.delete.success", placeholders);
+        plugin.getRedPocketManager().deleteRedPocket(redPocketId).thenAccept(deleted -> {
+            if (deleted) {
+                plugin.getMessageManager().sendSuccess((Player) sender, "commands.admin.delete.success", placeholders);
+            } else {
+                plugin.getMessageManager().sendError((Player) sender, "commands.admin.delete.failed", placeholders);
+            }
+        });
     }
 
     /**
@@ -99,6 +105,8 @@ public class RedPocketAdminCommand implements CommandExecutor {
      */
     private void handleReload(CommandSender sender) {
         plugin.getConfigManager().reloadConfigs();
+        plugin.getRedPocketManager().reloadAllocationSettings();
+        plugin.getBroadcastRouter().reloadSettings();
         plugin.getMessageManager().sendSuccess((Player) sender, "commands.admin.reload.success");
     }
 
@@ -106,6 +114,36 @@ public class RedPocketAdminCommand implements CommandExecutor {
      * 处理统计信息
      */
     private void handleStats(CommandSender sender) {
-        plugin.getMessageManager().sendInfo((Player) sender, "commands.admin.stats.not_implemented");
+        RedPocketCache.Stats cache = plugin.getRedPocketManager().getCacheStats();
+
+        Map<String, String> placeholders = new HashMap<>();
+        placeholders.put("size", String.valueOf(cache.getSize()));
+        placeholders.put("max", String.valueOf(cache.getMaxSize()));
+        placeholders.put("hits", String.valueOf(cache.getHits()));
+        placeholders.put("misses", String.valueOf(cache.getMisses()));
+        placeholders.put("hit_rate", String.format("%.1f", cache.getHitRate() * 100));
+        placeholders.put("loads", String.valueOf(cache.getLoads()));
+        placeholders.put("refreshes", String.valueOf(cache.getRefreshes()));
+        placeholders.put("evictions", String.valueOf(cache.getEvictions()));
+        placeholders.put("rejected", String.valueOf(plugin.getRedPocketManager().getRejectedLookupCount()));
+
+        plugin.getMessageManager().sendMessage((Player) sender, "commands.admin.stats.header");
+        plugin.getMessageManager().sendInfo((Player) sender, "commands.admin.stats.cache", placeholders);
+        plugin.getMessageManager().sendInfo((Player) sender, "commands.admin.stats.cache_detail", placeholders);
+        plugin.getMessageManager().sendInfo((Player) sender, "commands.admin.stats.rejected", placeholders);
+
+        DatabaseExecutor.Stats database = plugin.getDatabaseManager().getExecutor().getStats();
+        placeholders.put("threads", String.valueOf(database.getThreads()));
+        placeholders.put("active", String.valueOf(database.getActive()));
+        placeholders.put("queued", String.valueOf(database.getQueued()));
+        placeholders.put("capacity", String.valueOf(database.getQueueCapacity()));
+        placeholders.put("completed", String.valueOf(database.getCompleted()));
+        placeholders.put("wait", String.format("%.2f", database.getAverageWaitMillis()));
+        placeholders.put("max_wait", String.format("%.2f", database.getMaxWaitNanos() / 1e6));
+        placeholders.put("execute", String.format("%.2f", database.getAverageExecuteMillis()));
+        placeholders.put("caller_runs", String.valueOf(database.getCallerRuns()));
+        placeholders.put("db_rejected", String.valueOf(database.getRejected()));
+        plugin.getMessageManager().sendInfo((Player) sender, "commands.admin.stats.database", placeholders);
+        plugin.getMessageManager().sendInfo((Player) sender, "commands.admin.stats.database_detail", placeholders);
     }
 }
@@ -1,6 +1,7 @@
 package com.redpockets.command;
 
 import com.redpockets.RedPocketsPlugin;
+import com.redpockets.model.Money;
 import com.redpockets.model.RedPocket;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -8,6 +9,7 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -16,6 +18,9 @@ import java.util.UUID;
  */
 public class RedPocketCommand implements CommandExecutor {
 
+    // 查看红包时显示的领取排行人数
+    private static final int LEADERBOARD_SIZE = 10;
+
     private final RedPocketsPlugin plugin;
 
     public RedPocketCommand(RedPocketsPlugin plugin) {
@@ -129,7 +134,7 @@ public class RedPocketCommand implements CommandExecutor {
         }
 
         try {
-            double amount = Double.parseDouble(args[1]);
+            long amount = Money.parse(args[1]);
             int count = Integer.parseInt(args[2]);
             String note = args.length > 3 ? String.join(" ", args).substring(args[0].length() + args[1].length() + args[2].length() + 3) : "";
 
@@ -138,25 +143,25 @@ public class RedPocketCommand implements CommandExecutor {
                 return;
             }
 
-            // 创建随机红包（包含经济验证和扣除）
-            RedPocket redPocket = plugin.getRedPocketManager().createRedPocketWithValidation(
+            // 创建随机红包（包含经济验证和扣除），数据库写入完成后回调
+            plugin.getRedPocketManager().createRedPocketWithValidation(
                 player,
                 RedPocket.RedPocketType.RANDOM,
                 amount,
                 count,
                 note
-            );
-
-            if (redPocket == null) {
-                // 创建失败（经济验证失败或扣除失败）
-                return;
-            }
-
-            Map<String, String> success = new HashMap<>();
-            success.put("id", redPocket.getId());
-            success.put("amount", String.valueOf(amount));
-            success.put("count", String.valueOf(count));
-            plugin.getMessageManager().sendSuccess(player, "commands.random.success", success);
+            ).thenAccept(redPocket -> {
+                if (redPocket == null) {
+                    // 创建失败（经济验证失败、扣除失败或保存失败）
+                    return;
+                }
+
+                Map<String, String> success = new HashMap<>();
+                success.put("id", redPocket.getId());
+                success.put("amount", Money.format(redPocket.getTotalAmount()));
+                success.put("count", String.valueOf(redPocket.getCount()));
+                plugin.getMessageManager().sendSuccess(player, "commands.random.success", success);
+            });
 
         } catch (NumberFormatException e) {
             plugin.getMessageManager().sendError(player, "commands.random.invalid_number");
@@ -182,15 +187,8 @@ public class RedPocketCommand implements CommandExecutor {
         }
 
         String redPocketId = args[1];
-        java.util.Optional<Double> amount = plugin.getRedPocketManager().grabRedPocketWithPayment(redPocketId, player);
-
-        if (amount.isPresent()) {
-            Map<String, String> success = new HashMap<>();
-            success.put("amount", String.valueOf(amount.get()));
-            plugin.getMessageManager().sendSuccess(player, "commands.grab.success", success);
-        } else {
-            plugin.getMessageManager().sendError(player, "commands.grab.failed");
-        }
+        plugin.getRedPocketManager().grabRedPocketAsync(redPocketId, player)
+            .thenAccept(result -> plugin.getRedPocketManager().sendGrabFeedback(player, result));
     }
 
     /**
@@ -205,7 +203,13 @@ public class RedPocketCommand implements CommandExecutor {
         }
 
         String redPocketId = args[1];
-        RedPocket redPocket = plugin.getRedPocketManager().getRedPocket(redPocketId);
+        RedPocket redPocket;
+        try {
+            redPocket = plugin.getRedPocketManager().getRedPocket(redPocketId);
+        } catch (IllegalStateException e) {
+            plugin.getMessageManager().sendError(player, "commands.check.load_failed");
+            return;
+        }
 
         if (redPocket == null) {
             plugin.getMessageManager().sendError(player, "commands.check.not_found");
@@ -216,9 +220,43 @@ public class RedPocketCommand implements CommandExecutor {
         plugin.getMessageManager().sendMessage(player, "commands.check.info");
         plugin.getMessageManager().sendMessage(player, "commands.check.id", redPocket.getId());
         plugin.getMessageManager().sendMessage(player, "commands.check.type", redPocket.getType().name());
-        plugin.getMessageManager().sendMessage(player, "commands.check.amount", String.valueOf(redPocket.getTotalAmount()));
+        plugin.getMessageManager().sendMessage(player, "commands.check.amount", Money.format(redPocket.getTotalAmount()));
         plugin.getMessageManager().sendMessage(player, "commands.check.count", String.valueOf(redPocket.getCount()));
         plugin.getMessageManager().sendMessage(player, "commands.check.note", redPocket.getNote() != null ? redPocket.getNote() : "无");
+
+        if (redPocket.getType() != RedPocket.RedPocketType.ITEM) {
+            sendLeaderboard(player, redPocket);
+        }
+    }
+
+    /**
+     * 显示金币红包的气运最佳和领取排行
+     */
+    private void sendLeaderboard(Player player, RedPocket redPocket) {
+        List<Map.Entry<UUID, Long>> leaderboard = plugin.getRedPocketManager().getClaimLeaderboard(redPocket.getId());
+        if (leaderboard.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> placeholders = new HashMap<>();
+        placeholders.put("player", playerName(leaderboard.get(0).getKey()));
+        placeholders.put("amount", Money.format(leaderboard.get(0).getValue()));
+        plugin.getMessageManager().sendMessage(player, "commands.check.best_lucky", placeholders);
+
+        plugin.getMessageManager().sendMessage(player, "commands.check.leaderboard");
+        int shown = Math.min(LEADERBOARD_SIZE, leaderboard.size());
+        for (int i = 0; i < shown; i++) {
+            Map.Entry<UUID, Long> entry = leaderboard.get(i);
+            placeholders.put("rank", String.valueOf(i + 1));
+            placeholders.put("player", playerName(entry.getKey()));
+            placeholders.put("amount", Money.format(entry.getValue()));
+            plugin.getMessageManager().sendMessage(player, "commands.check.leaderboard_entry", placeholders);
+        }
+    }
+
+    private String playerName(UUID uuid) {
+        String name = plugin.getServer().getOfflinePlayer(uuid).getName();
+        return name != null ? name : plugin.getMessageManager().getMessage("gui.redpocket.broadcast.unknown_player");
     }
 
     /**
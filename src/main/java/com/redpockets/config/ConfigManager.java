@@ -85,6 +85,62 @@ public class ConfigManager {
         return config.getBoolean("gui.enabled", true);
     }
 
+    public long getAutoSaveDelay() {
+        return config.getLong("gui.autosave-delay", 1000);
+    }
+
+    public String getRandomAlgorithm() {
+        return config.getString("random-redpocket.algorithm", "DOUBLE_MEAN");
+    }
+
+    public double getRandomMinPercent() {
+        return config.getDouble("random-redpocket.min-percent", 0.01);
+    }
+
+    public double getRandomMaxPercent() {
+        return config.getDouble("random-redpocket.max-percent", 0.5);
+    }
+
+    public String getItemSelectionMode() {
+        return config.getString("item-redpocket.selection-mode", "UNIT");
+    }
+
+    public boolean isBroadcastEnabled() {
+        return config.getBoolean("broadcast.enabled", true);
+    }
+
+    public String getBroadcastRange() {
+        return config.getString("broadcast.range", "SERVER");
+    }
+
+    public int getBroadcastNearbyRadius() {
+        return config.getInt("broadcast.nearby-radius", 50);
+    }
+
+    public long getBroadcastDelay() {
+        return config.getLong("broadcast.delay", 0);
+    }
+
+    public long getBroadcastGrabWindow() {
+        return config.getLong("broadcast.grab-window", 40);
+    }
+
+    public int getBroadcastMaxLinesPerSecond() {
+        return config.getInt("broadcast.max-lines-per-second", 3);
+    }
+
+    public int getCacheMaxSize() {
+        return config.getInt("cache.max-size", 1000);
+    }
+
+    public long getCacheRefreshAfter() {
+        return config.getLong("cache.refresh-after", 30);
+    }
+
+    public long getCacheCleanupInterval() {
+        return config.getLong("cache.cleanup-interval", 60);
+    }
+
     // ==================== 数据库配置访问 ====================
 
     public String getDatabaseType() {
@@ -115,6 +171,31 @@ public class ConfigManager {
         return databaseConfig.getString("sqlite.file", "redpockets.db");
     }
 
+    public boolean isSQLiteWalMode() {
+        return databaseConfig.getBoolean("sqlite.wal-mode", true);
+    }
+
+    public String getSQLiteSynchronous() {
+        return databaseConfig.getString("sqlite.synchronous", "NORMAL").toUpperCase();
+    }
+
+    public int getSQLiteCacheSize() {
+        return databaseConfig.getInt("sqlite.cache-size", 2000);
+    }
+
+    public int getSQLitePageSize() {
+        return databaseConfig.getInt("sqlite.page-size", 4096);
+    }
+
+    public boolean isSQLiteForeignKeys() {
+        return databaseConfig.getBoolean("sqlite.foreign-keys", true);
+    }
+
+    public int getSQLiteReaderPoolSize() {
+        return databaseConfig.getInt("sqlite.reader-pool-size",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
     public int getConnectionPoolSize() {
         return databaseConfig.getInt("connection-pool.maximum-pool-size", 10);
     }
@@ -127,6 +208,50 @@ public class ConfigManager {
         return databaseConfig.getLong("connection-pool.connection-timeout", 30000);
     }
 
+    public boolean isMigrationDryRun() {
+        return databaseConfig.getBoolean("migrations.dry-run", false);
+    }
+
+    public boolean isClusterMode() {
+        return getDatabaseType().equalsIgnoreCase("mysql") && databaseConfig.getBoolean("cluster-mode", false);
+    }
+
+    public int getWarmLoadFetchSize() {
+        return databaseConfig.getInt("warm-load.fetch-size", 500);
+    }
+
+    public int getDatabaseExecutorThreads() {
+        return databaseConfig.getInt("executor.threads", 0);
+    }
+
+    public int getDatabaseExecutorQueueSize() {
+        return databaseConfig.getInt("executor.queue-size", 10000);
+    }
+
+    public String getDatabaseExecutorBackpressure() {
+        return databaseConfig.getString("executor.backpressure", "CALLER_RUNS");
+    }
+
+    public boolean isDatabaseExecutorVirtualThreads() {
+        return databaseConfig.getBoolean("executor.virtual-threads", false);
+    }
+
+    public boolean isItemStorageCompression() {
+        return databaseConfig.getBoolean("item-storage.compression", true);
+    }
+
+    public int getWriteBehindBatchSize() {
+        return databaseConfig.getInt("write-behind.batch-size", 200);
+    }
+
+    public long getWriteBehindFlushInterval() {
+        return databaseConfig.getLong("write-behind.flush-interval", 500);
+    }
+
+    public String getWriteBehindJournalDir() {
+        return databaseConfig.getString("write-behind.journal-dir", "journal");
+    }
+
     public boolean isAutoBackupEnabled() {
         return databaseConfig.getBoolean("backup.enabled", false);
     }
@@ -0,0 +1,267 @@
+package com.redpockets.database;
+
+import com.redpockets.RedPocketsPlugin;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 数据库执行器
+ * 所有数据库读写在专用线程上执行，不占用服务器的共享异步线程池；
+ * 队列有上限，队列满时按配置由调用线程执行或拒绝，并记录排队和执行耗时；
+ * 调用线程是服务器 tick 线程时总是拒绝，不会在其上执行，也不会转交给共享异步线程池而绕过队列上限；
+ * 不能丢弃的写入通过 executeOrRetry 提交，被拒绝时稍后在异步线程重新提交
+ */
+public class DatabaseExecutor implements Executor {
+
+    /**
+     * 队列满时的处理方式
+     */
+    public enum Backpressure {
+        CALLER_RUNS, // 由提交任务的线程直接执行（tick 线程提交时拒绝）
+        REJECT       // 拒绝任务并抛出 RejectedExecutionException
+    }
+
+    // executeOrRetry 被拒绝后重新提交的间隔
+    private static final long RETRY_DELAY_TICKS = 20;
+
+    private final RedPocketsPlugin plugin;
+    private final ThreadPoolExecutor executor;
+    private final Executor rejecting;
+    // 通过 rejecting() 提交时置位，队列满时不论配置都拒绝
+    private final ThreadLocal<Boolean> rejectWhenFull = new ThreadLocal<>();
+    private final Backpressure backpressure;
+    private final boolean virtualThreads;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder executeNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param threads 线程数量，应与连接池大小一致，更多的线程只会在连接池上等待
+     * @param queueCapacity 等待执行的任务数量上限
+     * @param virtualThreads 是否使用虚拟线程（需要 Java 21 及以上，否则使用普通线程）
+     */
+    public DatabaseExecutor(RedPocketsPlugin plugin, int threads, int queueCapacity,
+                            Backpressure backpressure, boolean virtualThreads) {
+        this.plugin = plugin;
+        this.backpressure = backpressure;
+
+        ThreadFactory factory = virtualThreads ? virtualThreadFactory() : null;
+        this.virtualThreads = factory != null;
+        if (factory == null) {
+            AtomicInteger counter = new AtomicInteger();
+            factory = runnable -> {
+                Thread thread = new Thread(runnable, "RedPockets-Database-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+
+        RejectedExecutionHandler handler = (task, pool) -> {
+            if (backpressure == Backpressure.CALLER_RUNS && !pool.isShutdown() && rejectWhenFull.get() == null
+                    && !plugin.getScheduler().isTickThread()) {
+                callerRuns.increment();
+                task.run();
+                return;
+            }
+            rejected.increment();
+            throw new RejectedExecutionException("数据库任务队列已满 (" + queueCapacity + ")");
+        };
+
+        int size = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), factory, handler);
+
+        this.rejecting = task -> {
+            rejectWhenFull.set(Boolean.TRUE);
+            try {
+                execute(task);
+            } finally {
+                rejectWhenFull.remove();
+            }
+        };
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        submitted.increment();
+        executor.execute(new TimedTask(task));
+    }
+
+    /**
+     * 提交不能丢弃的任务（例如写回玩家数据），被拒绝时稍后在异步线程重新提交，直到被接受
+     * 异步线程不是 tick 线程，CALLER_RUNS 模式下重新提交时队列仍满则在该线程直接执行
+     */
+    public void executeOrRetry(Runnable task) {
+        try {
+            execute(task);
+        } catch (RejectedExecutionException e) {
+            if (executor.isShutdown()) {
+                throw e;
+            }
+            if (!plugin.isEnabled()) {
+                // 插件关闭过程中没有异步线程可用，直接执行
+                task.run();
+                return;
+            }
+            plugin.getScheduler().runAsyncLater(() -> executeOrRetry(task), RETRY_DELAY_TICKS);
+        }
+    }
+
+    /**
+     * 队列满时总是拒绝的执行器，不受 backpressure 配置影响
+     * 用于已经占用了资源、被拒绝时需要自行撤销的任务（例如已预占份额的抢红包）
+     */
+    public Executor rejecting() {
+        return rejecting;
+    }
+
+    /**
+     * 停止接收新任务并等待已提交的任务执行完毕
+     */
+    public void shutdown(long timeoutMillis) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                plugin.getPluginLogger().severe("数据库任务未在 " + timeoutMillis + " 毫秒内执行完毕，剩余 " +
+                    executor.getQueue().size() + " 个任务被丢弃");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 获取统计信息快照
+     */
+    public Stats getStats() {
+        return new Stats(executor.getMaximumPoolSize(), virtualThreads, executor.getActiveCount(),
+            executor.getQueue().size(), executor.getQueue().remainingCapacity() + executor.getQueue().size(),
+            submitted.sum(), completed.sum(), rejected.sum(), callerRuns.sum(),
+            waitNanos.sum(), executeNanos.sum(), maxWaitNanos.get());
+    }
+
+    /**
+     * Java 21 及以上用 Thread.ofVirtual() 创建虚拟线程工厂，编译目标为 Java 17，通过反射调用
+     */
+    private ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class)
+                .invoke(builder, "RedPockets-Database-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            plugin.getPluginLogger().warning("当前 Java 版本不支持虚拟线程，数据库执行器使用普通线程");
+            return null;
+        }
+    }
+
+    public static Backpressure parseBackpressure(String name) {
+        try {
+            return Backpressure.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 记录排队和执行耗时的任务
+     */
+    private final class TimedTask implements Runnable {
+        private final Runnable task;
+        private final long submittedAt;
+
+        private TimedTask(Runnable task) {
+            this.task = task;
+            this.submittedAt = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            long startedAt = System.nanoTime();
+            long waited = startedAt - submittedAt;
+            waitNanos.add(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            try {
+                task.run();
+            } catch (Throwable e) {
+                plugin.getPluginLogger().severe("数据库任务执行失败: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                executeNanos.add(System.nanoTime() - startedAt);
+                completed.increment();
+            }
+        }
+    }
+
+    /**
+     * 执行器统计信息
+     */
+    public static final class Stats {
+        private final int threads;
+        private final boolean virtualThreads;
+        private final int active;
+        private final int queued;
+        private final int queueCapacity;
+        private final long submitted;
+        private final long completed;
+        private final long rejected;
+        private final long callerRuns;
+        private final long waitNanos;
+        private final long executeNanos;
+        private final long maxWaitNanos;
+
+        private Stats(int threads, boolean virtualThreads, int active, int queued, int queueCapacity,
+                      long submitted, long completed, long rejected, long callerRuns,
+                      long waitNanos, long executeNanos, long maxWaitNanos) {
+            this.threads = threads;
+            this.virtualThreads = virtualThreads;
+            this.active = active;
+            this.queued = queued;
+            this.queueCapacity = queueCapacity;
+            this.submitted = submitted;
+            this.completed = completed;
+            this.rejected = rejected;
+            this.callerRuns = callerRuns;
+            this.waitNanos = waitNanos;
+            this.executeNanos = executeNanos;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+
+        public int getThreads() { return threads; }
+        public boolean isVirtualThreads() { return virtualThreads; }
+        public int getActive() { return active; }
+        public int getQueued() { return queued; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public long getSubmitted() { return submitted; }
+        public long getCompleted() { return completed; }
+        public long getRejected() { return rejected; }
+        public long getCallerRuns() { return callerRuns; }
+        public long getMaxWaitNanos() { return maxWaitNanos; }
+
+        public double getAverageWaitMillis() {
+            return completed == 0 ? 0 : waitNanos / 1e6 / completed;
+        }
+
+        public double getAverageExecuteMillis() {
+            return completed == 0 ? 0 : executeNanos / 1e6 / completed;
+        }
+    }
+}
@@ -5,8 +5,6 @@ import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.UUID;
 
@@ -18,6 +16,10 @@ public class DatabaseManager {
 
     private final RedPocketsPlugin plugin;
     private HikariDataSource dataSource;
+    // SQLite WAL 模式下的只读连接池，其他情况为 null（读写共用 dataSource）
+    private HikariDataSource readDataSource;
+    private WriteBehindQueue writeBehindQueue;
+    private DatabaseExecutor executor;
 
     public DatabaseManager(RedPocketsPlugin plugin) {
         this.plugin = plugin;
@@ -39,8 +41,37 @@ public class DatabaseManager {
 
         dataSource = new HikariDataSource(config);
 
-        // 创建表
-        createTables();
+        // 创建表并执行结构迁移，迁移失败时抛出异常，插件不会在结构不完整的数据库上启动
+        new SchemaMigrator(plugin, this).migrate();
+
+        // SQLite WAL 模式下读操作使用独立的只读连接，不再排在写连接后面
+        if (!type.equalsIgnoreCase("mysql") && plugin.getConfigManager().isSQLiteWalMode()) {
+            HikariConfig readerConfig = new HikariConfig();
+            configureSQLiteReader(readerConfig);
+            readDataSource = new HikariDataSource(readerConfig);
+        }
+
+        // 数据库执行器的线程数默认与连接数一致
+        int threads = plugin.getConfigManager().getDatabaseExecutorThreads();
+        if (threads <= 0) {
+            threads = dataSource.getMaximumPoolSize() + (readDataSource != null ? readDataSource.getMaximumPoolSize() : 0);
+        }
+        String backpressureName = plugin.getConfigManager().getDatabaseExecutorBackpressure();
+        DatabaseExecutor.Backpressure backpressure = DatabaseExecutor.parseBackpressure(backpressureName);
+        if (backpressure == null) {
+            plugin.getPluginLogger().warning("未知的数据库队列满处理方式: " + backpressureName + "，使用 CALLER_RUNS");
+            backpressure = DatabaseExecutor.Backpressure.CALLER_RUNS;
+        }
+        executor = new DatabaseExecutor(plugin, threads, plugin.getConfigManager().getDatabaseExecutorQueueSize(),
+            backpressure, plugin.getConfigManager().isDatabaseExecutorVirtualThreads());
+
+        // 启动延迟批量写入（重放上次未提交的日志）
+        writeBehindQueue = new WriteBehindQueue(plugin, this);
+        try {
+            writeBehindQueue.start();
+        } catch (java.io.IOException e) {
+            throw new SQLException("启动延迟批量写入失败: " + e.getMessage(), e);
+        }
 
         plugin.getPluginLogger().info("数据库初始化完成 (类型: " + type + ")");
     }
@@ -59,6 +90,8 @@ public class DatabaseManager {
         config.setUsername(username);
         config.setPassword(password);
         config.setDriverClassName("com.mysql.cj.jdbc.Driver");
+        // 设置了 fetchSize 的查询使用服务端游标分批读取，不会一次性缓冲全部结果
+        config.addDataSourceProperty("useCursorFetch", "true");
         config.setMaximumPoolSize(plugin.getConfigManager().getConnectionPoolSize());
         config.setMinimumIdle(plugin.getConfigManager().getMinimumIdle());
         config.setConnectionTimeout(plugin.getConfigManager().getConnectionTimeout());
@@ -66,124 +99,98 @@ public class DatabaseManager {
     }
 
     /**
-     * 配置SQLite连接
+     * 配置SQLite连接（唯一的写连接）
+     * database.yml 中的 PRAGMA 通过驱动的连接属性在每个连接打开时设置
      */
     private void configureSQLite(HikariConfig config) {
+        configureSQLiteCommon(config);
+        config.addDataSourceProperty("journal_mode", plugin.getConfigManager().isSQLiteWalMode() ? "WAL" : "DELETE");
+        config.addDataSourceProperty("synchronous", plugin.getConfigManager().getSQLiteSynchronous());
+        config.addDataSourceProperty("page_size", String.valueOf(plugin.getConfigManager().getSQLitePageSize()));
+        config.addDataSourceProperty("foreign_keys", String.valueOf(plugin.getConfigManager().isSQLiteForeignKeys()));
+        config.setMaximumPoolSize(1); // 写操作串行
+        config.setMinimumIdle(1);
+        config.setPoolName("RedPockets-SQLite-Pool");
+    }
+
+    /**
+     * 配置SQLite只读连接池
+     */
+    private void configureSQLiteReader(HikariConfig config) {
+        configureSQLiteCommon(config);
+        config.addDataSourceProperty("open_mode", "1"); // SQLITE_OPEN_READONLY
+        config.setMaximumPoolSize(Math.max(1, plugin.getConfigManager().getSQLiteReaderPoolSize()));
+        config.setMinimumIdle(1);
+        config.setPoolName("RedPockets-SQLite-Reader-Pool");
+    }
+
+    private void configureSQLiteCommon(HikariConfig config) {
         String file = plugin.getConfigManager().getSQLiteFile();
         String path = new java.io.File(plugin.getDataFolder(), file).getAbsolutePath();
 
         config.setJdbcUrl("jdbc:sqlite:" + path);
         config.setDriverClassName("org.sqlite.JDBC");
-        config.setMaximumPoolSize(1); // SQLite不支持多连接
-        config.setMinimumIdle(1);
         config.setConnectionTimeout(plugin.getConfigManager().getConnectionTimeout());
-        config.setPoolName("RedPockets-SQLite-Pool");
+        // 负数表示以 KB 为单位
+        config.addDataSourceProperty("cache_size", String.valueOf(-plugin.getConfigManager().getSQLiteCacheSize()));
+        config.addDataSourceProperty("busy_timeout", "5000");
     }
 
     /**
-     * 创建数据库表
+     * 获取数据库连接
      */
-    private void createTables() {
-        String type = plugin.getConfigManager().getDatabaseType();
-
-        try (Connection conn = getConnection()) {
-            // 创建红包表
-            createRedPocketTable(conn, type);
-
-            // 创建红包记录表
-            createRedPocketRecordTable(conn, type);
-
-            plugin.getPluginLogger().info("数据库表创建完成！");
-        } catch (SQLException e) {
-            plugin.getPluginLogger().severe("创建数据库表失败！");
-            e.printStackTrace();
+    public Connection getConnection() throws SQLException {
+        if (dataSource == null || dataSource.isClosed()) {
+            throw new SQLException("数据库连接池未初始化或已关闭");
         }
+        return dataSource.getConnection();
     }
 
     /**
-     * 创建红包表
+     * 获取只读查询使用的数据库连接
+     * SQLite WAL 模式下来自只读连接池，可与写操作并行；其他情况与 getConnection 相同
      */
-    private void createRedPocketTable(Connection conn, String type) throws SQLException {
-        String sql;
-        if (type.equalsIgnoreCase("mysql")) {
-            sql = "CREATE TABLE IF NOT EXISTS redpockets (" +
-                    "id VARCHAR(36) PRIMARY KEY, " +
-                    "sender VARCHAR(36) NOT NULL, " +
-                    "type VARCHAR(20) NOT NULL, " +
-                    "total_amount DOUBLE NOT NULL, " +
-                    "count INT NOT NULL, " +
-                    "note VARCHAR(50), " +
-                    "created_at BIGINT NOT NULL, " +
-                    "expires_at BIGINT, " +
-                    "is_claimed BOOLEAN DEFAULT FALSE, " +
-                    "INDEX idx_sender (sender), " +
-                    "INDEX idx_created (created_at)" +
-                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
-        } else {
-            sql = "CREATE TABLE IF NOT EXISTS redpockets (" +
-                    "id TEXT PRIMARY KEY, " +
-                    "sender TEXT NOT NULL, " +
-                    "type TEXT NOT NULL, " +
-                    "total_amount REAL NOT NULL, " +
-                    "count INTEGER NOT NULL, " +
-                    "note TEXT, " +
-                    "created_at INTEGER NOT NULL, " +
-                    "expires_at INTEGER, " +
-                    "is_claimed INTEGER DEFAULT 0" +
-                    ")";
+    public Connection getReadConnection() throws SQLException {
+        if (readDataSource == null) {
+            return getConnection();
         }
-
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.execute();
+        if (readDataSource.isClosed()) {
+            throw new SQLException("数据库连接池未初始化或已关闭");
         }
+        return readDataSource.getConnection();
     }
 
     /**
-     * 创建红包记录表
+     * 获取数据库执行器，数据库读写都应提交到这里执行
      */
-    private void createRedPocketRecordTable(Connection conn, String type) throws SQLException {
-        String sql;
-        if (type.equalsIgnoreCase("mysql")) {
-            sql = "CREATE TABLE IF NOT EXISTS redpocket_records (" +
-                    "id VARCHAR(36) PRIMARY KEY, " +
-                    "redpocket_id VARCHAR(36) NOT NULL, " +
-                    "claimer VARCHAR(36) NOT NULL, " +
-                    "amount DOUBLE NOT NULL, " +
-                    "claimed_at BIGINT NOT NULL, " +
-                    "FOREIGN KEY (redpocket_id) REFERENCES redpockets(id) ON DELETE CASCADE, " +
-                    "INDEX idx_redpocket (redpocket_id), " +
-                    "INDEX idx_claimer (claimer)" +
-                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
-        } else {
-            sql = "CREATE TABLE IF NOT EXISTS redpocket_records (" +
-                    "id TEXT PRIMARY KEY, " +
-                    "redpocket_id TEXT NOT NULL, " +
-                    "claimer TEXT NOT NULL, " +
-                    "amount REAL NOT NULL, " +
-                    "claimed_at INTEGER NOT NULL, " +
-                    "FOREIGN KEY (redpocket_id) REFERENCES redpockets(id) ON DELETE CASCADE" +
-                    ")";
-        }
-
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.execute();
-        }
+    public DatabaseExecutor getExecutor() {
+        return executor;
     }
 
     /**
-     * 获取数据库连接
+     * 获取延迟批量写入队列
      */
-    public Connection getConnection() throws SQLException {
-        if (dataSource == null || dataSource.isClosed()) {
-            throw new SQLException("数据库连接池未初始化或已关闭");
-        }
-        return dataSource.getConnection();
+    public WriteBehindQueue getWriteBehindQueue() {
+        return writeBehindQueue;
     }
 
     /**
      * 关闭数据库连接
      */
     public void close() {
+        // 先执行完已提交的数据库任务
+        if (executor != null) {
+            executor.shutdown(10_000);
+        }
+
+        if (writeBehindQueue != null) {
+            writeBehindQueue.shutdown();
+        }
+
+        if (readDataSource != null && !readDataSource.isClosed()) {
+            readDataSource.close();
+        }
+
         if (dataSource != null && !dataSource.isClosed()) {
             dataSource.close();
             plugin.getPluginLogger().info("数据库连接池已关闭。");
@@ -0,0 +1,200 @@
+package com.redpockets.database;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * 数据库结构迁移
+ * 一个版本号对应一组按顺序执行的步骤，每个步骤执行前先检查是否已生效，可重复执行
+ */
+public final class Migration {
+
+    private final int version;
+    private final String description;
+    private final List<Step> steps;
+
+    public Migration(int version, String description, Step... steps) {
+        this.version = version;
+        this.description = description;
+        this.steps = List.of(steps);
+    }
+
+    public int getVersion() { return version; }
+    public String getDescription() { return description; }
+    public List<Step> getSteps() { return steps; }
+
+    /**
+     * 迁移步骤
+     */
+    public interface Step {
+
+        /**
+         * 检查该步骤是否尚未生效（只读）
+         */
+        boolean isPending(Connection conn, boolean mysql) throws SQLException;
+
+        /**
+         * 该步骤要执行的 SQL，用于日志和预演
+         */
+        String getSql(boolean mysql);
+
+        /**
+         * 执行该步骤
+         */
+        default void apply(Connection conn, boolean mysql) throws SQLException {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(getSql(mysql));
+            }
+        }
+    }
+
+    /**
+     * 创建表（按数据库类型使用不同的建表语句）
+     */
+    public static Step createTable(String table, String mysqlSql, String sqliteSql) {
+        return new Step() {
+            @Override
+            public boolean isPending(Connection conn, boolean mysql) throws SQLException {
+                return !hasTable(conn, table);
+            }
+
+            @Override
+            public String getSql(boolean mysql) {
+                return mysql ? mysqlSql : sqliteSql;
+            }
+        };
+    }
+
+    /**
+     * 添加列
+     */
+    public static Step addColumn(String table, String column, String definition) {
+        return new Step() {
+            @Override
+            public boolean isPending(Connection conn, boolean mysql) throws SQLException {
+                return !hasColumn(conn, table, column);
+            }
+
+            @Override
+            public String getSql(boolean mysql) {
+                return "ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition;
+            }
+        };
+    }
+
+    /**
+     * 添加列（按数据库类型使用不同的列定义）
+     */
+    public static Step addColumn(String table, String column, String mysqlDefinition, String sqliteDefinition) {
+        return new Step() {
+            @Override
+            public boolean isPending(Connection conn, boolean mysql) throws SQLException {
+                return !hasColumn(conn, table, column);
+            }
+
+            @Override
+            public String getSql(boolean mysql) {
+                return "ALTER TABLE " + table + " ADD COLUMN " + column + " " + (mysql ? mysqlDefinition : sqliteDefinition);
+            }
+        };
+    }
+
+    /**
+     * 创建索引
+     */
+    public static Step createIndex(String table, String index, boolean unique, String columns) {
+        return new Step() {
+            @Override
+            public boolean isPending(Connection conn, boolean mysql) throws SQLException {
+                return !hasIndex(conn, table, index);
+            }
+
+            @Override
+            public String getSql(boolean mysql) {
+                return "CREATE " + (unique ? "UNIQUE " : "") + "INDEX " + index + " ON " + table + " (" + columns + ")";
+            }
+        };
+    }
+
+    /**
+     * 仅对 SQLite 创建索引（MySQL 建表语句中已包含）
+     */
+    public static Step createSQLiteIndex(String table, String index, String columns) {
+        Step step = createIndex(table, index, false, columns);
+        return new Step() {
+            @Override
+            public boolean isPending(Connection conn, boolean mysql) throws SQLException {
+                return !mysql && step.isPending(conn, false);
+            }
+
+            @Override
+            public String getSql(boolean mysql) {
+                return step.getSql(false);
+            }
+        };
+    }
+
+    /**
+     * 回填数据，语句自身须只修改尚未回填的行（每次都会执行）
+     */
+    public static Step backfill(String sql) {
+        return new Step() {
+            @Override
+            public boolean isPending(Connection conn, boolean mysql) {
+                return true;
+            }
+
+            @Override
+            public String getSql(boolean mysql) {
+                return sql;
+            }
+        };
+    }
+
+    /**
+     * 回填数据（按数据库类型使用不同的语句），语句自身须只修改尚未回填的行（每次都会执行）
+     */
+    public static Step backfill(String mysqlSql, String sqliteSql) {
+        return new Step() {
+            @Override
+            public boolean isPending(Connection conn, boolean mysql) {
+                return true;
+            }
+
+            @Override
+            public String getSql(boolean mysql) {
+                return mysql ? mysqlSql : sqliteSql;
+            }
+        };
+    }
+
+    static boolean hasTable(Connection conn, String table) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getTables(conn.getCatalog(), null, table, null)) {
+            return rs.next();
+        }
+    }
+
+    static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getColumns(conn.getCatalog(), null, table, column)) {
+            return rs.next();
+        }
+    }
+
+    static boolean hasIndex(Connection conn, String table, String index) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getIndexInfo(conn.getCatalog(), null, table, false, false)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,277 @@
+package com.redpockets.database;
+
+import com.redpockets.RedPocketsPlugin;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * 数据库结构迁移器
+ * 启动时按版本号顺序执行尚未应用的迁移，已应用的版本记录在 schema_version 表中；
+ * 每个迁移在一个事务中执行（MySQL 的 DDL 会隐式提交，依靠步骤自身的检查保证可重复执行）
+ */
+public class SchemaMigrator {
+
+    private final RedPocketsPlugin plugin;
+    private final DatabaseManager databaseManager;
+    private final boolean mysql;
+    private final boolean dryRun;
+    private final List<Migration> migrations;
+
+    public SchemaMigrator(RedPocketsPlugin plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+        this.mysql = plugin.getConfigManager().getDatabaseType().equalsIgnoreCase("mysql");
+        this.dryRun = plugin.getConfigManager().isMigrationDryRun();
+        this.migrations = List.of(
+            new Migration(1, "创建红包、抢取记录和物品编辑存储表",
+                Migration.createTable("redpockets",
+                    "CREATE TABLE IF NOT EXISTS redpockets (" +
+                        "id VARCHAR(36) PRIMARY KEY, " +
+                        "sender VARCHAR(36) NOT NULL, " +
+                        "type VARCHAR(20) NOT NULL, " +
+                        "total_amount DOUBLE NOT NULL, " +
+                        "count INT NOT NULL, " +
+                        "note VARCHAR(50), " +
+                        "created_at BIGINT NOT NULL, " +
+                        "expires_at BIGINT, " +
+                        "is_claimed BOOLEAN DEFAULT FALSE, " +
+                        "INDEX idx_sender (sender), " +
+                        "INDEX idx_created (created_at)" +
+                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4",
+                    "CREATE TABLE IF NOT EXISTS redpockets (" +
+                        "id TEXT PRIMARY KEY, " +
+                        "sender TEXT NOT NULL, " +
+                        "type TEXT NOT NULL, " +
+                        "total_amount REAL NOT NULL, " +
+                        "count INTEGER NOT NULL, " +
+                        "note TEXT, " +
+                        "created_at INTEGER NOT NULL, " +
+                        "expires_at INTEGER, " +
+                        "is_claimed INTEGER DEFAULT 0" +
+                        ")"),
+                Migration.createTable("redpocket_records",
+                    "CREATE TABLE IF NOT EXISTS redpocket_records (" +
+                        "id VARCHAR(36) PRIMARY KEY, " +
+                        "redpocket_id VARCHAR(36) NOT NULL, " +
+                        "claimer VARCHAR(36) NOT NULL, " +
+                        "amount DOUBLE NOT NULL, " +
+                        "claimed_at BIGINT NOT NULL, " +
+                        "FOREIGN KEY (redpocket_id) REFERENCES redpockets(id) ON DELETE CASCADE, " +
+                        "INDEX idx_redpocket (redpocket_id), " +
+                        "INDEX idx_claimer (claimer)" +
+                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4",
+                    "CREATE TABLE IF NOT EXISTS redpocket_records (" +
+                        "id TEXT PRIMARY KEY, " +
+                        "redpocket_id TEXT NOT NULL, " +
+                        "claimer TEXT NOT NULL, " +
+                        "amount REAL NOT NULL, " +
+                        "claimed_at INTEGER NOT NULL, " +
+                        "FOREIGN KEY (redpocket_id) REFERENCES redpockets(id) ON DELETE CASCADE" +
+                        ")"),
+                Migration.createTable("item_edit_storage",
+                    "CREATE TABLE IF NOT EXISTS item_edit_storage (" +
+                        "uuid VARCHAR(36) PRIMARY KEY, " +
+                        "items TEXT NOT NULL, " +
+                        "redpocket_id VARCHAR(36), " +
+                        "redpocket_expires_at BIGINT, " +
+                        "updated_at BIGINT NOT NULL, " +
+                        "INDEX idx_updated (updated_at)" +
+                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4",
+                    "CREATE TABLE IF NOT EXISTS item_edit_storage (" +
+                        "uuid TEXT PRIMARY KEY, " +
+                        "items TEXT NOT NULL, " +
+                        "redpocket_id TEXT, " +
+                        "redpocket_expires_at INTEGER, " +
+                        "updated_at INTEGER NOT NULL" +
+                        ")")),
+            new Migration(2, "金额改为以分为单位的整数列",
+                Migration.addColumn("redpockets", "total_amount_minor", "BIGINT"),
+                Migration.addColumn("redpocket_records", "amount_minor", "BIGINT"),
+                Migration.backfill("UPDATE redpockets SET total_amount_minor = ROUND(total_amount * 100) " +
+                    "WHERE total_amount_minor IS NULL"),
+                Migration.backfill("UPDATE redpocket_records SET amount_minor = ROUND(amount * 100) " +
+                    "WHERE amount_minor IS NULL")),
+            new Migration(3, "红包剩余份数、剩余金额和份额表",
+                Migration.addColumn("redpockets", "remaining_count", "INT"),
+                Migration.addColumn("redpockets", "remaining_amount", "BIGINT"),
+                Migration.addColumn("redpockets", "shares", "TEXT"),
+                Migration.backfill("UPDATE redpockets SET " +
+                    "remaining_count = count - (SELECT COUNT(*) FROM redpocket_records r WHERE r.redpocket_id = redpockets.id), " +
+                    "remaining_amount = total_amount_minor - (SELECT COALESCE(SUM(r.amount_minor), 0) " +
+                    "FROM redpocket_records r WHERE r.redpocket_id = redpockets.id) " +
+                    "WHERE remaining_count IS NULL")),
+            // 旧版本抢红包时先查询再插入，同一玩家可能有多条记录：先把金额合并到其中一条，再删除其余记录；
+            // V3 按合并前的记录数回填了剩余份数，合并后重新计算
+            new Migration(4, "抢取记录 (redpocket_id, claimer) 唯一索引",
+                Migration.backfill(
+                    "UPDATE redpocket_records r JOIN (" +
+                        "SELECT MIN(id) AS keep_id, SUM(amount) AS total, SUM(amount_minor) AS total_minor " +
+                        "FROM redpocket_records GROUP BY redpocket_id, claimer HAVING COUNT(*) > 1" +
+                        ") d ON r.id = d.keep_id SET r.amount = d.total, r.amount_minor = d.total_minor",
+                    "UPDATE redpocket_records SET " +
+                        "amount = (SELECT SUM(d.amount) FROM redpocket_records d " +
+                        "WHERE d.redpocket_id = redpocket_records.redpocket_id AND d.claimer = redpocket_records.claimer), " +
+                        "amount_minor = (SELECT SUM(d.amount_minor) FROM redpocket_records d " +
+                        "WHERE d.redpocket_id = redpocket_records.redpocket_id AND d.claimer = redpocket_records.claimer) " +
+                        "WHERE id IN (SELECT MIN(id) FROM redpocket_records GROUP BY redpocket_id, claimer HAVING COUNT(*) > 1)"),
+                Migration.backfill(
+                    "DELETE r FROM redpocket_records r JOIN (" +
+                        "SELECT redpocket_id, claimer, MIN(id) AS keep_id " +
+                        "FROM redpocket_records GROUP BY redpocket_id, claimer HAVING COUNT(*) > 1" +
+                        ") d ON r.redpocket_id = d.redpocket_id AND r.claimer = d.claimer AND r.id <> d.keep_id",
+                    "DELETE FROM redpocket_records WHERE id NOT IN " +
+                        "(SELECT MIN(id) FROM redpocket_records GROUP BY redpocket_id, claimer)"),
+                Migration.backfill("UPDATE redpockets SET " +
+                    "remaining_count = count - (SELECT COUNT(*) FROM redpocket_records r WHERE r.redpocket_id = redpockets.id), " +
+                    "remaining_amount = total_amount_minor - (SELECT COALESCE(SUM(r.amount_minor), 0) " +
+                    "FROM redpocket_records r WHERE r.redpocket_id = redpockets.id)"),
+                Migration.createIndex("redpocket_records", "uk_redpocket_claimer", true, "redpocket_id, claimer")),
+            new Migration(5, "红包过期时间索引",
+                Migration.createIndex("redpockets", "idx_expires", false, "expires_at")),
+            new Migration(6, "补齐 SQLite 缺少的索引",
+                Migration.createSQLiteIndex("redpockets", "idx_sender", "sender"),
+                Migration.createSQLiteIndex("redpockets", "idx_created", "created_at"),
+                Migration.createSQLiteIndex("redpocket_records", "idx_claimer", "claimer"),
+                Migration.createSQLiteIndex("item_edit_storage", "idx_updated", "updated_at")),
+            new Migration(7, "红包过期标记",
+                Migration.addColumn("redpockets", "is_expired", "BOOLEAN DEFAULT 0")),
+            // 旧的 Base64 数据保留在 items 列，读取时转换为新格式
+            new Migration(8, "物品编辑存储改为二进制格式",
+                Migration.addColumn("item_edit_storage", "items_blob", "MEDIUMBLOB", "BLOB")),
+            new Migration(9, "创建储物间表",
+                Migration.createTable("storage_mailbox",
+                    "CREATE TABLE IF NOT EXISTS storage_mailbox (" +
+                        "uuid VARCHAR(36) PRIMARY KEY, " +
+                        "items_blob MEDIUMBLOB NOT NULL, " +
+                        "updated_at BIGINT NOT NULL" +
+                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4",
+                    "CREATE TABLE IF NOT EXISTS storage_mailbox (" +
+                        "uuid TEXT PRIMARY KEY, " +
+                        "items_blob BLOB NOT NULL, " +
+                        "updated_at INTEGER NOT NULL" +
+                        ")")),
+            new Migration(10, "创建待发放金额表",
+                Migration.createTable("pending_payouts",
+                    "CREATE TABLE IF NOT EXISTS pending_payouts (" +
+                        "id VARCHAR(36) PRIMARY KEY, " +
+                        "player VARCHAR(36) NOT NULL, " +
+                        "redpocket_id VARCHAR(36) NOT NULL, " +
+                        "amount_minor BIGINT NOT NULL, " +
+                        "created_at BIGINT NOT NULL, " +
+                        "INDEX idx_player (player)" +
+                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4",
+                    "CREATE TABLE IF NOT EXISTS pending_payouts (" +
+                        "id TEXT PRIMARY KEY, " +
+                        "player TEXT NOT NULL, " +
+                        "redpocket_id TEXT NOT NULL, " +
+                        "amount_minor INTEGER NOT NULL, " +
+                        "created_at INTEGER NOT NULL" +
+                        ")"),
+                Migration.createSQLiteIndex("pending_payouts", "idx_player", "player"))
+        );
+    }
+
+    /**
+     * 执行所有尚未应用的迁移，某个迁移失败时回滚并抛出异常，不再执行后续迁移
+     * 预演模式下有待执行的迁移时列出语句后抛出异常，插件不会在未迁移的数据库上启动
+     */
+    public void migrate() throws SQLException {
+        try (Connection conn = databaseManager.getConnection()) {
+            int current = getCurrentVersion(conn);
+            int latest = migrations.get(migrations.size() - 1).getVersion();
+
+            if (current >= latest) {
+                plugin.getPluginLogger().debug("数据库结构已是最新版本: " + current);
+                return;
+            }
+
+            if (dryRun) {
+                plugin.getPluginLogger().warning("数据库迁移预演模式：以下语句不会执行");
+            }
+
+            for (Migration migration : migrations) {
+                if (migration.getVersion() <= current) {
+                    continue;
+                }
+                apply(conn, migration);
+            }
+
+            if (dryRun) {
+                throw new SQLException("数据库迁移预演完成，结构仍为版本 " + current + "（最新 " + latest +
+                    "），关闭 migrations.dry-run 后重新启动以执行迁移");
+            }
+            plugin.getPluginLogger().info("数据库结构已升级: " + current + " -> " + latest);
+        }
+    }
+
+    private void apply(Connection conn, Migration migration) throws SQLException {
+        String label = "V" + migration.getVersion() + " " + migration.getDescription();
+
+        if (dryRun) {
+            plugin.getPluginLogger().info("[预演] " + label);
+            for (Migration.Step step : migration.getSteps()) {
+                if (step.isPending(conn, mysql)) {
+                    plugin.getPluginLogger().info("[预演]   " + step.getSql(mysql));
+                }
+            }
+            return;
+        }
+
+        conn.setAutoCommit(false);
+        try {
+            for (Migration.Step step : migration.getSteps()) {
+                if (step.isPending(conn, mysql)) {
+                    plugin.getPluginLogger().debug("执行迁移语句: " + step.getSql(mysql));
+                    step.apply(conn, mysql);
+                }
+            }
+            recordVersion(conn, migration);
+            conn.commit();
+            plugin.getPluginLogger().info("已应用数据库迁移 " + label);
+        } catch (SQLException e) {
+            conn.rollback();
+            throw new SQLException("数据库迁移 " + label + " 失败，已回滚: " + e.getMessage(), e);
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * 获取当前结构版本，schema_version 表不存在时视为 0
+     */
+    private int getCurrentVersion(Connection conn) throws SQLException {
+        if (!Migration.hasTable(conn, "schema_version")) {
+            if (!dryRun) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                        "version INT PRIMARY KEY, " +
+                        "description VARCHAR(255) NOT NULL, " +
+                        "applied_at BIGINT NOT NULL" +
+                        ")");
+                }
+            }
+            return 0;
+        }
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private void recordVersion(Connection conn, Migration migration) throws SQLException {
+        String sql = "INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, ?)";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, migration.getVersion());
+            stmt.setString(2, migration.getDescription());
+            stmt.setLong(3, System.currentTimeMillis());
+            stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,582 @@
+package com.redpockets.database;
+
+import com.redpockets.RedPocketsPlugin;
+import com.redpockets.model.Money;
+import com.redpockets.model.RedPocketRecord;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 延迟批量写入队列
+ * 抢取记录和红包抢完状态先追加到本地日志再进入内存队列，由单独的写入线程按数量或时间成批提交，
+ * 每批一个事务；日志由日志线程把一段时间内追加的写入合并为一次落盘，落盘后才确认写入；
+ * 启动时重放未提交的日志，已确认的抢取在崩溃后不会丢失
+ */
+public class WriteBehindQueue {
+
+    private static final String SEGMENT_PREFIX = "records-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int MAX_BATCH_ATTEMPTS = 3;
+
+    private static final String UPDATE_CLAIMED_SQL = "UPDATE redpockets SET is_claimed = ? WHERE id = ?";
+    // 物品红包的记录不占金额
+    private static final String DECREMENT_REMAINING_SQL = "UPDATE redpockets SET remaining_count = remaining_count - 1, " +
+        "remaining_amount = remaining_amount - CASE WHEN type = 'ITEM' THEN 0 ELSE ? END WHERE id = ?";
+
+    private final RedPocketsPlugin plugin;
+    private final DatabaseManager databaseManager;
+    private final String insertRecordSql;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final File journalDir;
+    private final ScheduledExecutorService writer;
+    private final ExecutorService syncer;
+
+    // 落盘和切换日志文件时持有，先于 lock 获取；追加写入只需要 lock，不会等待落盘
+    private final Object syncLock = new Object();
+
+    // 以下字段由 lock 保护
+    private final Object lock = new Object();
+    private List<PendingWrite> pending;
+    private JournalSegment segment;
+    private long nextSegmentId;
+    private boolean flushScheduled;
+    private boolean syncScheduled;
+
+    // 以下字段只在写入线程访问
+    private final Deque<Batch> retryBatches;
+
+    public WriteBehindQueue(RedPocketsPlugin plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+        this.batchSize = Math.max(1, plugin.getConfigManager().getWriteBehindBatchSize());
+        this.flushIntervalMillis = Math.max(50, plugin.getConfigManager().getWriteBehindFlushInterval());
+        this.journalDir = new File(plugin.getDataFolder(), plugin.getConfigManager().getWriteBehindJournalDir());
+        this.pending = new ArrayList<>();
+        this.retryBatches = new ArrayDeque<>();
+
+        String insert = plugin.getConfigManager().getDatabaseType().equalsIgnoreCase("mysql")
+            ? "INSERT IGNORE INTO" : "INSERT OR IGNORE INTO";
+        this.insertRecordSql = insert + " redpocket_records (id, redpocket_id, claimer, amount, amount_minor, claimed_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RedPockets-WriteBehind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.syncer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RedPockets-Journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 重放上次未提交的日志并启动定时写入
+     */
+    public void start() throws IOException {
+        if (!journalDir.exists() && !journalDir.mkdirs()) {
+            throw new IOException("无法创建日志目录: " + journalDir.getAbsolutePath());
+        }
+
+        File[] segments = journalDir.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (segments != null && segments.length > 0) {
+            Arrays.sort(segments, Comparator.comparingLong(WriteBehindQueue::segmentId));
+            for (File file : segments) {
+                List<PendingWrite> writes = readSegment(file);
+                retryBatches.add(new Batch(writes, file));
+                nextSegmentId = Math.max(nextSegmentId, segmentId(file) + 1);
+            }
+            plugin.getPluginLogger().info("发现 " + segments.length + " 个未提交的写入日志，正在重放...");
+            flush();
+        }
+
+        synchronized (lock) {
+            segment = openSegment();
+        }
+        writer.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 追加一条抢取记录
+     * @return 日志落盘后完成；写日志失败时异常完成，此时记录不会写入数据库
+     */
+    public CompletableFuture<Void> enqueueRecord(RedPocketRecord record) {
+        return enqueue(PendingWrite.record(record));
+    }
+
+    /**
+     * 追加红包已抢完状态
+     * @return 日志落盘后完成；写日志失败时异常完成，此时状态不会写入数据库
+     */
+    public CompletableFuture<Void> enqueueClaimed(String redPocketId) {
+        return enqueue(PendingWrite.claimed(redPocketId));
+    }
+
+    private CompletableFuture<Void> enqueue(PendingWrite write) {
+        synchronized (lock) {
+            try {
+                segment.append(write.toJournalLine());
+            } catch (IOException e) {
+                plugin.getPluginLogger().severe("写入日志失败: " + e.getMessage());
+                e.printStackTrace();
+                return CompletableFuture.failedFuture(e);
+            }
+
+            pending.add(write);
+            segment.unsynced.add(write);
+            if (!syncScheduled) {
+                syncScheduled = true;
+                syncer.execute(this::sync);
+            }
+            if (pending.size() >= batchSize && !flushScheduled) {
+                flushScheduled = true;
+                writer.execute(this::flush);
+            }
+        }
+        return write.synced;
+    }
+
+    /**
+     * 把上次落盘后追加的所有写入一次落盘并确认（日志线程）
+     * 落盘期间不持有 lock，新的写入继续追加，由下一次落盘一并确认
+     */
+    private void sync() {
+        synchronized (syncLock) {
+            JournalSegment current;
+            List<PendingWrite> writes;
+            synchronized (lock) {
+                syncScheduled = false;
+                current = segment;
+                if (current == null) {
+                    return;
+                }
+                writes = current.takeUnsynced();
+            }
+            if (writes.isEmpty()) {
+                return;
+            }
+
+            try {
+                current.force();
+                writes.forEach(write -> write.synced.complete(null));
+            } catch (IOException e) {
+                synchronized (lock) {
+                    // 持有 syncLock 时日志文件不会被切换，此后追加的写入同样无法确认
+                    writes.addAll(current.takeUnsynced());
+                    discard(writes, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 落盘当前日志文件并确认等待的写入，失败时丢弃这些写入（持有 syncLock 和 lock 时调用）
+     */
+    private void forceSegment() {
+        List<PendingWrite> writes = segment.takeUnsynced();
+        if (writes.isEmpty()) {
+            return;
+        }
+        try {
+            segment.force();
+            writes.forEach(write -> write.synced.complete(null));
+        } catch (IOException e) {
+            discard(writes, e);
+        }
+    }
+
+    /**
+     * 丢弃未能落盘的写入并以失败确认，其余已确认的写入重写到新的日志文件，
+     * 避免被丢弃的写入在崩溃后又被重放（持有 syncLock 和 lock 时调用）
+     */
+    private void discard(List<PendingWrite> writes, IOException cause) {
+        plugin.getPluginLogger().severe("日志落盘失败，" + writes.size() + " 条写入未被确认: " + cause.getMessage());
+        cause.printStackTrace();
+
+        Set<PendingWrite> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+        failed.addAll(writes);
+        pending.removeIf(failed::contains);
+
+        JournalSegment broken = segment;
+        try {
+            broken.close();
+        } catch (IOException e) {
+            plugin.getPluginLogger().warning("关闭写入日志失败: " + e.getMessage());
+        }
+        segment = openSegment();
+        try {
+            for (PendingWrite write : pending) {
+                segment.append(write.toJournalLine());
+            }
+            segment.force();
+            Files.deleteIfExists(broken.file.toPath());
+        } catch (IOException e) {
+            plugin.getPluginLogger().severe("重写日志失败，已确认的写入仅保存在内存中: " + e.getMessage());
+        }
+
+        writes.forEach(write -> write.synced.completeExceptionally(cause));
+    }
+
+    /**
+     * 立即提交当前积压的写入，在写入线程上完成后返回
+     */
+    public CompletableFuture<Void> flushAsync() {
+        return CompletableFuture.runAsync(this::flush, writer);
+    }
+
+    /**
+     * 取出积压的写入并成批提交（在写入线程调用，启动重放时在初始化线程调用）
+     */
+    private void flush() {
+        try {
+            synchronized (syncLock) {
+                synchronized (lock) {
+                    flushScheduled = false;
+                    if (!pending.isEmpty()) {
+                        // 切换前落盘，提交到数据库的写入都已在日志中
+                        forceSegment();
+                    }
+                    if (!pending.isEmpty()) {
+                        segment.close();
+                        retryBatches.add(new Batch(pending, segment.file));
+                        pending = new ArrayList<>();
+                        segment = openSegment();
+                    }
+                }
+            }
+
+            while (!retryBatches.isEmpty()) {
+                Batch batch = retryBatches.peek();
+                if (!commit(batch)) {
+                    return;
+                }
+                retryBatches.poll();
+                Files.deleteIfExists(batch.journal.toPath());
+            }
+        } catch (Exception e) {
+            plugin.getPluginLogger().severe("批量写入失败: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 在一个事务中提交一批写入，多次失败后改为逐条写入并跳过无法写入的记录
+     */
+    private boolean commit(Batch batch) {
+        try (Connection conn = databaseManager.getConnection()) {
+            writeBatch(conn, batch.writes);
+            return true;
+        } catch (SQLException e) {
+            batch.attempts++;
+            plugin.getPluginLogger().severe("批量写入失败 (" + batch.writes.size() + " 条，第 " + batch.attempts +
+                " 次): " + e.getMessage());
+            if (batch.attempts < MAX_BATCH_ATTEMPTS) {
+                return false;
+            }
+        }
+
+        return writeIndividually(batch.writes);
+    }
+
+    private void writeBatch(Connection conn, List<PendingWrite> writes) throws SQLException {
+        conn.setAutoCommit(false);
+        try (PreparedStatement insert = conn.prepareStatement(insertRecordSql);
+             PreparedStatement decrement = conn.prepareStatement(DECREMENT_REMAINING_SQL);
+             PreparedStatement update = conn.prepareStatement(UPDATE_CLAIMED_SQL)) {
+
+            List<RedPocketRecord> records = new ArrayList<>();
+            int updates = 0;
+            for (PendingWrite write : writes) {
+                if (write.record != null) {
+                    bindRecord(insert, write.record);
+                    insert.addBatch();
+                    records.add(write.record);
+                } else {
+                    bindClaimed(update, write.redPocketId);
+                    update.addBatch();
+                    updates++;
+                }
+            }
+
+            if (!records.isEmpty()) {
+                // 重放时已存在的记录被忽略，不再重复扣减剩余份数
+                int[] inserted = insert.executeBatch();
+                int decrements = 0;
+                for (int i = 0; i < inserted.length; i++) {
+                    if (inserted[i] != 0) {
+                        bindDecrement(decrement, records.get(i));
+                        decrement.addBatch();
+                        decrements++;
+                    }
+                }
+                if (decrements > 0) {
+                    decrement.executeBatch();
+                }
+            }
+            if (updates > 0) {
+                update.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private boolean writeIndividually(List<PendingWrite> writes) {
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement insert = conn.prepareStatement(insertRecordSql);
+             PreparedStatement decrement = conn.prepareStatement(DECREMENT_REMAINING_SQL);
+             PreparedStatement update = conn.prepareStatement(UPDATE_CLAIMED_SQL)) {
+
+            for (PendingWrite write : writes) {
+                try {
+                    if (write.record != null) {
+                        bindRecord(insert, write.record);
+                        if (insert.executeUpdate() > 0) {
+                            bindDecrement(decrement, write.record);
+                            decrement.executeUpdate();
+                        }
+                    } else {
+                        bindClaimed(update, write.redPocketId);
+                        update.executeUpdate();
+                    }
+                } catch (SQLException e) {
+                    plugin.getPluginLogger().severe("跳过无法写入的记录: " + write.toJournalLine() + " 错误: " + e.getMessage());
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            plugin.getPluginLogger().severe("逐条写入失败，稍后重试: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static void bindRecord(PreparedStatement stmt, RedPocketRecord record) throws SQLException {
+        stmt.setString(1, record.getId());
+        stmt.setString(2, record.getRedPocketId());
+        stmt.setString(3, record.getClaimer().toString());
+        stmt.setDouble(4, Money.toMajor(record.getAmount()));
+        stmt.setLong(5, record.getAmount());
+        stmt.setLong(6, record.getClaimedAt());
+    }
+
+    private static void bindDecrement(PreparedStatement stmt, RedPocketRecord record) throws SQLException {
+        stmt.setLong(1, record.getAmount());
+        stmt.setString(2, record.getRedPocketId());
+    }
+
+    private static void bindClaimed(PreparedStatement stmt, String redPocketId) throws SQLException {
+        stmt.setBoolean(1, true);
+        stmt.setString(2, redPocketId);
+    }
+
+    /**
+     * 停止写入线程，提交剩余的写入；未能提交的部分保留在日志中，下次启动时重放
+     */
+    public void shutdown() {
+        try {
+            writer.submit(this::flush).get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            plugin.getPluginLogger().severe("关闭时提交写入失败: " + e.getMessage());
+        }
+
+        writer.shutdownNow();
+        syncer.shutdown();
+
+        synchronized (syncLock) {
+            synchronized (lock) {
+                if (segment != null) {
+                    forceSegment();
+                    try {
+                        segment.close();
+                        if (pending.isEmpty() && segment.file.length() == 0) {
+                            Files.deleteIfExists(segment.file.toPath());
+                        }
+                    } catch (IOException e) {
+                        plugin.getPluginLogger().severe("关闭写入日志失败: " + e.getMessage());
+                    }
+                    segment = null;
+                }
+            }
+        }
+    }
+
+    private JournalSegment openSegment() {
+        File file = new File(journalDir, SEGMENT_PREFIX + (nextSegmentId++) + SEGMENT_SUFFIX);
+        try {
+            return new JournalSegment(file);
+        } catch (IOException e) {
+            plugin.getPluginLogger().severe("创建写入日志失败: " + file.getName() + " " + e.getMessage());
+            e.printStackTrace();
+            return new JournalSegment(file, null);
+        }
+    }
+
+    private List<PendingWrite> readSegment(File file) throws IOException {
+        List<PendingWrite> writes = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                PendingWrite write = PendingWrite.parse(line);
+                if (write != null) {
+                    writes.add(write);
+                } else if (!line.isEmpty()) {
+                    // 崩溃时最后一行可能只写了一半
+                    plugin.getPluginLogger().warning("忽略无法解析的日志行: " + file.getName());
+                }
+            }
+        }
+        return writes;
+    }
+
+    private static long segmentId(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 一条待写入的数据
+     */
+    private static final class PendingWrite {
+
+        private final RedPocketRecord record;   // 抢取记录
+        private final String redPocketId;       // 红包已抢完
+        // 日志落盘后完成
+        private final CompletableFuture<Void> synced = new CompletableFuture<>();
+
+        private PendingWrite(RedPocketRecord record, String redPocketId) {
+            this.record = record;
+            this.redPocketId = redPocketId;
+        }
+
+        static PendingWrite record(RedPocketRecord record) {
+            return new PendingWrite(record, null);
+        }
+
+        static PendingWrite claimed(String redPocketId) {
+            return new PendingWrite(null, redPocketId);
+        }
+
+        String toJournalLine() {
+            if (record != null) {
+                return "R\t" + record.getId() + "\t" + record.getRedPocketId() + "\t" + record.getClaimer() +
+                    "\t" + record.getAmount() + "\t" + record.getClaimedAt();
+            }
+            return "C\t" + redPocketId;
+        }
+
+        static PendingWrite parse(String line) {
+            String[] parts = line.split("\t");
+            try {
+                if (parts.length == 6 && parts[0].equals("R")) {
+                    return record(new RedPocketRecord(parts[1], parts[2], UUID.fromString(parts[3]),
+                        Long.parseLong(parts[4]), Long.parseLong(parts[5])));
+                }
+                if (parts.length == 2 && parts[0].equals("C")) {
+                    return claimed(parts[1]);
+                }
+            } catch (IllegalArgumentException e) {
+                // 由调用方记录
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 一批待提交的写入及其对应的日志文件
+     */
+    private static final class Batch {
+
+        private final List<PendingWrite> writes;
+        private final File journal;
+        private int attempts;
+
+        private Batch(List<PendingWrite> writes, File journal) {
+            this.writes = writes;
+            this.journal = journal;
+        }
+    }
+
+    /**
+     * 追加写入的日志文件，追加时不落盘，由 force 合并落盘
+     */
+    private static final class JournalSegment {
+
+        private final File file;
+        private final FileChannel channel;
+        // 已追加但尚未落盘的写入，由 lock 保护
+        private List<PendingWrite> unsynced = new ArrayList<>();
+
+        private JournalSegment(File file) throws IOException {
+            this(file, new FileOutputStream(file, true).getChannel());
+        }
+
+        private JournalSegment(File file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+
+        void append(String line) throws IOException {
+            if (channel == null) {
+                throw new IOException("日志文件不可用: " + file.getName());
+            }
+            ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        void force() throws IOException {
+            if (channel == null) {
+                throw new IOException("日志文件不可用: " + file.getName());
+            }
+            channel.force(false);
+        }
+
+        List<PendingWrite> takeUnsynced() {
+            List<PendingWrite> writes = unsynced;
+            unsynced = new ArrayList<>();
+            return writes;
+        }
+
+        void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.redpockets.economy;
 
 import com.redpockets.RedPocketsPlugin;
+import com.redpockets.model.Money;
 import net.milkbowl.vault.economy.Economy;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
@@ -10,7 +11,7 @@ import java.util.logging.Level;
 
 /**
  * 经济管理器
- * 使用 Vault API 进行经济操作
+ * 使用 Vault API 进行经济操作，对外金额单位为分（见 Money）
  */
 public class EconomyManager {
 
@@ -60,13 +61,13 @@ public class EconomyManager {
     /**
      * 获取玩家余额
      */
-    public double getBalance(Player player) {
+    public long getBalance(Player player) {
         if (!isEnabled()) {
             return 0;
         }
 
         try {
-            return economy.getBalance(player);
+            return Money.fromMajor(economy.getBalance(player));
         } catch (Exception e) {
             plugin.getPluginLogger().severe("获取玩家余额失败: " + e.getMessage());
             return 0;
@@ -76,13 +77,13 @@ public class EconomyManager {
     /**
      * 检查玩家是否有足够的余额
      */
-    public boolean hasEnough(Player player, double amount) {
+    public boolean hasEnough(Player player, long amount) {
         if (!isEnabled()) {
             return false;
         }
 
         try {
-            return economy.has(player, amount);
+            return economy.has(player, Money.toMajor(amount));
         } catch (Exception e) {
             plugin.getPluginLogger().severe("检查玩家余额失败: " + e.getMessage());
             return false;
@@ -92,7 +93,7 @@ public class EconomyManager {
     /**
      * 从玩家账户扣除金额
      */
-    public boolean withdraw(Player player, double amount) {
+    public boolean withdraw(Player player, long amount) {
         if (!isEnabled()) {
             plugin.getPluginLogger().warning("经济系统未启用，无法扣除金额");
             return false;
@@ -104,8 +105,8 @@ public class EconomyManager {
         }
 
         try {
-            economy.withdrawPlayer(player, amount);
-            plugin.getPluginLogger().info("从玩家 " + player.getName() + " 扣除 " + amount + " 金币");
+            economy.withdrawPlayer(player, Money.toMajor(amount));
+            plugin.getPluginLogger().info("从玩家 " + player.getName() + " 扣除 " + Money.format(amount) + " 金币");
             return true;
         } catch (Exception e) {
             plugin.getPluginLogger().severe("扣除金额时发生错误: " + e.getMessage());
@@ -117,7 +118,7 @@ public class EconomyManager {
     /**
      * 给玩家账户增加金额
      */
-    public boolean deposit(Player player, double amount) {
+    public boolean deposit(Player player, long amount) {
         if (!isEnabled()) {
             plugin.getPluginLogger().warning("经济系统未启用，无法增加金额");
             return false;
@@ -129,8 +130,8 @@ public class EconomyManager {
         }
 
         try {
-            economy.depositPlayer(player, amount);
-            plugin.getPluginLogger().info("给玩家 " + player.getName() + " 增加 " + amount + " 金币");
+            economy.depositPlayer(player, Money.toMajor(amount));
+            plugin.getPluginLogger().info("给玩家 " + player.getName() + " 增加 " + Money.format(amount) + " 金币");
             return true;
         } catch (Exception e) {
             plugin.getPluginLogger().severe("增加金额时发生错误: " + e.getMessage());
@@ -142,7 +143,7 @@ public class EconomyManager {
     /**
      * 给离线玩家账户增加金额
      */
-    public boolean depositOffline(OfflinePlayer player, double amount) {
+    public boolean depositOffline(OfflinePlayer player, long amount) {
         if (!isEnabled()) {
             plugin.getPluginLogger().warning("经济系统未启用，无法增加金额");
             return false;
@@ -154,8 +155,8 @@ public class EconomyManager {
         }
 
         try {
-            economy.depositPlayer(player, amount);
-            plugin.getPluginLogger().info("给离线玩家 " + player.getName() + " 增加 " + amount + " 金币");
+            economy.depositPlayer(player, Money.toMajor(amount));
+            plugin.getPluginLogger().info("给离线玩家 " + player.getName() + " 增加 " + Money.format(amount) + " 金币");
             return true;
         } catch (Exception e) {
             plugin.getPluginLogger().severe("增加金额时发生错误: " + e.getMessage());
@@ -187,11 +188,11 @@ public class EconomyManager {
     /**
      * 格式化金额显示
      */
-    public String formatAmount(double amount) {
+    public String formatAmount(long amount) {
         if (!isEnabled()) {
-            return String.format("%.2f 金币", amount);
+            return Money.format(amount) + " 金币";
         }
-        return economy.format(amount);
+        return economy.format(Money.toMajor(amount));
     }
 
     /**
@@ -1,6 +1,7 @@
 package com.redpockets.gui;
 
 import com.redpockets.RedPocketsPlugin;
+import com.redpockets.model.Money;
 import com.redpockets.model.RedPocket;
 import de.tr7zw.nbtapi.NBT;
 import org.bukkit.Bukkit;
@@ -22,7 +23,7 @@ import java.util.Map;
 public class CoinRedPocketGUI {
 
     private final RedPocketsPlugin plugin;
-    private final Map<Player, Double> pendingAmounts;
+    private final Map<Player, Long> pendingAmounts;
     private final Map<Player, Integer> pendingCounts;
     private final Map<Player, String> pendingNotes;
     private final Map<Player, RedPocket.RedPocketType> distributionTypes;
@@ -91,9 +92,9 @@ public class CoinRedPocketGUI {
         ItemStack item = new ItemStack(Material.GOLD_INGOT);
         ItemMeta meta = item.getItemMeta();
 
-        double amount = pendingAmounts.getOrDefault(player, 0.0);
+        long amount = pendingAmounts.getOrDefault(player, 0L);
         Map<String, String> placeholders = new HashMap<>();
-        placeholders.put("amount", String.valueOf(amount));
+        placeholders.put("amount", Money.format(amount));
         String title = ChatColor.translateAlternateColorCodes('&',
             plugin.getMessageManager().getMessage("gui.create.coin.amount.title", placeholders));
         meta.setDisplayName(title);
@@ -253,17 +254,17 @@ public class CoinRedPocketGUI {
     }
 
     /**
-     * 设置待发送金额
+     * 设置待发送金额（分）
      */
-    public void setPendingAmount(Player player, double amount) {
+    public void setPendingAmount(Player player, long amount) {
         pendingAmounts.put(player, amount);
     }
 
     /**
-     * 获取待发送金额
+     * 获取待发送金额（分）
      */
-    public double getPendingAmount(Player player) {
-        return pendingAmounts.getOrDefault(player, 0.0);
+    public long getPendingAmount(Player player) {
+        return pendingAmounts.getOrDefault(player, 0L);
     }
 
     /**
@@ -1,6 +1,8 @@
 package com.redpockets.gui;
 
 import com.redpockets.RedPocketsPlugin;
+import com.redpockets.manager.ItemEditSession;
+import com.redpockets.scheduler.TaskHandle;
 import de.tr7zw.nbtapi.NBT;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -13,6 +15,9 @@ import org.bukkit.inventory.meta.ItemMeta;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 物品红包创建GUI
@@ -22,11 +27,14 @@ public class ItemRedPocketGUI {
     private final RedPocketsPlugin plugin;
     private final Map<Player, Inventory> playerInventories;
     private final Map<Player, Boolean> playerReadOnlyMode;
+    // 已安排、尚未执行的自动保存，每个玩家只保留最近一次
+    private final Map<UUID, PendingSave> pendingSaves;
 
     public ItemRedPocketGUI(RedPocketsPlugin plugin) {
         this.plugin = plugin;
         this.playerInventories = new HashMap<>();
         this.playerReadOnlyMode = new HashMap<>();
+        this.pendingSaves = new ConcurrentHashMap<>();
     }
 
     /**
@@ -59,8 +67,23 @@ public class ItemRedPocketGUI {
      */
     public void openItemEditGUI(Player player) {
         plugin.getScheduler().runForEntity(player, () -> {
+            // 会话通常在玩家进入时已加载，尚未加载完成时先在数据库线程加载，完成后重新打开
+            ItemEditSession session = plugin.getItemEditStorageManager().getSession(player.getUniqueId());
+            if (session == null) {
+                plugin.getItemEditStorageManager().openSessionAsync(player.getUniqueId())
+                    .whenComplete((loaded, error) -> {
+                        if (error != null) {
+                            // 会话没有打开，下次打开编辑界面时重新加载
+                            plugin.getMessageManager().sendError(player, "gui.create.item.edit.load_failed");
+                        } else {
+                            openItemEditGUI(player);
+                        }
+                    });
+                return;
+            }
+
             // 检查是否已发送红包且未过期
-            boolean isLocked = plugin.getItemEditStorageManager().isItemsLocked(player.getUniqueId());
+            boolean isLocked = session.isLocked();
             playerReadOnlyMode.put(player, isLocked);
 
             String titleKey = isLocked ? "gui.create.item.edit.title_readonly" : "gui.create.item.edit.title";
@@ -68,8 +91,8 @@ public class ItemRedPocketGUI {
                 plugin.getMessageManager().getMessage(titleKey));
             Inventory inv = Bukkit.createInventory(null, 54, title);
 
-            // 先尝试从数据库加载持久化的物品
-            ItemStack[] savedItems = plugin.getItemEditStorageManager().loadPlayerItems(player.getUniqueId());
+            // 先尝试加载持久化的物品
+            ItemStack[] savedItems = session.getItems();
             if (savedItems != null) {
                 // 从数据库加载
                 for (int i = 0; i < Math.min(savedItems.length, 54); i++) {
@@ -188,22 +211,89 @@ public class ItemRedPocketGUI {
     }
 
     /**
-     * 自动保存编辑内容（在操作后调用）
-     * 同时保存到内存和数据库
+     * 安排一次自动保存（在操作后调用），同一玩家在保存间隔内的多次操作合并为一次
      */
-    public void autoSave(Player player, Inventory editInv) {
-        // 保存到内存
-        savePlayerInventory(player, editInv);
+    public void scheduleAutoSave(Player player, Inventory editInv) {
+        UUID uuid = player.getUniqueId();
+        PendingSave pending = pendingSaves.get(uuid);
+        if (pending != null && pending.inventory == editInv) {
+            return;
+        }
+        if (pending != null) {
+            // 之前的界面已经关闭，取消为它安排的保存
+            pending.task.cancel();
+        }
+
+        PendingSave next = new PendingSave(editInv);
+        pendingSaves.put(uuid, next);
+        long delayTicks = Math.max(1, plugin.getConfigManager().getAutoSaveDelay() / 50);
+        next.task = plugin.getScheduler().runForEntityLater(player, () -> {
+            // 只有仍是最近一次安排的保存才执行，界面关闭后重新打开时旧任务不会保存旧界面
+            if (pendingSaves.remove(uuid, next)) {
+                autoSave(player, editInv);
+            }
+        }, delayTicks);
+    }
 
-        // 保存到数据库（持久化），如果已有关联红包则保持关联
-        String redPocketId = plugin.getItemEditStorageManager().getRedPocketId(player.getUniqueId());
-        long expiresAt = plugin.getItemEditStorageManager().getRedPocketExpiresAt(player.getUniqueId());
+    /**
+     * 立即执行尚未执行的自动保存（玩家退出时调用）
+     */
+    public void flushAutoSave(Player player) {
+        PendingSave pending = pendingSaves.remove(player.getUniqueId());
+        if (pending == null) {
+            return;
+        }
+        pending.task.cancel();
+        if ("item_edit".equals(plugin.getGUIManager().getGUIType(player))
+                && player.getOpenInventory().getTopInventory() == pending.inventory) {
+            autoSave(player, pending.inventory);
+        }
+    }
+
+    /**
+     * 自动保存编辑内容（关闭界面或合并间隔结束时调用）
+     * 与上次保存的内容相同时不保存，否则同时保存到内存和编辑会话，数据库异步写入
+     */
+    public void autoSave(Player player, Inventory editInv) {
+        PendingSave pending = pendingSaves.get(player.getUniqueId());
+        if (pending != null && pending.inventory == editInv && pendingSaves.remove(player.getUniqueId(), pending)) {
+            pending.task.cancel();
+        }
 
         ItemStack[] items = new ItemStack[54];
         for (int i = 0; i < 54; i++) {
             items[i] = editInv.getItem(i);
         }
-        plugin.getItemEditStorageManager().savePlayerItems(player.getUniqueId(), items, redPocketId, expiresAt);
+
+        ItemEditSession session = plugin.getItemEditStorageManager().getSession(player.getUniqueId());
+        if (session != null && isUnchanged(session.getItems(), items)) {
+            return;
+        }
+
+        // 保存到内存
+        savePlayerInventory(player, editInv);
+
+        // 保存到编辑会话（持久化），如果已有关联红包则保持关联
+        plugin.getItemEditStorageManager().updatePlayerItemsAsync(player.getUniqueId(), items);
+    }
+
+    /**
+     * 逐个槽位比较，空槽位和不存在的槽位视为相同
+     */
+    private static boolean isUnchanged(ItemStack[] saved, ItemStack[] items) {
+        int length = Math.max(saved != null ? saved.length : 0, items.length);
+        for (int i = 0; i < length; i++) {
+            ItemStack before = saved != null && i < saved.length ? normalize(saved[i]) : null;
+            ItemStack after = i < items.length ? normalize(items[i]) : null;
+            if (!Objects.equals(before, after)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ItemStack normalize(ItemStack item) {
+        return item == null || item.getType().isAir() || item.getAmount() <= 0 ? null : item;
     }
 
     /**
@@ -250,8 +340,8 @@ public class ItemRedPocketGUI {
             }
         }
 
-        // 更新数据库，关联红包ID和过期时间
-        plugin.getItemEditStorageManager().savePlayerItems(player.getUniqueId(), items, redPocketId, expiresAt);
+        // 更新编辑会话，关联红包ID和过期时间，数据库异步写入
+        plugin.getItemEditStorageManager().savePlayerItemsAsync(player.getUniqueId(), items, redPocketId, expiresAt);
 
         // 更新只读状态
         playerReadOnlyMode.put(player, true);
@@ -263,4 +353,16 @@ public class ItemRedPocketGUI {
     public boolean isReadOnlyMode(Player player) {
         return playerReadOnlyMode.getOrDefault(player, false);
     }
+
+    /**
+     * 一次已安排的自动保存，记录要保存的界面和对应的任务
+     */
+    private static final class PendingSave {
+        private final Inventory inventory;
+        private volatile TaskHandle task = TaskHandle.NONE;
+
+        private PendingSave(Inventory inventory) {
+            this.inventory = inventory;
+        }
+    }
 }
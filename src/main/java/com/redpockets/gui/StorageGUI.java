@@ -1,89 +1,123 @@
 package com.redpockets.gui;
 
 import com.redpockets.RedPocketsPlugin;
+import com.redpockets.manager.StorageMailboxManager;
 import de.tr7zw.nbtapi.NBT;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 储物间GUI
- * 用于保存未领取完的物品红包
+ * 用于保存未领取完的物品红包，内容持久化在数据库中，超过一页时分页显示
  */
 public class StorageGUI {
 
+    // 每页显示的物品数量（前 5 行），最后一行为控制行
+    public static final int PAGE_SIZE = 45;
+    private static final int PREVIOUS_SLOT = 45;
+    private static final int INFO_SLOT = 49;
+    private static final int NEXT_SLOT = 53;
+
     private final RedPocketsPlugin plugin;
-    private final Map<Player, List<ItemStack>> playerStorage;
 
     public StorageGUI(RedPocketsPlugin plugin) {
         this.plugin = plugin;
-        this.playerStorage = new HashMap<>();
     }
 
     /**
      * 打开储物间GUI (9x6)
      */
     public void openStorageGUI(Player player) {
-        plugin.getScheduler().runForEntity(player, () -> {
-            String title = ChatColor.translateAlternateColorCodes('&',
-                plugin.getMessageManager().getMessage("gui.storage.title"));
-            Inventory inv = Bukkit.createInventory(null, 54, title);
-
-            // 加载物品
-            loadStorageItems(inv, player);
-
-            // 填充控制行
-            fillControlRow(inv);
-
-            player.openInventory(inv);
-            plugin.getGUIManager().registerGUI(player, inv, "storage");
-        });
+        openStorageGUI(player, 0);
     }
 
     /**
-     * 加载储物间物品
+     * 打开储物间GUI的指定页，储物间未加载时先在异步线程加载，加载失败时不打开
      */
-    private void loadStorageItems(Inventory inv, Player player) {
-        List<ItemStack> items = playerStorage.get(player);
-        if (items == null) return;
+    public void openStorageGUI(Player player, int page) {
+        UUID uuid = player.getUniqueId();
+        try {
+            plugin.getDatabaseManager().getExecutor().execute(() -> {
+                StorageMailboxManager.Mailbox mailbox;
+                try {
+                    mailbox = plugin.getStorageMailboxManager().get(uuid);
+                } catch (IllegalStateException e) {
+                    plugin.getMessageManager().sendError(player, "gui.storage.load_failed");
+                    return;
+                }
+                plugin.getScheduler().runForEntity(player, () -> showPage(player, mailbox, page));
+            });
+        } catch (RejectedExecutionException e) {
+            plugin.getMessageManager().sendError(player, "gui.storage.load_failed");
+        }
+    }
 
-        for (int i = 0; i < items.size() && i < 45; i++) {
-            ItemStack item = items.get(i);
-            inv.setItem(i, item != null ? item.clone() : null);
+    private void showPage(Player player, StorageMailboxManager.Mailbox mailbox, int page) {
+        int pages = Math.max(1, (mailbox.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+        int current = Math.min(Math.max(page, 0), pages - 1);
+
+        String title = ChatColor.translateAlternateColorCodes('&',
+            plugin.getMessageManager().getMessage("gui.storage.title"));
+        // 页码记录在界面自身上，打开新界面时旧界面的关闭事件不会影响它
+        Inventory inv = Bukkit.createInventory(new StorageInventoryHolder(current), 54, title);
+
+        // 加载物品
+        List<ItemStack> items = mailbox.page(current * PAGE_SIZE, PAGE_SIZE);
+        for (int i = 0; i < items.size(); i++) {
+            inv.setItem(i, items.get(i));
         }
+
+        // 填充控制行
+        fillControlRow(inv, current, pages);
+
+        player.openInventory(inv);
+        plugin.getGUIManager().registerGUI(player, inv, "storage");
     }
 
     /**
      * 填充控制行
      */
-    private void fillControlRow(Inventory inv) {
+    private void fillControlRow(Inventory inv, int page, int pages) {
         ItemStack glass = new ItemStack(Material.LIGHT_GRAY_STAINED_GLASS_PANE);
         ItemMeta glassMeta = glass.getItemMeta();
         glassMeta.setDisplayName(" ");
         glass.setItemMeta(glassMeta);
 
-        for (int i = 45; i < 54; i++) {
+        for (int i = PAGE_SIZE; i < 54; i++) {
             inv.setItem(i, glass.clone());
         }
 
+        if (page > 0) {
+            inv.setItem(PREVIOUS_SLOT, createPageItem("gui.storage.previous", "storage_previous"));
+        }
+        if (page < pages - 1) {
+            inv.setItem(NEXT_SLOT, createPageItem("gui.storage.next", "storage_next"));
+        }
+
         // 信息提示
-        ItemStack infoItem = createInfoItem();
-        inv.setItem(49, infoItem);
+        ItemStack infoItem = createInfoItem(page, pages);
+        inv.setItem(INFO_SLOT, infoItem);
     }
 
     /**
      * 创建信息物品
      */
-    private ItemStack createInfoItem() {
+    private ItemStack createInfoItem(int page, int pages) {
         ItemStack item = new ItemStack(Material.BOOK);
         ItemMeta meta = item.getItemMeta();
 
@@ -91,7 +125,12 @@ public class StorageGUI {
             plugin.getMessageManager().getMessage("gui.storage.info.title"));
         meta.setDisplayName(title);
 
-        List<String> lore = plugin.getMessageManager().getMessageList("gui.storage.info.lore");
+        Map<String, String> placeholders = new HashMap<>();
+        placeholders.put("page", String.valueOf(page + 1));
+        placeholders.put("pages", String.valueOf(pages));
+        List<String> lore = new ArrayList<>(plugin.getMessageManager().getMessageList("gui.storage.info.lore"));
+        lore.add(ChatColor.translateAlternateColorCodes('&',
+            plugin.getMessageManager().getMessage("gui.storage.page", placeholders)));
         meta.setLore(lore);
 
         item.setItemMeta(meta);
@@ -100,82 +139,140 @@ public class StorageGUI {
     }
 
     /**
-     * 添加物品到储物间
+     * 创建翻页按钮
      */
-    public void addToStorage(Player player, ItemStack item) {
-        playerStorage.computeIfAbsent(player, k -> new ArrayList<>()).add(item.clone());
+    private ItemStack createPageItem(String titleKey, String action) {
+        ItemStack item = new ItemStack(Material.ARROW);
+        ItemMeta meta = item.getItemMeta();
+
+        String title = ChatColor.translateAlternateColorCodes('&',
+            plugin.getMessageManager().getMessage(titleKey));
+        meta.setDisplayName(title);
+
+        item.setItemMeta(meta);
+
+        NBT.modify(item, nbt -> {
+            nbt.setString("redpocket_action", action);
+        });
+
+        return item;
     }
 
     /**
-     * 批量添加物品到储物间
+     * 处理储物间点击：取出物品或翻页
+     * @param inventory 被点击的储物间界面
      */
-    public void addToStorage(Player player, ItemStack[] items) {
-        for (ItemStack item : items) {
-            if (item != null) {
-                addToStorage(player, item);
-            }
+    public void handleClick(Player player, Inventory inventory, int slot) {
+        if (!(inventory.getHolder() instanceof StorageInventoryHolder)) {
+            return;
+        }
+        int page = ((StorageInventoryHolder) inventory.getHolder()).getPage();
+        if (slot == PREVIOUS_SLOT) {
+            openStorageGUI(player, page - 1);
+            return;
         }
+        if (slot == NEXT_SLOT) {
+            openStorageGUI(player, page + 1);
+            return;
+        }
+        if (slot < 0 || slot >= PAGE_SIZE) {
+            return;
+        }
+
+        StorageMailboxManager.Mailbox mailbox = plugin.getStorageMailboxManager().getIfLoaded(player.getUniqueId());
+        if (mailbox == null) {
+            return;
+        }
+
+        int index = page * PAGE_SIZE + slot;
+        ItemStack item = mailbox.remove(index);
+        if (item == null) {
+            return;
+        }
+
+        // 背包放不下的部分放回原位置
+        Map<Integer, ItemStack> leftover = player.getInventory().addItem(item.clone());
+        for (ItemStack rest : leftover.values()) {
+            mailbox.insert(index, rest);
+        }
+        plugin.getStorageMailboxManager().changed(mailbox);
+
+        if (mailbox.size() == 0) {
+            plugin.getMessageManager().sendSuccess(player, "gui.storage.empty");
+        }
+
+        // 取出后后面的物品前移，下一 tick 重新打开当前页（不在点击事件中切换界面）
+        plugin.getScheduler().runForEntityLater(player, () -> showPage(player, mailbox, page), 1L);
     }
 
     /**
-     * 从储物间移除物品
+     * 添加物品到储物间
+     * @return 加入后完成，储物间加载失败时异常完成
      */
-    public void removeFromStorage(Player player, int slot) {
-        List<ItemStack> items = playerStorage.get(player);
-        if (items != null && slot >= 0 && slot < items.size()) {
-            items.remove(slot);
-            if (items.isEmpty()) {
-                playerStorage.remove(player);
-            }
-        }
+    public CompletableFuture<Void> addToStorage(Player player, ItemStack item) {
+        return plugin.getStorageMailboxManager().add(player.getUniqueId(), List.of(item));
     }
 
     /**
-     * 保存储物间内容
+     * 批量添加物品到储物间
+     * @return 加入后完成，储物间加载失败时异常完成
      */
-    public void saveStorage(Player player, Inventory inv) {
-        List<ItemStack> items = new ArrayList<>();
-        for (int i = 0; i < 45; i++) {
-            ItemStack item = inv.getItem(i);
-            if (item != null) {
-                items.add(item.clone());
-            }
-        }
-
-        if (items.isEmpty()) {
-            playerStorage.remove(player);
-        } else {
-            playerStorage.put(player, items);
-        }
+    public CompletableFuture<Void> addToStorage(Player player, ItemStack[] items) {
+        return plugin.getStorageMailboxManager().add(player.getUniqueId(), Arrays.asList(items));
     }
 
     /**
-     * 获取储物间物品数量
+     * 获取储物间物品数量（未加载时为 0）
      */
     public int getStorageSize(Player player) {
-        List<ItemStack> items = playerStorage.get(player);
-        return items == null ? 0 : items.size();
+        StorageMailboxManager.Mailbox mailbox = plugin.getStorageMailboxManager().getIfLoaded(player.getUniqueId());
+        return mailbox == null ? 0 : mailbox.size();
     }
 
     /**
-     * 检查储物间是否为空
+     * 检查储物间是否为空（未加载时视为空）
      */
     public boolean isStorageEmpty(Player player) {
-        List<ItemStack> items = playerStorage.get(player);
-        return items == null || items.isEmpty();
+        return getStorageSize(player) == 0;
     }
 
     /**
      * 清除储物间
      */
     public void clearStorage(Player player) {
-        playerStorage.remove(player);
+        UUID uuid = player.getUniqueId();
+        plugin.getDatabaseManager().getExecutor().executeOrRetry(() -> {
+            StorageMailboxManager.Mailbox mailbox = plugin.getStorageMailboxManager().get(uuid);
+            mailbox.clear();
+            plugin.getStorageMailboxManager().changed(mailbox);
+        });
     }
 
     /**
-     * 获取储物间所有物品
+     * 获取储物间所有物品（未加载时为空）
      */
     public List<ItemStack> getStorageItems(Player player) {
-        return new ArrayList<>(playerStorage.getOrDefault(player, new ArrayList<>()));
+        StorageMailboxManager.Mailbox mailbox = plugin.getStorageMailboxManager().getIfLoaded(player.getUniqueId());
+        return mailbox == null ? new ArrayList<>() : mailbox.page(0, mailbox.size());
+    }
+
+    /**
+     * 储物间GUI持有者类，记录界面显示的页码
+     */
+    public static class StorageInventoryHolder implements InventoryHolder {
+        private final int page;
+
+        public StorageInventoryHolder(int page) {
+            this.page = page;
+        }
+
+        public int getPage() {
+            return page;
+        }
+
+        @Override
+        public Inventory getInventory() {
+            return null;
+        }
     }
 }
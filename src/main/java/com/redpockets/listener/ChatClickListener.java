@@ -68,34 +68,11 @@ public class ChatClickListener implements Listener {
 
     /**
      * 尝试抢红包
+     * 抢红包流程全部异步执行，完成后再提示玩家
      */
     private void tryGrabRedPocket(Player player, String redPocketId) {
-        var redPocket = plugin.getRedPocketManager().getRedPocket(redPocketId);
-        
-        // 如果红包不存在，发送失败消息
-        if (redPocket == null) {
-            plugin.getMessageManager().sendError(player, "commands.grab.failed");
-            return;
-        }
-
-        // 如果是物品红包，不在这里发送成功消息（grabItemRedPocket已经发送）
-        if (redPocket.getType() == com.redpockets.model.RedPocket.RedPocketType.ITEM) {
-            plugin.getRedPocketManager().grabRedPocketWithPayment(redPocketId, player);
-            return;
-        }
-
-        // 金币红包：发送成功消息
-        var amountOpt = plugin.getRedPocketManager().grabRedPocketWithPayment(redPocketId, player);
-
-        if (amountOpt.isPresent()) {
-            double amount = amountOpt.get();
-
-            java.util.Map<String, String> placeholders = new java.util.HashMap<>();
-            placeholders.put("amount", String.valueOf(amount));
-            plugin.getMessageManager().sendSuccess(player, "commands.grab.success", placeholders);
-        } else {
-            plugin.getMessageManager().sendError(player, "commands.grab.failed");
-        }
+        plugin.getRedPocketManager().grabRedPocketAsync(redPocketId, player)
+            .thenAccept(result -> plugin.getRedPocketManager().sendGrabFeedback(player, result));
     }
 
     /**
@@ -3,6 +3,7 @@ package com.redpockets.listener;
 import com.redpockets.RedPocketsPlugin;
 import com.redpockets.gui.*;
 import com.redpockets.manager.ItemRedPocketPreviewManager;
+import com.redpockets.model.Money;
 import com.redpockets.model.RedPocket;
 import de.tr7zw.nbtapi.NBTItem;
 import org.bukkit.entity.Player;
@@ -10,6 +11,7 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
 import org.bukkit.inventory.ItemStack;
 
 import java.util.HashMap;
@@ -50,6 +52,14 @@ public class GUIListener implements Listener {
         // 其他 GUI 取消操作
         event.setCancelled(true);
 
+        // 储物间按位置取出物品或翻页，只处理上方的储物间界面
+        if (guiType.equals("storage")) {
+            if (event.getRawSlot() < event.getInventory().getSize()) {
+                plugin.getStorageGUI().handleClick(player, event.getInventory(), event.getRawSlot());
+            }
+            return;
+        }
+
         ItemStack clicked = event.getCurrentItem();
         if (clicked == null || !clicked.hasItemMeta()) return;
 
@@ -78,10 +88,6 @@ public class GUIListener implements Listener {
             case "item_redpocket":
                 handleItemRedPocketClick(player, action);
                 break;
-
-            case "storage":
-                handleStorageClick(player, slot);
-                break;
         }
     }
 
@@ -112,13 +118,13 @@ public class GUIListener implements Listener {
                 plugin.getMessageManager().sendMessage(player, "gui.create.coin.amount.input");
                 plugin.getChatInputManager().waitForInput(player, input -> {
                     try {
-                        double amount = Double.parseDouble(input);
+                        long amount = Money.parse(input);
                         if (amount <= 0) {
                             plugin.getMessageManager().sendError(player, "gui.create.coin.amount.invalid");
                         } else {
                             coinGUI.setPendingAmount(player, amount);
                             Map<String, String> placeholders = new HashMap<>();
-                            placeholders.put("amount", String.valueOf(amount));
+                            placeholders.put("amount", Money.format(amount));
                             plugin.getMessageManager().sendMessage(player, "gui.create.coin.amount.success", placeholders);
                         }
                     } catch (NumberFormatException e) {
@@ -173,7 +179,7 @@ public class GUIListener implements Listener {
                 break;
 
             case "confirm_send":
-                double amount = coinGUI.getPendingAmount(player);
+                long amount = coinGUI.getPendingAmount(player);
                 int count = coinGUI.getPendingCount(player);
                 String note = coinGUI.getPendingNote(player);
 
@@ -190,34 +196,36 @@ public class GUIListener implements Listener {
                 // 获取当前选择的分配方式
                 com.redpockets.model.RedPocket.RedPocketType distributionType = coinGUI.getDistributionType(player);
 
-                // 创建红包（包含经济验证和扣除）
-                RedPocket redPocket = plugin.getRedPocketManager().createRedPocketWithValidation(
+                // 创建红包（包含经济验证和扣除），数据库写入完成后回调
+                plugin.getRedPocketManager().createRedPocketWithValidation(
                     player,
                     distributionType,
                     amount,
                     count,
                     note
-                );
-
-                if (redPocket == null) {
-                    // 创建失败（经济验证失败或扣除失败）
-                    return;
-                }
-
-                // 广播红包到所有在线玩家
-                plugin.getRedPocketManager().broadcastRedPocket(redPocket);
-
-                Map<String, String> placeholders = new HashMap<>();
-                placeholders.put("id", redPocket.getId());
-                plugin.getMessageManager().sendSuccess(player, "gui.create.coin.confirm.success", placeholders);
-                placeholders.clear();
-                placeholders.put("id", redPocket.getId());
-                placeholders.put("amount", String.valueOf(amount));
-                placeholders.put("count", String.valueOf(count));
-                plugin.getMessageManager().sendMessage(player, "commands.create.success", placeholders);
+                ).thenAccept(redPocket -> {
+                    if (redPocket == null) {
+                        // 创建失败（经济验证失败、扣除失败或保存失败）
+                        return;
+                    }
 
-                coinGUI.clearPlayerData(player);
-                player.closeInventory();
+                    // 广播红包到所有在线玩家
+                    plugin.getRedPocketManager().broadcastRedPocket(redPocket);
+
+                    Map<String, String> placeholders = new HashMap<>();
+                    placeholders.put("id", redPocket.getId());
+                    plugin.getMessageManager().sendSuccess(player, "gui.create.coin.confirm.success", placeholders);
+                    placeholders.clear();
+                    placeholders.put("id", redPocket.getId());
+                    placeholders.put("amount", Money.format(redPocket.getTotalAmount()));
+                    placeholders.put("count", String.valueOf(redPocket.getCount()));
+                    plugin.getMessageManager().sendMessage(player, "commands.create.success", placeholders);
+
+                    plugin.getScheduler().runForEntity(player, () -> {
+                        coinGUI.clearPlayerData(player);
+                        player.closeInventory();
+                    });
+                });
                 break;
         }
     }
@@ -259,27 +267,29 @@ public class GUIListener implements Listener {
                     return;
                 }
 
-                // 创建物品红包
-                RedPocket redPocket = plugin.getRedPocketManager().createItemRedPocket(player, count, "");
-
-                if (redPocket == null) {
-                    return;
-                }
-
-                // 广播红包到所有在线玩家
-                plugin.getRedPocketManager().broadcastRedPocket(redPocket);
-
-                Map<String, String> placeholders = new HashMap<>();
-                placeholders.put("id", redPocket.getId());
-                plugin.getMessageManager().sendSuccess(player, "gui.create.item.confirm.success", placeholders);
-                placeholders.clear();
-                placeholders.put("id", redPocket.getId());
-                placeholders.put("count", String.valueOf(count));
-                // 物品红包使用单独的成功消息（不显示金额）
-                plugin.getMessageManager().sendMessage(player, "commands.create.success_item", placeholders);
+                // 创建物品红包，数据库写入完成后回调
+                plugin.getRedPocketManager().createItemRedPocket(player, count, "").thenAccept(redPocket -> {
+                    if (redPocket == null) {
+                        return;
+                    }
 
-                itemGUI.clearPlayerData(player);
-                player.closeInventory();
+                    // 广播红包到所有在线玩家
+                    plugin.getRedPocketManager().broadcastRedPocket(redPocket);
+
+                    Map<String, String> placeholders = new HashMap<>();
+                    placeholders.put("id", redPocket.getId());
+                    plugin.getMessageManager().sendSuccess(player, "gui.create.item.confirm.success", placeholders);
+                    placeholders.clear();
+                    placeholders.put("id", redPocket.getId());
+                    placeholders.put("count", String.valueOf(redPocket.getCount()));
+                    // 物品红包使用单独的成功消息（不显示金额）
+                    plugin.getMessageManager().sendMessage(player, "commands.create.success_item", placeholders);
+
+                    plugin.getScheduler().runForEntity(player, () -> {
+                        itemGUI.clearPlayerData(player);
+                        player.closeInventory();
+                    });
+                });
                 break;
         }
     }
@@ -311,33 +321,28 @@ public class GUIListener implements Listener {
         }
 
         // 正常模式：允许所有物品操作（0-53槽位均为编辑区）
-        // 延迟自动保存
+        // 合并一段时间内的操作后自动保存
         if (event.getAction() != org.bukkit.event.inventory.InventoryAction.NOTHING) {
-            plugin.getScheduler().runForEntityLater(player, () -> {
-                itemGUI.autoSave(player, event.getInventory());
-            }, 1L);
+            itemGUI.scheduleAutoSave(player, event.getInventory());
         }
     }
 
     /**
-     * 处理储物间GUI点击
+     * 物品编辑 GUI 中拖动物品同样合并后自动保存
      */
-    private void handleStorageClick(Player player, int slot) {
-        // 允许玩家取出物品，不允许放入
-        if (slot < 45) {
-            ItemStack clicked = player.getOpenInventory().getTopInventory().getItem(slot);
-            if (clicked != null) {
-                StorageGUI storageGUI = plugin.getStorageGUI();
-                // 移除物品并给予玩家
-                player.getOpenInventory().getTopInventory().setItem(slot, null);
-                player.getInventory().addItem(clicked.clone());
-                storageGUI.removeFromStorage(player, slot);
-
-                if (storageGUI.isStorageEmpty(player)) {
-                    plugin.getMessageManager().sendSuccess(player, "gui.storage.empty");
-                }
-            }
+    @EventHandler
+    public void onInventoryDrag(InventoryDragEvent event) {
+        if (!(event.getWhoClicked() instanceof Player)) return;
+
+        Player player = (Player) event.getWhoClicked();
+        if (!"item_edit".equals(plugin.getGUIManager().getGUIType(player))) return;
+
+        ItemRedPocketGUI itemGUI = plugin.getItemRedPocketGUI();
+        if (itemGUI.isReadOnlyMode(player)) {
+            event.setCancelled(true);
+            return;
         }
+        itemGUI.scheduleAutoSave(player, event.getInventory());
     }
 
     @EventHandler
@@ -357,13 +362,6 @@ public class GUIListener implements Listener {
             plugin.getScheduler().runForEntityLater(player, () -> {
                 itemGUI.openItemRedPocketGUI(player);
             }, 1L);
-            return;
-        }
-
-        // 储物间GUI关闭时保存
-        if (guiType.equals("storage")) {
-            StorageGUI storageGUI = plugin.getStorageGUI();
-            storageGUI.saveStorage(player, event.getInventory());
         }
     }
 }
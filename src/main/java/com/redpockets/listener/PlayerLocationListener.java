@@ -0,0 +1,69 @@
+package com.redpockets.listener;
+
+import com.redpockets.RedPocketsPlugin;
+import com.redpockets.manager.BroadcastRouter;
+import com.redpockets.manager.PlayerLocationIndex;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+
+/**
+ * 玩家位置监听器
+ * 维护广播使用的玩家位置索引，玩家退出时同时清除广播限流记录
+ */
+public class PlayerLocationListener implements Listener {
+
+    private final BroadcastRouter broadcastRouter;
+    private final PlayerLocationIndex locationIndex;
+
+    public PlayerLocationListener(RedPocketsPlugin plugin) {
+        this.broadcastRouter = plugin.getBroadcastRouter();
+        this.locationIndex = broadcastRouter.getLocationIndex();
+    }
+
+    /**
+     * 为在线玩家建立索引（插件重载时对已在线的玩家调用）
+     */
+    public void track(Player player) {
+        locationIndex.update(player, player.getLocation());
+    }
+
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        track(event.getPlayer());
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        broadcastRouter.removePlayer(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent event) {
+        Location from = event.getFrom();
+        Location to = event.getTo();
+        // 移动事件非常频繁，只在方块坐标变化时更新
+        if (to == null || (from.getBlockX() == to.getBlockX() && from.getBlockZ() == to.getBlockZ()
+                && from.getWorld() == to.getWorld())) {
+            return;
+        }
+        locationIndex.update(event.getPlayer(), to);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerTeleport(PlayerTeleportEvent event) {
+        locationIndex.update(event.getPlayer(), event.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(PlayerRespawnEvent event) {
+        locationIndex.update(event.getPlayer(), event.getRespawnLocation());
+    }
+}
@@ -0,0 +1,50 @@
+package com.redpockets.listener;
+
+import com.redpockets.RedPocketsPlugin;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 玩家会话监听器
+ * 玩家进入时异步加载物品编辑会话并补发待发放的金额，退出时写回并释放物品编辑会话和储物间
+ */
+public class PlayerSessionListener implements Listener {
+
+    private final RedPocketsPlugin plugin;
+
+    public PlayerSessionListener(RedPocketsPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        openSession(event.getPlayer());
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        // 先保存尚未执行的自动保存，再写回会话
+        plugin.getItemRedPocketGUI().flushAutoSave(event.getPlayer());
+        plugin.getItemEditStorageManager().closeSession(event.getPlayer().getUniqueId());
+        plugin.getStorageMailboxManager().close(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * 为在线玩家打开会话（插件重载时对已在线的玩家调用）
+     */
+    public void openSession(Player player) {
+        UUID uuid = player.getUniqueId();
+        try {
+            plugin.getDatabaseManager().getExecutor().execute(() -> plugin.getItemEditStorageManager().openSession(uuid));
+        } catch (RejectedExecutionException e) {
+            // 队列已满，会话在第一次使用时再打开
+        }
+        plugin.getPendingPayoutManager().retry(player);
+    }
+}
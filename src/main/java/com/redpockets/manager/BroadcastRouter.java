@@ -0,0 +1,156 @@
+package com.redpockets.manager;
+
+import com.redpockets.RedPocketsPlugin;
+import net.md_5.bungee.api.chat.BaseComponent;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 广播路由
+ * 按 broadcast.range 配置确定接收者：SERVER 为全服，WORLD 为来源玩家所在世界，NEARBY 为来源玩家附近的玩家
+ * 来源位置取自在线玩家位置索引，接收者解析不访问玩家实体，可在任意线程执行
+ * 每个玩家每秒收到的广播条数有上限，超出的广播对该玩家直接丢弃
+ */
+public class BroadcastRouter {
+
+    /**
+     * 广播范围
+     */
+    public enum Range {
+        SERVER, WORLD, NEARBY;
+
+        public static Range forName(String name) {
+            try {
+                return Range.valueOf(name.trim().toUpperCase());
+            } catch (IllegalArgumentException | NullPointerException e) {
+                return SERVER;
+            }
+        }
+    }
+
+    /**
+     * 玩家当前这一秒已收到的广播条数
+     */
+    private static final class RateLimit {
+        private long second;
+        private int lines;
+
+        private synchronized boolean tryAcquire(long now, int max) {
+            if (now != second) {
+                second = now;
+                lines = 0;
+            }
+            if (lines >= max) {
+                return false;
+            }
+            lines++;
+            return true;
+        }
+    }
+
+    private final RedPocketsPlugin plugin;
+    private final PlayerLocationIndex locationIndex = new PlayerLocationIndex();
+    private final Map<UUID, RateLimit> rateLimits = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+    private volatile Range range;
+    private volatile int nearbyRadius;
+    private volatile long delayTicks;
+    private volatile long grabWindowTicks;
+    private volatile int maxLinesPerSecond;
+
+    public BroadcastRouter(RedPocketsPlugin plugin) {
+        this.plugin = plugin;
+        reloadSettings();
+    }
+
+    /**
+     * 重新读取广播配置
+     */
+    public void reloadSettings() {
+        enabled = plugin.getConfigManager().isBroadcastEnabled();
+        range = Range.forName(plugin.getConfigManager().getBroadcastRange());
+        nearbyRadius = Math.max(1, plugin.getConfigManager().getBroadcastNearbyRadius());
+        delayTicks = Math.max(0, plugin.getConfigManager().getBroadcastDelay()) * 20L;
+        grabWindowTicks = Math.max(0, plugin.getConfigManager().getBroadcastGrabWindow());
+        maxLinesPerSecond = Math.max(0, plugin.getConfigManager().getBroadcastMaxLinesPerSecond());
+    }
+
+    public PlayerLocationIndex getLocationIndex() {
+        return locationIndex;
+    }
+
+    /**
+     * 抢红包广播合并窗口（tick），0为不合并
+     */
+    public long getGrabWindowTicks() {
+        return grabWindowTicks;
+    }
+
+    /**
+     * 玩家退出时移除位置和限流记录
+     */
+    public void removePlayer(UUID uuid) {
+        locationIndex.remove(uuid);
+        rateLimits.remove(uuid);
+    }
+
+    /**
+     * 广播消息
+     * 按顺序取第一个在线的玩家作为来源位置，都不在线时 WORLD 和 NEARBY 范围没有接收者
+     *
+     * @param payload 已构建好的消息，所有接收者共享
+     * @param origins 候选来源玩家
+     */
+    public void broadcast(BaseComponent[] payload, UUID... origins) {
+        if (!enabled) {
+            return;
+        }
+        if (delayTicks > 0) {
+            plugin.getScheduler().runAsyncLater(() -> send(payload, origins), delayTicks);
+        } else {
+            send(payload, origins);
+        }
+    }
+
+    /**
+     * 解析接收者
+     */
+    public Collection<? extends Player> resolveRecipients(UUID... origins) {
+        Range current = range;
+        if (current == Range.SERVER) {
+            return Bukkit.getOnlinePlayers();
+        }
+
+        UUID origin = null;
+        for (UUID candidate : origins) {
+            if (candidate != null && locationIndex.contains(candidate)) {
+                origin = candidate;
+                break;
+            }
+        }
+        if (origin == null) {
+            return Collections.emptyList();
+        }
+
+        return current == Range.WORLD
+            ? locationIndex.inSameWorld(origin)
+            : locationIndex.nearby(origin, nearbyRadius);
+    }
+
+    private void send(BaseComponent[] payload, UUID... origins) {
+        int max = maxLinesPerSecond;
+        long now = System.currentTimeMillis() / 1000;
+        for (Player player : resolveRecipients(origins)) {
+            if (max > 0 && !rateLimits.computeIfAbsent(player.getUniqueId(), key -> new RateLimit()).tryAcquire(now, max)) {
+                continue;
+            }
+            player.spigot().sendMessage(payload);
+        }
+    }
+}
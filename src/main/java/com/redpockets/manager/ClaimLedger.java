@@ -0,0 +1,302 @@
+package com.redpockets.manager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 红包领取账本
+ * 在内存中维护每个红包的剩余数量、剩余金额和已领取玩家，
+ * 抢红包时通过一次原子判定决定结果，热路径上不再查询数据库
+ */
+public class ClaimLedger {
+
+    private final Map<String, PocketClaims> pockets;
+
+    public ClaimLedger() {
+        this.pockets = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 登记新创建的红包及其预先分配好的金额表
+     */
+    public PocketClaims register(String redPocketId, long[] shares) {
+        PocketClaims claims = new PocketClaims(shares, ConcurrentHashMap.newKeySet());
+        pockets.put(redPocketId, claims);
+        return claims;
+    }
+
+    /**
+     * 登记从数据库恢复的领取状态，若已存在则返回已有的账本
+     */
+    public PocketClaims putIfAbsent(String redPocketId, PocketClaims claims) {
+        PocketClaims existing = pockets.putIfAbsent(redPocketId, claims);
+        return existing != null ? existing : claims;
+    }
+
+    /**
+     * 获取红包的领取账本，不存在返回 null
+     */
+    public PocketClaims get(String redPocketId) {
+        return pockets.get(redPocketId);
+    }
+
+    /**
+     * 移除红包的领取账本
+     */
+    public void remove(String redPocketId) {
+        pockets.remove(redPocketId);
+    }
+
+    /**
+     * 单个红包的领取状态
+     * 每份金额在创建时一次性生成（单位：分），领取时用原子下标依次取出，不会超发
+     */
+    public static class PocketClaims {
+
+        private final long[] shares;
+        private final Set<UUID> claimers;
+        private final AtomicInteger cursor;
+        private final AtomicInteger claimedCount;
+        // 抢完只报告一次：份额被撤销后再次领满时，只有尚未报告过才算抢完
+        private final AtomicBoolean completedReported;
+        private final AtomicLong remainingAmount;
+        // 发放前失败而退回的份额下标，极少出现
+        private final ConcurrentLinkedDeque<Integer> returnedSlots;
+        // 已写入的领取金额和当前领取最多的玩家（气运最佳）
+        private final Map<UUID, Long> committed;
+        private final AtomicReference<Map.Entry<UUID, Long>> best;
+        private final AtomicInteger committedCount;
+        // 本账本的所有份额都已写入后完成，值为气运最佳
+        private final CompletableFuture<Map.Entry<UUID, Long>> allCommitted;
+        // 过期关闭后不再接受退回的份额，release 与 close 在本对象上互斥
+        private boolean closed;
+
+        public PocketClaims(long[] shares, Set<UUID> claimers) {
+            this.shares = shares;
+            this.claimers = claimers;
+            this.cursor = new AtomicInteger();
+            this.claimedCount = new AtomicInteger();
+            this.completedReported = new AtomicBoolean();
+            this.returnedSlots = new ConcurrentLinkedDeque<>();
+            this.committed = new ConcurrentHashMap<>();
+            this.best = new AtomicReference<>();
+            this.committedCount = new AtomicInteger();
+            this.allCommitted = new CompletableFuture<>();
+
+            long total = 0;
+            for (long share : shares) {
+                total += share;
+            }
+            this.remainingAmount = new AtomicLong(total);
+        }
+
+        /**
+         * 尝试领取：登记领取人并取出下一份金额
+         */
+        public ClaimResult tryClaim(UUID claimer) {
+            if (!claimers.add(claimer)) {
+                return ClaimResult.ALREADY_CLAIMED;
+            }
+
+            int slot = nextSlot();
+            if (slot < 0) {
+                claimers.remove(claimer);
+                return ClaimResult.EMPTY;
+            }
+
+            long amount = shares[slot];
+            remainingAmount.addAndGet(-amount);
+            boolean completed = claimedCount.incrementAndGet() == shares.length
+                && completedReported.compareAndSet(false, true);
+            return ClaimResult.success(slot, amount, completed);
+        }
+
+        /**
+         * 撤销一次领取（发放前失败时调用，例如背包已满）
+         * 账本已被过期关闭时份额不再放回，返回该份额的金额，由调用方退还给发送者
+         *
+         * @return 需要退还给发送者的金额，份额已放回时为 0
+         */
+        public synchronized long release(UUID claimer, ClaimResult result) {
+            if (!result.isSuccess() || !claimers.remove(claimer)) {
+                return 0;
+            }
+
+            int slot = result.getSlot();
+            if (result.isCompleted()) {
+                // 报告抢完的那一份被撤销，下次领满时重新报告；先于计数减少，避免领满时看到旧的标记
+                completedReported.set(false);
+            }
+            claimedCount.decrementAndGet();
+            if (closed) {
+                return shares[slot];
+            }
+
+            remainingAmount.addAndGet(shares[slot]);
+            if (!cursor.compareAndSet(slot + 1, slot)) {
+                returnedSlots.push(slot);
+            }
+            return 0;
+        }
+
+        /**
+         * 登记从数据库恢复的领取金额（不计入本账本的份额）
+         */
+        public void restore(UUID claimer, long amount) {
+            updateBest(claimer, committed.merge(claimer, amount, Long::sum));
+        }
+
+        /**
+         * 领取记录写入后调用，更新气运最佳
+         */
+        public void commit(UUID claimer, long amount) {
+            updateBest(claimer, committed.merge(claimer, amount, Long::sum));
+            if (committedCount.incrementAndGet() == shares.length) {
+                allCommitted.complete(best.get());
+            }
+        }
+
+        private void updateBest(UUID claimer, long total) {
+            Map.Entry<UUID, Long> candidate = Map.entry(claimer, total);
+            while (true) {
+                Map.Entry<UUID, Long> current = best.get();
+                if (current != null && current.getValue() >= total) {
+                    return;
+                }
+                if (best.compareAndSet(current, candidate)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 获取气运最佳，没有领取记录时返回 null
+         */
+        public Map.Entry<UUID, Long> getBestLuck() {
+            return best.get();
+        }
+
+        /**
+         * 所有份额都已写入时完成，用于抢完后的气运最佳广播
+         */
+        public CompletableFuture<Map.Entry<UUID, Long>> whenAllCommitted() {
+            return allCommitted;
+        }
+
+        /**
+         * 按领取金额从高到低排列的领取记录
+         */
+        public List<Map.Entry<UUID, Long>> getLeaderboard() {
+            List<Map.Entry<UUID, Long>> leaderboard = new ArrayList<>(committed.entrySet());
+            leaderboard.sort(Map.Entry.<UUID, Long>comparingByValue().reversed());
+            return leaderboard;
+        }
+
+        /**
+         * 关闭领取（红包过期时调用），返回尚未被取出的份额总额
+         * 已被取出但还未写入数据库的份额不计入（之后被撤销时由 release 返回），重复调用返回 0
+         */
+        public synchronized long close() {
+            closed = true;
+            int from = cursor.getAndSet(shares.length);
+            long unclaimed = 0;
+            for (int slot = from; slot < shares.length; slot++) {
+                unclaimed += shares[slot];
+            }
+
+            Integer returned;
+            while ((returned = returnedSlots.poll()) != null) {
+                unclaimed += shares[returned];
+            }
+            return unclaimed;
+        }
+
+        private int nextSlot() {
+            if (!returnedSlots.isEmpty()) {
+                Integer returned = returnedSlots.poll();
+                if (returned != null) {
+                    return returned;
+                }
+            }
+
+            while (true) {
+                int current = cursor.get();
+                if (current >= shares.length) {
+                    return -1;
+                }
+                if (cursor.compareAndSet(current, current + 1)) {
+                    return current;
+                }
+            }
+        }
+
+        public boolean hasClaimed(UUID claimer) {
+            return claimers.contains(claimer);
+        }
+
+        public int getRemainingCount() {
+            return shares.length - claimedCount.get();
+        }
+
+        public long getRemainingAmount() {
+            return remainingAmount.get();
+        }
+
+        public int getClaimedCount() {
+            return claimers.size();
+        }
+
+        public boolean isCompleted() {
+            return claimedCount.get() >= shares.length;
+        }
+    }
+
+    /**
+     * 领取判定结果
+     */
+    public static final class ClaimResult {
+
+        public enum Status {
+            SUCCESS,          // 领取成功
+            ALREADY_CLAIMED,  // 已领取过
+            EMPTY,            // 已被抢完
+            FAILED            // 判定失败（例如数据库错误），领取状态未知
+        }
+
+        static final ClaimResult ALREADY_CLAIMED = new ClaimResult(Status.ALREADY_CLAIMED, -1, 0, false);
+        static final ClaimResult EMPTY = new ClaimResult(Status.EMPTY, -1, 0, false);
+        static final ClaimResult FAILED = new ClaimResult(Status.FAILED, -1, 0, false);
+
+        private final Status status;
+        private final int slot;
+        private final long amount;
+        private final boolean completed;
+
+        private ClaimResult(Status status, int slot, long amount, boolean completed) {
+            this.status = status;
+            this.slot = slot;
+            this.amount = amount;
+            this.completed = completed;
+        }
+
+        static ClaimResult success(int slot, long amount, boolean completed) {
+            return new ClaimResult(Status.SUCCESS, slot, amount, completed);
+        }
+
+        public Status getStatus() { return status; }
+        public int getSlot() { return slot; }
+        public long getAmount() { return amount; }
+        public boolean isCompleted() { return completed; }
+        public boolean isSuccess() { return status == Status.SUCCESS; }
+    }
+}
@@ -0,0 +1,206 @@
+package com.redpockets.manager;
+
+import com.redpockets.RedPocketsPlugin;
+import com.redpockets.model.Money;
+import com.redpockets.model.RedPocket;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 多服领取判定
+ * 多个服务器共用一个 MySQL 数据库时，由数据库在一个事务中原子地扣减剩余份数并写入抢取记录，
+ * 重复领取由 (redpocket_id, claimer) 唯一约束拦截
+ */
+public class ClusterClaimStore {
+
+    // 按扣减前的剩余份数取出对应份额，LAST_INSERT_ID 把扣减前的剩余份数带回客户端
+    private static final String CLAIM_SQL =
+        "UPDATE redpockets SET " +
+        "remaining_amount = remaining_amount - CAST(SUBSTRING_INDEX(SUBSTRING_INDEX(shares, ',', " +
+        "count - LAST_INSERT_ID(remaining_count) + 1), ',', -1) AS SIGNED), " +
+        "remaining_count = remaining_count - 1, " +
+        "is_claimed = (remaining_count = 0) " +
+        "WHERE id = ? AND remaining_count > 0 AND is_expired = 0";
+
+    private static final String INSERT_RECORD_SQL =
+        "INSERT INTO redpocket_records (id, redpocket_id, claimer, amount, amount_minor, claimed_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final RedPocketsPlugin plugin;
+    // 每个红包的份额表，创建后不再变化
+    private final Map<String, long[]> shareTables;
+
+    public ClusterClaimStore(RedPocketsPlugin plugin) {
+        this.plugin = plugin;
+        this.shareTables = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 登记本服创建的红包的份额表
+     */
+    public void register(String redPocketId, long[] shares) {
+        shareTables.put(redPocketId, shares);
+    }
+
+    /**
+     * 移除红包的份额表
+     */
+    public void remove(String redPocketId) {
+        shareTables.remove(redPocketId);
+    }
+
+    /**
+     * 在数据库中原子地领取一份
+     * @return 领取结果；红包没有保存份额表（升级前创建）时返回 null，由调用方改用本地账本；
+     *         数据库出错时返回 FAILED，只有份数确实已领完时才返回 EMPTY
+     */
+    public ClaimLedger.ClaimResult claim(RedPocket redPocket, UUID claimer) {
+        long[] shares;
+        try {
+            shares = getShares(redPocket.getId());
+        } catch (SQLException e) {
+            // 读取失败不能当作升级前的红包处理，否则会改用本服账本重复分配
+            plugin.getPluginLogger().severe("加载红包份额失败: " + e.getMessage());
+            e.printStackTrace();
+            return ClaimLedger.ClaimResult.FAILED;
+        }
+        if (shares == null) {
+            return null;
+        }
+
+        try (Connection conn = plugin.getDatabaseManager().getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                ClaimLedger.ClaimResult result = claim(conn, redPocket, claimer, shares);
+                if (result.isSuccess()) {
+                    conn.commit();
+                } else {
+                    conn.rollback();
+                }
+                return result;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            plugin.getPluginLogger().severe("多服领取红包失败: " + e.getMessage());
+            e.printStackTrace();
+            return ClaimLedger.ClaimResult.FAILED;
+        }
+    }
+
+    private ClaimLedger.ClaimResult claim(Connection conn, RedPocket redPocket, UUID claimer,
+                                          long[] shares) throws SQLException {
+        int remainingBefore;
+        try (PreparedStatement stmt = conn.prepareStatement(CLAIM_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, redPocket.getId());
+            if (stmt.executeUpdate() == 0) {
+                return ClaimLedger.ClaimResult.EMPTY;
+            }
+            remainingBefore = readLastInsertId(conn, stmt);
+        }
+
+        int slot = redPocket.getCount() - remainingBefore;
+        if (slot < 0 || slot >= shares.length) {
+            throw new SQLException("红包份额与剩余份数不一致: " + redPocket.getId() + " slot=" + slot);
+        }
+        long amount = shares[slot];
+
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_RECORD_SQL)) {
+            stmt.setString(1, UUID.randomUUID().toString());
+            stmt.setString(2, redPocket.getId());
+            stmt.setString(3, claimer.toString());
+            stmt.setDouble(4, Money.toMajor(amount));
+            stmt.setLong(5, amount);
+            stmt.setLong(6, System.currentTimeMillis());
+            stmt.executeUpdate();
+        } catch (SQLIntegrityConstraintViolationException e) {
+            return ClaimLedger.ClaimResult.ALREADY_CLAIMED;
+        }
+
+        return ClaimLedger.ClaimResult.success(slot, amount, remainingBefore == 1);
+    }
+
+    private int readLastInsertId(Connection conn, Statement stmt) throws SQLException {
+        try (ResultSet keys = stmt.getGeneratedKeys()) {
+            if (keys.next()) {
+                return keys.getInt(1);
+            }
+        }
+
+        try (Statement query = conn.createStatement();
+             ResultSet rs = query.executeQuery("SELECT LAST_INSERT_ID()")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * 获取红包的份额表，本服未登记时从数据库读取
+     * @return 份额表，红包没有保存份额表时返回 null
+     */
+    private long[] getShares(String redPocketId) throws SQLException {
+        long[] shares = shareTables.get(redPocketId);
+        if (shares != null) {
+            return shares;
+        }
+
+        String sql = "SELECT shares FROM redpockets WHERE id = ?";
+
+        try (Connection conn = plugin.getDatabaseManager().getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, redPocketId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    shares = decodeShares(rs.getString("shares"));
+                }
+            }
+        }
+
+        if (shares != null) {
+            shareTables.putIfAbsent(redPocketId, shares);
+        }
+        return shares;
+    }
+
+    /**
+     * 份额表编码为逗号分隔的字符串，保存在 redpockets.shares 列
+     */
+    public static String encodeShares(long[] shares) {
+        StringBuilder builder = new StringBuilder(shares.length * 6);
+        for (int i = 0; i < shares.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(shares[i]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 解析份额表，空值返回 null
+     */
+    public static long[] decodeShares(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return null;
+        }
+
+        String[] parts = encoded.split(",");
+        long[] shares = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            shares[i] = Long.parseLong(parts[i]);
+        }
+        return shares;
+    }
+}
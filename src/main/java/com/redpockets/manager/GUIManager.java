@@ -1,6 +1,7 @@
 package com.redpockets.manager;
 
 import com.redpockets.RedPocketsPlugin;
+import com.redpockets.model.Money;
 import com.redpockets.model.RedPocket;
 import com.redpockets.model.RedPocketRecord;
 import de.tr7zw.nbtapi.NBT;
@@ -92,7 +93,7 @@ public class GUIManager {
         for (int i = 0; i < lore.size(); i++) {
             lore.set(i, ChatColor.translateAlternateColorCodes('&', lore.get(i))
                 .replace("{type}", redPocket.getType().name())
-                .replace("{amount}", String.valueOf(redPocket.getTotalAmount()))
+                .replace("{amount}", Money.format(redPocket.getTotalAmount()))
                 .replace("{count}", String.valueOf(redPocket.getCount()))
                 .replace("{note}", redPocket.getNote() != null ? redPocket.getNote() : "无"));
         }
@@ -125,7 +126,7 @@ public class GUIManager {
             lore.set(i, ChatColor.translateAlternateColorCodes('&', lore.get(i))
                 .replace("{sender}", Bukkit.getOfflinePlayer(redPocket.getSender()).getName())
                 .replace("{type}", redPocket.getType().name())
-                .replace("{amount}", String.valueOf(redPocket.getTotalAmount()))
+                .replace("{amount}", Money.format(redPocket.getTotalAmount()))
                 .replace("{count}", String.valueOf(redPocket.getCount()))
                 .replace("{note}", redPocket.getNote() != null ? redPocket.getNote() : "无")
                 .replace("{created}", formatTime(redPocket.getCreatedAt()))
@@ -155,7 +156,7 @@ public class GUIManager {
         for (int i = 0; i < lore.size(); i++) {
             lore.set(i, ChatColor.translateAlternateColorCodes('&', lore.get(i))
                 .replace("{count}", String.valueOf(records.size()))
-                .replace("{total}", String.valueOf(records.stream().mapToDouble(RedPocketRecord::getAmount).sum())));
+                .replace("{total}", Money.format(records.stream().mapToLong(RedPocketRecord::getAmount).sum())));
         }
 
         meta.setLore(lore);
@@ -0,0 +1,127 @@
+package com.redpockets.manager;
+
+import com.redpockets.RedPocketsPlugin;
+import com.redpockets.model.RedPocket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 抢红包广播合并
+ * 同一红包在一个时间窗口内的抢取记录合并为一条广播，窗口由第一次抢取开始计时
+ */
+public class GrabBroadcastCoalescer {
+
+    /**
+     * 合并后的广播输出
+     */
+    @FunctionalInterface
+    public interface Emitter {
+        void emit(Window window);
+    }
+
+    /**
+     * 一个时间窗口内的抢取记录，只在 compute 内修改，移出后只读
+     */
+    public static final class Window {
+        private final RedPocket redPocket;
+        private final List<String> playerNames = new ArrayList<>();
+        private UUID lastPlayer;
+        private long totalAmount;
+
+        private Window(RedPocket redPocket) {
+            this.redPocket = redPocket;
+        }
+
+        public RedPocket getRedPocket() {
+            return redPocket;
+        }
+
+        public List<String> getPlayerNames() {
+            return Collections.unmodifiableList(playerNames);
+        }
+
+        public int getCount() {
+            return playerNames.size();
+        }
+
+        public UUID getLastPlayer() {
+            return lastPlayer;
+        }
+
+        public long getTotalAmount() {
+            return totalAmount;
+        }
+    }
+
+    private final RedPocketsPlugin plugin;
+    private final Emitter emitter;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    public GrabBroadcastCoalescer(RedPocketsPlugin plugin, Emitter emitter) {
+        this.plugin = plugin;
+        this.emitter = emitter;
+    }
+
+    /**
+     * 加入一次抢取记录
+     *
+     * @param flushNow 是否立即输出（红包已抢完时使用，保证抢取广播在抢完广播之前）
+     */
+    public void add(RedPocket redPocket, UUID playerId, String playerName, long amount, boolean flushNow) {
+        long windowTicks = plugin.getBroadcastRouter().getGrabWindowTicks();
+        String id = redPocket.getId();
+        Window[] created = new Window[1];
+
+        windows.compute(id, (key, window) -> {
+            if (window == null) {
+                window = new Window(redPocket);
+                created[0] = window;
+            }
+            window.playerNames.add(playerName);
+            window.lastPlayer = playerId;
+            window.totalAmount += amount;
+            return window;
+        });
+
+        if (flushNow || windowTicks <= 0) {
+            flush(id);
+        } else if (created[0] != null) {
+            // 定时器只输出它所属的窗口，窗口已被提前输出时不影响之后新开的窗口
+            Window window = created[0];
+            plugin.getScheduler().runAsyncLater(() -> flush(id, window), windowTicks);
+        }
+    }
+
+    /**
+     * 输出指定红包当前窗口的记录，之后的抢取会开启新的窗口
+     */
+    public void flush(String redPocketId) {
+        Window window = windows.remove(redPocketId);
+        if (window != null) {
+            emitter.emit(window);
+        }
+    }
+
+    /**
+     * 输出指定的窗口，该窗口已被输出时不做任何事
+     */
+    private void flush(String redPocketId, Window window) {
+        if (windows.remove(redPocketId, window)) {
+            emitter.emit(window);
+        }
+    }
+
+    /**
+     * 输出所有窗口
+     */
+    public void flushAll() {
+        for (String id : new ArrayList<>(windows.keySet())) {
+            flush(id);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.redpockets.manager;
+
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 物品数组的二进制编码
+ * 格式：魔数、版本、标志位，之后是槽位数量和逐个槽位的长度 + 物品字节（空槽位长度为 0），
+ * 槽位部分较大时用 Deflate 压缩；Paper 服务器上单个物品使用 ItemStack.serializeAsBytes，
+ * 其他服务器退回到 Bukkit 对象序列化
+ */
+public final class ItemCodec {
+
+    private static final byte MAGIC = 'R';
+    private static final byte VERSION = 1;
+
+    private static final int FLAG_DEFLATE = 1;      // 槽位部分经过 Deflate 压缩
+    private static final int FLAG_PAPER_BYTES = 2;  // 物品字节来自 ItemStack.serializeAsBytes
+
+    // 槽位部分小于该字节数时不压缩
+    private static final int COMPRESS_THRESHOLD = 256;
+
+    private static final MethodHandle SERIALIZE_AS_BYTES;
+    private static final MethodHandle DESERIALIZE_BYTES;
+
+    static {
+        MethodHandle serialize = null;
+        MethodHandle deserialize = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            serialize = lookup.findVirtual(ItemStack.class, "serializeAsBytes", MethodType.methodType(byte[].class));
+            deserialize = lookup.findStatic(ItemStack.class, "deserializeBytes",
+                MethodType.methodType(ItemStack.class, byte[].class));
+        } catch (ReflectiveOperationException e) {
+            // 非 Paper 服务器
+            serialize = null;
+            deserialize = null;
+        }
+        SERIALIZE_AS_BYTES = serialize;
+        DESERIALIZE_BYTES = deserialize;
+    }
+
+    private ItemCodec() {
+    }
+
+    /**
+     * 编码物品数组
+     * @param compress 是否允许压缩
+     */
+    public static byte[] encode(ItemStack[] items, boolean compress) throws IOException {
+        boolean paper = SERIALIZE_AS_BYTES != null;
+
+        ByteArrayOutputStream slotBytes = new ByteArrayOutputStream(256);
+        DataOutputStream slots = new DataOutputStream(slotBytes);
+        writeVarInt(slots, items.length);
+        for (ItemStack item : items) {
+            if (item == null || item.getAmount() <= 0) {
+                writeVarInt(slots, 0);
+                continue;
+            }
+            byte[] bytes = paper ? serializeAsBytes(item) : serializeObject(item);
+            writeVarInt(slots, bytes.length);
+            slots.write(bytes);
+        }
+        slots.flush();
+
+        int flags = paper ? FLAG_PAPER_BYTES : 0;
+        byte[] body = slotBytes.toByteArray();
+        if (compress && body.length >= COMPRESS_THRESHOLD) {
+            byte[] deflated = deflate(body);
+            if (deflated.length < body.length) {
+                body = deflated;
+                flags |= FLAG_DEFLATE;
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length + 3);
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(flags);
+        out.write(body);
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码物品数组
+     */
+    public static ItemStack[] decode(byte[] data) throws IOException {
+        if (data.length < 3 || data[0] != MAGIC) {
+            throw new IOException("物品数据格式无效");
+        }
+        if (data[1] != VERSION) {
+            throw new IOException("不支持的物品数据版本: " + data[1]);
+        }
+
+        int flags = data[2];
+        boolean paper = (flags & FLAG_PAPER_BYTES) != 0;
+        if (paper && DESERIALIZE_BYTES == null) {
+            throw new IOException("物品数据由 Paper 服务器保存，当前服务器无法读取");
+        }
+
+        byte[] body = (flags & FLAG_DEFLATE) != 0
+            ? inflate(data, 3, data.length - 3)
+            : Arrays.copyOfRange(data, 3, data.length);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        ItemStack[] items = new ItemStack[readVarInt(in)];
+        for (int slot = 0; slot < items.length; slot++) {
+            int length = readVarInt(in);
+            if (length == 0) {
+                continue;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            items[slot] = paper ? deserializeBytes(bytes) : deserializeObject(bytes);
+        }
+        return items;
+    }
+
+    /**
+     * 解码旧版本保存的 Base64 + Bukkit 对象序列化数据
+     */
+    public static ItemStack[] decodeLegacy(String data) throws IOException {
+        byte[] bytes = Base64.getDecoder().decode(data);
+        try (BukkitObjectInputStream objectStream = new BukkitObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (ItemStack[]) objectStream.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] serializeAsBytes(ItemStack item) throws IOException {
+        try {
+            return (byte[]) SERIALIZE_AS_BYTES.invoke(item);
+        } catch (Throwable e) {
+            throw new IOException("序列化物品失败", e);
+        }
+    }
+
+    private static ItemStack deserializeBytes(byte[] bytes) throws IOException {
+        try {
+            return (ItemStack) DESERIALIZE_BYTES.invoke(bytes);
+        } catch (Throwable e) {
+            throw new IOException("反序列化物品失败", e);
+        }
+    }
+
+    private static byte[] serializeObject(ItemStack item) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        try (BukkitObjectOutputStream objectStream = new BukkitObjectOutputStream(byteStream)) {
+            objectStream.writeObject(item);
+        }
+        return byteStream.toByteArray();
+    }
+
+    private static ItemStack deserializeObject(byte[] bytes) throws IOException {
+        try (BukkitObjectInputStream objectStream = new BukkitObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (ItemStack) objectStream.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int offset, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length * 3);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("物品数据已损坏");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("物品数据已损坏", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("物品数据已损坏");
+    }
+}
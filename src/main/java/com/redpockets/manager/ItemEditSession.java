@@ -0,0 +1,101 @@
+package com.redpockets.manager;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.UUID;
+
+/**
+ * 在线玩家的物品编辑会话
+ * 玩家进入服务器时用一次查询加载物品和关联的红包，退出前一直保存在内存中，
+ * 所有读取都直接使用会话中的数据，修改先写入会话再异步写回数据库
+ */
+public class ItemEditSession {
+
+    private final UUID playerUUID;
+    private ItemStack[] items;      // 没有保存过物品时为 null
+    private String redPocketId;
+    private long expiresAt;
+    // 有尚未写回数据库的修改
+    private boolean dirty;
+
+    ItemEditSession(UUID playerUUID, ItemStack[] items, String redPocketId, long expiresAt) {
+        this.playerUUID = playerUUID;
+        this.items = items;
+        this.redPocketId = redPocketId;
+        this.expiresAt = expiresAt;
+    }
+
+    public UUID getPlayerUUID() {
+        return playerUUID;
+    }
+
+    /**
+     * 物品数组的副本，没有保存过物品时返回 null
+     */
+    public synchronized ItemStack[] getItems() {
+        return items != null ? items.clone() : null;
+    }
+
+    public synchronized String getRedPocketId() {
+        return redPocketId;
+    }
+
+    public synchronized long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * 物品是否被锁定（已发送红包且未过期）
+     */
+    public synchronized boolean isLocked() {
+        return redPocketId != null && expiresAt > 0 && System.currentTimeMillis() < expiresAt;
+    }
+
+    /**
+     * 更新物品和关联的红包，物品会被复制，调用者之后修改原物品不影响会话
+     */
+    synchronized void update(ItemStack[] items, String redPocketId, long expiresAt) {
+        this.items = copyOf(items);
+        this.redPocketId = redPocketId;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * 只更新物品，保留关联的红包
+     */
+    synchronized void updateItems(ItemStack[] items) {
+        this.items = copyOf(items);
+    }
+
+    synchronized void clearAssociation() {
+        this.redPocketId = null;
+        this.expiresAt = 0;
+    }
+
+    synchronized void clear() {
+        this.items = null;
+        this.redPocketId = null;
+        this.expiresAt = 0;
+        this.dirty = false;
+    }
+
+    synchronized void markDirty() {
+        this.dirty = true;
+    }
+
+    synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    synchronized void markClean() {
+        this.dirty = false;
+    }
+
+    private static ItemStack[] copyOf(ItemStack[] items) {
+        ItemStack[] copy = new ItemStack[items.length];
+        for (int i = 0; i < items.length; i++) {
+            copy[i] = items[i] != null ? items[i].clone() : null;
+        }
+        return copy;
+    }
+}
@@ -4,205 +4,394 @@ import com.redpockets.RedPocketsPlugin;
 import com.redpockets.database.DatabaseManager;
 import org.bukkit.inventory.ItemStack;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Base64;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 物品红包编辑持久化管理器
- * 负责保存和加载玩家编辑的物品数据
+ * 负责保存和加载玩家编辑的物品数据，在线玩家的数据保存在编辑会话中
+ * 标注为数据库线程调用的方法在没有会话时直接读写数据库，其他线程使用异步版本
  */
 public class ItemEditStorageManager {
 
     private final RedPocketsPlugin plugin;
     private final DatabaseManager databaseManager;
+    // 在线玩家的编辑会话
+    private final Map<UUID, ItemEditSession> sessions;
 
     public ItemEditStorageManager(RedPocketsPlugin plugin) {
         this.plugin = plugin;
         this.databaseManager = plugin.getDatabaseManager();
+        this.sessions = new ConcurrentHashMap<>();
     }
 
     /**
-     * 初始化数据库表
+     * 打开玩家的编辑会话，用一次查询加载物品和关联的红包（玩家进入服务器时在异步线程调用）
+     * @return 玩家的会话，已打开时直接返回
+     * @throws IllegalStateException 读取失败，此时不打开会话，下次调用重新读取
      */
-    public void initialize() {
-        String type = plugin.getConfigManager().getDatabaseType();
+    public ItemEditSession openSession(UUID playerUUID) {
+        return sessions.computeIfAbsent(playerUUID, uuid -> {
+            ItemEditSession row = loadRow(uuid);
+            return row != null ? row : new ItemEditSession(uuid, null, null, 0);
+        });
+    }
+
+    /**
+     * 在数据库线程打开玩家的编辑会话，已打开时直接完成
+     */
+    public CompletableFuture<ItemEditSession> openSessionAsync(UUID playerUUID) {
+        ItemEditSession session = sessions.get(playerUUID);
+        if (session != null) {
+            return CompletableFuture.completedFuture(session);
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> openSession(playerUUID), databaseManager.getExecutor());
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 写回并关闭玩家的编辑会话（玩家退出时调用）
+     */
+    public void closeSession(UUID playerUUID) {
+        ItemEditSession session = sessions.get(playerUUID);
+        if (session == null) {
+            return;
+        }
+        // 写回后再移除，保证会话移除后数据库中已是最新数据
+        databaseManager.getExecutor().executeOrRetry(() -> {
+            flush(session);
+            sessions.remove(playerUUID, session);
+        });
+    }
+
+    /**
+     * 获取在线玩家的编辑会话，未打开时返回 null
+     */
+    public ItemEditSession getSession(UUID playerUUID) {
+        return sessions.get(playerUUID);
+    }
+
+    /**
+     * 写回所有会话（插件关闭时调用）
+     */
+    public void shutdown() {
+        for (ItemEditSession session : sessions.values()) {
+            flush(session);
+        }
+        sessions.clear();
+    }
+
+    /**
+     * 保存玩家编辑的物品（数据库线程调用）
+     * @return 是否写入成功
+     */
+    public boolean savePlayerItems(UUID playerUUID, ItemStack[] items) {
+        return savePlayerItems(playerUUID, items, null, 0);
+    }
 
-        try (Connection conn = databaseManager.getConnection()) {
-            String sql;
-            if (type.equalsIgnoreCase("mysql")) {
-                sql = "CREATE TABLE IF NOT EXISTS item_edit_storage (" +
-                        "uuid VARCHAR(36) PRIMARY KEY, " +
-                        "items TEXT NOT NULL, " +
-                        "redpocket_id VARCHAR(36), " +
-                        "redpocket_expires_at BIGINT, " +
-                        "updated_at BIGINT NOT NULL, " +
-                        "INDEX idx_updated (updated_at)" +
-                        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
-            } else {
-                sql = "CREATE TABLE IF NOT EXISTS item_edit_storage (" +
-                        "uuid TEXT PRIMARY KEY, " +
-                        "items TEXT NOT NULL, " +
-                        "redpocket_id TEXT, " +
-                        "redpocket_expires_at INTEGER, " +
-                        "updated_at INTEGER NOT NULL" +
-                        ")";
+    /**
+     * 保存玩家编辑的物品（关联红包信息），立即写入数据库（数据库线程调用）
+     * @return 是否写入成功，失败时会话中的修改保留到下次写回
+     */
+    public boolean savePlayerItems(UUID playerUUID, ItemStack[] items, String redPocketId, long redPocketExpiresAt) {
+        ItemEditSession session = sessions.get(playerUUID);
+        if (session == null) {
+            return writeRow(playerUUID, items, redPocketId, redPocketExpiresAt);
+        }
+
+        synchronized (session) {
+            session.update(items, redPocketId, redPocketExpiresAt);
+            session.markClean();
+            if (!writeRow(playerUUID, items, redPocketId, redPocketExpiresAt)) {
+                session.markDirty();
+                return false;
             }
+            return true;
+        }
+    }
+
+    /**
+     * 保存玩家编辑的物品（关联红包信息），先写入会话，再异步写入数据库
+     */
+    public void savePlayerItemsAsync(UUID playerUUID, ItemStack[] items, String redPocketId, long redPocketExpiresAt) {
+        ItemEditSession session = sessions.get(playerUUID);
+        if (session == null) {
+            ItemStack[] snapshot = copyOf(items);
+            databaseManager.getExecutor().executeOrRetry(() -> writeRow(playerUUID, snapshot, redPocketId, redPocketExpiresAt));
+            return;
+        }
+
+        synchronized (session) {
+            session.update(items, redPocketId, redPocketExpiresAt);
+            session.markDirty();
+        }
+        databaseManager.getExecutor().executeOrRetry(() -> flush(session));
+    }
+
+    /**
+     * 只更新物品、保留已关联的红包，先写入会话，再异步写入数据库
+     */
+    public void updatePlayerItemsAsync(UUID playerUUID, ItemStack[] items) {
+        ItemEditSession session = sessions.get(playerUUID);
+        if (session == null) {
+            ItemStack[] snapshot = copyOf(items);
+            databaseManager.getExecutor().executeOrRetry(() -> {
+                // 读取失败时不写入，避免覆盖已关联的红包
+                ItemEditSession row = loadRow(playerUUID);
+                writeRow(playerUUID, snapshot,
+                    row != null ? row.getRedPocketId() : null, row != null ? row.getExpiresAt() : 0);
+            });
+            return;
+        }
+
+        synchronized (session) {
+            session.updateItems(items);
+            session.markDirty();
+        }
+        databaseManager.getExecutor().executeOrRetry(() -> flush(session));
+    }
+
+    /**
+     * 加载玩家编辑的物品，没有会话时查询数据库（数据库线程调用）
+     * @return 玩家编辑的物品，没有记录时返回 null
+     * @throws IllegalStateException 读取失败
+     */
+    public ItemStack[] loadPlayerItems(UUID playerUUID) {
+        ItemEditSession session = sessions.get(playerUUID);
+        if (session != null) {
+            return session.getItems();
+        }
+        ItemEditSession row = loadRow(playerUUID);
+        return row != null ? row.getItems() : null;
+    }
+
+    /**
+     * 获取玩家关联的红包ID，没有会话时查询数据库（数据库线程调用）
+     */
+    public String getRedPocketId(UUID playerUUID) {
+        ItemEditSession session = sessions.get(playerUUID);
+        if (session == null) {
+            session = loadRow(playerUUID);
+        }
+        return session != null ? session.getRedPocketId() : null;
+    }
+
+    /**
+     * 获取红包过期时间，没有会话时查询数据库（数据库线程调用）
+     */
+    public long getRedPocketExpiresAt(UUID playerUUID) {
+        ItemEditSession session = sessions.get(playerUUID);
+        if (session == null) {
+            session = loadRow(playerUUID);
+        }
+        return session != null ? session.getExpiresAt() : 0;
+    }
 
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.execute();
+    /**
+     * 检查物品是否被锁定（已发送红包且未过期），没有会话时在数据库线程查询
+     */
+    public CompletableFuture<Boolean> isItemsLocked(UUID playerUUID) {
+        ItemEditSession session = sessions.get(playerUUID);
+        if (session != null) {
+            return CompletableFuture.completedFuture(session.isLocked());
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                ItemEditSession row = loadRow(playerUUID);
+                return row != null && row.isLocked();
+            }, databaseManager.getExecutor());
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 删除玩家编辑的物品，先清空会话，再异步删除数据库中的记录
+     */
+    public void deletePlayerItems(UUID playerUUID) {
+        ItemEditSession session = sessions.get(playerUUID);
+        if (session == null) {
+            databaseManager.getExecutor().executeOrRetry(() -> deleteRow(playerUUID));
+            return;
+        }
+
+        synchronized (session) {
+            session.clear();
+        }
+        databaseManager.getExecutor().executeOrRetry(() -> {
+            synchronized (session) {
+                deleteRow(playerUUID);
             }
+        });
+    }
 
-            plugin.getPluginLogger().info("物品编辑存储表创建完成！");
-        } catch (SQLException e) {
-            plugin.getPluginLogger().severe("创建物品编辑存储表失败！");
-            e.printStackTrace();
+    /**
+     * 解除指定红包对物品的锁定（红包过期时在数据库线程调用），玩家已关联其他红包时不受影响
+     */
+    public void releaseItemLock(UUID playerUUID, String redPocketId) {
+        ItemEditSession session = sessions.get(playerUUID);
+        if (session == null) {
+            releaseRow(playerUUID, redPocketId);
+            return;
+        }
+
+        synchronized (session) {
+            if (redPocketId.equals(session.getRedPocketId())) {
+                session.clearAssociation();
+            }
+            releaseRow(playerUUID, redPocketId);
         }
     }
 
     /**
-     * 保存玩家编辑的物品
+     * 清除红包关联（红包被完全领完或删除时在数据库线程调用）
      */
-    public void savePlayerItems(UUID playerUUID, ItemStack[] items) {
-        savePlayerItems(playerUUID, items, null, 0);
+    public void clearRedPocketAssociation(UUID playerUUID) {
+        ItemEditSession session = sessions.get(playerUUID);
+        if (session == null) {
+            clearAssociationRow(playerUUID);
+            return;
+        }
+
+        synchronized (session) {
+            session.clearAssociation();
+            clearAssociationRow(playerUUID);
+        }
     }
 
     /**
-     * 保存玩家编辑的物品（关联红包信息）
+     * 把会话中尚未写回的修改写入数据库，同一会话的写入串行执行
      */
-    public void savePlayerItems(UUID playerUUID, ItemStack[] items, String redPocketId, long redPocketExpiresAt) {
+    private void flush(ItemEditSession session) {
+        synchronized (session) {
+            if (!session.isDirty()) {
+                return;
+            }
+            session.markClean();
+            ItemStack[] items = session.getItems();
+            if (items != null) {
+                writeRow(session.getPlayerUUID(), items, session.getRedPocketId(), session.getExpiresAt());
+            }
+        }
+    }
+
+    private boolean writeRow(UUID playerUUID, ItemStack[] items, String redPocketId, long redPocketExpiresAt) {
         String sql;
         String type = plugin.getConfigManager().getDatabaseType();
 
         if (type.equalsIgnoreCase("mysql")) {
-            sql = "INSERT INTO item_edit_storage (uuid, items, redpocket_id, redpocket_expires_at, updated_at) " +
-                    "VALUES (?, ?, ?, ?, ?) " +
-                    "ON DUPLICATE KEY UPDATE items = VALUES(items), redpocket_id = VALUES(redpocket_id), " +
+            sql = "INSERT INTO item_edit_storage (uuid, items, items_blob, redpocket_id, redpocket_expires_at, updated_at) " +
+                    "VALUES (?, '', ?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE items = VALUES(items), items_blob = VALUES(items_blob), redpocket_id = VALUES(redpocket_id), " +
                     "redpocket_expires_at = VALUES(redpocket_expires_at), updated_at = VALUES(updated_at)";
         } else {
-            sql = "INSERT OR REPLACE INTO item_edit_storage (uuid, items, redpocket_id, redpocket_expires_at, updated_at) " +
-                    "VALUES (?, ?, ?, ?, ?)";
+            sql = "INSERT OR REPLACE INTO item_edit_storage (uuid, items, items_blob, redpocket_id, redpocket_expires_at, updated_at) " +
+                    "VALUES (?, '', ?, ?, ?, ?)";
         }
 
         try (Connection conn = databaseManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            String itemsData = serializeItems(items);
+            byte[] itemsData = ItemCodec.encode(items, plugin.getConfigManager().isItemStorageCompression());
             long updatedAt = System.currentTimeMillis();
 
             stmt.setString(1, playerUUID.toString());
-            stmt.setString(2, itemsData);
+            stmt.setBytes(2, itemsData);
             stmt.setString(3, redPocketId);
             stmt.setLong(4, redPocketExpiresAt);
             stmt.setLong(5, updatedAt);
 
             stmt.executeUpdate();
+            return true;
 
         } catch (SQLException | IOException e) {
             plugin.getPluginLogger().severe("保存玩家编辑物品失败！UUID: " + playerUUID);
             e.printStackTrace();
+            return false;
         }
     }
 
     /**
-     * 加载玩家编辑的物品
+     * 读取玩家的物品和关联的红包，没有记录时返回 null
+     * @throws IllegalStateException 读取失败，与没有记录区分开，调用者不能把它当作空数据写回
      */
-    public ItemStack[] loadPlayerItems(UUID playerUUID) {
-        String sql = "SELECT items, redpocket_id, redpocket_expires_at FROM item_edit_storage WHERE uuid = ?";
-
-        try (Connection conn = databaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, playerUUID.toString());
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    String itemsData = rs.getString("items");
-                    return deserializeItems(itemsData);
-                }
-            }
-
-        } catch (SQLException | IOException | ClassNotFoundException e) {
+    private ItemEditSession loadRow(UUID playerUUID) {
+        try {
+            return readRow(playerUUID);
+        } catch (SQLException | IOException | IllegalArgumentException e) {
             plugin.getPluginLogger().severe("加载玩家编辑物品失败！UUID: " + playerUUID);
             e.printStackTrace();
+            throw new IllegalStateException("无法加载玩家编辑物品: " + playerUUID, e);
         }
-
-        return null;
     }
 
     /**
-     * 获取玩家关联的红包ID
+     * 用一次查询读取玩家的物品和关联的红包，没有记录时返回 null
      */
-    public String getRedPocketId(UUID playerUUID) {
-        String sql = "SELECT redpocket_id FROM item_edit_storage WHERE uuid = ?";
+    private ItemEditSession readRow(UUID playerUUID) throws SQLException, IOException {
+        String sql = "SELECT items, items_blob, redpocket_id, redpocket_expires_at FROM item_edit_storage WHERE uuid = ?";
 
-        try (Connection conn = databaseManager.getConnection();
+        String legacyData;
+        String redPocketId;
+        long expiresAt;
+        try (Connection conn = databaseManager.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, playerUUID.toString());
 
             try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getString("redpocket_id");
+                if (!rs.next()) {
+                    return null;
+                }
+                redPocketId = rs.getString("redpocket_id");
+                expiresAt = rs.getLong("redpocket_expires_at");
+                byte[] itemsData = rs.getBytes("items_blob");
+                if (itemsData != null) {
+                    return new ItemEditSession(playerUUID, ItemCodec.decode(itemsData), redPocketId, expiresAt);
                 }
+                legacyData = rs.getString("items");
             }
-
-        } catch (SQLException e) {
-            plugin.getPluginLogger().severe("获取红包ID失败！UUID: " + playerUUID);
-            e.printStackTrace();
         }
 
-        return null;
+        ItemStack[] items = null;
+        if (legacyData != null && !legacyData.isEmpty()) {
+            items = ItemCodec.decodeLegacy(legacyData);
+            convertLegacyItems(playerUUID, items);
+        }
+        return new ItemEditSession(playerUUID, items, redPocketId, expiresAt);
     }
 
     /**
-     * 获取红包过期时间
+     * 把旧版本的 Base64 数据改写为二进制格式，只修改尚未转换的行
      */
-    public long getRedPocketExpiresAt(UUID playerUUID) {
-        String sql = "SELECT redpocket_expires_at FROM item_edit_storage WHERE uuid = ?";
+    private void convertLegacyItems(UUID playerUUID, ItemStack[] items) {
+        String sql = "UPDATE item_edit_storage SET items = '', items_blob = ? WHERE uuid = ? AND items_blob IS NULL";
 
         try (Connection conn = databaseManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            stmt.setString(1, playerUUID.toString());
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getLong("redpocket_expires_at");
-                }
-            }
+            stmt.setBytes(1, ItemCodec.encode(items, plugin.getConfigManager().isItemStorageCompression()));
+            stmt.setString(2, playerUUID.toString());
+            stmt.executeUpdate();
 
-        } catch (SQLException e) {
-            plugin.getPluginLogger().severe("获取红包过期时间失败！UUID: " + playerUUID);
+        } catch (SQLException | IOException e) {
+            plugin.getPluginLogger().severe("转换玩家编辑物品格式失败！UUID: " + playerUUID);
             e.printStackTrace();
         }
-
-        return 0;
     }
 
-    /**
-     * 检查物品是否被锁定（已发送红包且未过期）
-     */
-    public boolean isItemsLocked(UUID playerUUID) {
-        String redPocketId = getRedPocketId(playerUUID);
-        if (redPocketId == null) return false;
-
-        long expiresAt = getRedPocketExpiresAt(playerUUID);
-        if (expiresAt <= 0) return false;
-
-        return System.currentTimeMillis() < expiresAt;
-    }
-
-    /**
-     * 删除玩家编辑的物品
-     */
-    public void deletePlayerItems(UUID playerUUID) {
+    private void deleteRow(UUID playerUUID) {
         String sql = "DELETE FROM item_edit_storage WHERE uuid = ?";
 
         try (Connection conn = databaseManager.getConnection();
@@ -217,46 +406,43 @@ public class ItemEditStorageManager {
         }
     }
 
-    /**
-     * 清除红包关联（红包被完全领完或删除时调用）
-     */
-    public void clearRedPocketAssociation(UUID playerUUID) {
-        String sql = "UPDATE item_edit_storage SET redpocket_id = NULL, redpocket_expires_at = 0 WHERE uuid = ?";
+    private void releaseRow(UUID playerUUID, String redPocketId) {
+        String sql = "UPDATE item_edit_storage SET redpocket_id = NULL, redpocket_expires_at = 0 " +
+                "WHERE uuid = ? AND redpocket_id = ?";
 
         try (Connection conn = databaseManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, playerUUID.toString());
+            stmt.setString(2, redPocketId);
             stmt.executeUpdate();
 
         } catch (SQLException e) {
-            plugin.getPluginLogger().severe("清除红包关联失败！UUID: " + playerUUID);
+            plugin.getPluginLogger().severe("解除物品锁定失败！UUID: " + playerUUID);
             e.printStackTrace();
         }
     }
 
-    /**
-     * 序列化物品数组为Base64字符串
-     */
-    private String serializeItems(ItemStack[] items) throws IOException {
-        try (ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-             org.bukkit.util.io.BukkitObjectOutputStream objectStream = new org.bukkit.util.io.BukkitObjectOutputStream(byteStream)) {
+    private void clearAssociationRow(UUID playerUUID) {
+        String sql = "UPDATE item_edit_storage SET redpocket_id = NULL, redpocket_expires_at = 0 WHERE uuid = ?";
+
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            objectStream.writeObject(items);
-            objectStream.flush();
-            return Base64.getEncoder().encodeToString(byteStream.toByteArray());
+            stmt.setString(1, playerUUID.toString());
+            stmt.executeUpdate();
+
+        } catch (SQLException e) {
+            plugin.getPluginLogger().severe("清除红包关联失败！UUID: " + playerUUID);
+            e.printStackTrace();
         }
     }
 
-    /**
-     * 从Base64字符串反序列化物品数组
-     */
-    private ItemStack[] deserializeItems(String data) throws IOException, ClassNotFoundException {
-        byte[] bytes = Base64.getDecoder().decode(data);
-        try (ByteArrayInputStream byteStream = new ByteArrayInputStream(bytes);
-             org.bukkit.util.io.BukkitObjectInputStream objectStream = new org.bukkit.util.io.BukkitObjectInputStream(byteStream)) {
-
-            return (ItemStack[]) objectStream.readObject();
+    private static ItemStack[] copyOf(ItemStack[] items) {
+        ItemStack[] copy = new ItemStack[items.length];
+        for (int i = 0; i < items.length; i++) {
+            copy[i] = items[i] != null ? items[i].clone() : null;
         }
+        return copy;
     }
 }
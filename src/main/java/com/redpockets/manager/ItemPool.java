@@ -0,0 +1,217 @@
+package com.redpockets.manager;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 物品红包的物品池
+ * 红包进行中时发送者的物品保存在内存中，用紧凑的下标数组记录还有剩余的物品，
+ * 取完的项与末尾交换后移除，每次抽取都是 O(1) 且不分配内存，
+ * 取出的物品在确认前由 ItemPoolStore 写回物品编辑存储，放回的物品延迟写回
+ */
+public class ItemPool {
+
+    /**
+     * 抽取方式
+     */
+    public enum SelectionMode {
+        UNIT,  // 每一件物品概率相同（数量多的槽位更容易抽到）
+        STACK, // 每个槽位概率相同，与数量无关
+        DECK;  // 创建时洗牌一次，之后按顺序发放
+
+        /**
+         * 按名称查找抽取方式，不区分大小写，未知名称返回 null
+         */
+        public static SelectionMode forName(String name) {
+            if (name == null) {
+                return null;
+            }
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private final String redPocketId;
+    private final SelectionMode mode;
+    private final ItemStack[] templates;     // 每个槽位的物品，数量以 remaining 为准
+    private final int[] remaining;
+    // UNIT / DECK：每一件物品对应一个槽位号，前 unitCount 个有效
+    private final int[] units;
+    private int unitCount;
+    // STACK：还有剩余的槽位号，前 stackCount 个有效
+    private final int[] stacks;
+    private int stackCount;
+
+    private final AtomicBoolean dirty;
+    private boolean closed;
+
+    public ItemPool(String redPocketId, ItemStack[] items, SelectionMode mode) {
+        this.redPocketId = redPocketId;
+        this.mode = mode;
+        this.templates = new ItemStack[items.length];
+        this.remaining = new int[items.length];
+
+        int total = 0;
+        for (int slot = 0; slot < items.length; slot++) {
+            ItemStack item = items[slot];
+            if (item != null && item.getAmount() > 0) {
+                templates[slot] = item.clone();
+                remaining[slot] = item.getAmount();
+                total += item.getAmount();
+            }
+        }
+
+        if (mode == SelectionMode.STACK) {
+            this.units = null;
+            this.stacks = new int[items.length];
+            for (int slot = 0; slot < items.length; slot++) {
+                if (remaining[slot] > 0) {
+                    stacks[stackCount++] = slot;
+                }
+            }
+        } else {
+            this.stacks = null;
+            this.units = new int[total];
+            for (int slot = 0; slot < items.length; slot++) {
+                for (int i = 0; i < remaining[slot]; i++) {
+                    units[unitCount++] = slot;
+                }
+            }
+            if (mode == SelectionMode.DECK) {
+                shuffle();
+            }
+        }
+
+        this.dirty = new AtomicBoolean();
+    }
+
+    public String getRedPocketId() {
+        return redPocketId;
+    }
+
+    /**
+     * 抽取一件物品，返回槽位，没有物品或已关闭时返回 -1
+     */
+    public synchronized int take() {
+        if (closed) {
+            return -1;
+        }
+
+        int slot;
+        switch (mode) {
+            case STACK:
+                if (stackCount == 0) {
+                    return -1;
+                }
+                int index = ThreadLocalRandom.current().nextInt(stackCount);
+                slot = stacks[index];
+                if (--remaining[slot] == 0) {
+                    removeStack(index);
+                }
+                return slot;
+            case DECK:
+                if (unitCount == 0) {
+                    return -1;
+                }
+                slot = units[--unitCount];
+                remaining[slot]--;
+                return slot;
+            default:
+                if (unitCount == 0) {
+                    return -1;
+                }
+                int pick = ThreadLocalRandom.current().nextInt(unitCount);
+                slot = units[pick];
+                units[pick] = units[--unitCount];
+                remaining[slot]--;
+                return slot;
+        }
+    }
+
+    /**
+     * 放回一件之前取出的物品，已关闭时返回 false
+     */
+    public synchronized boolean giveBack(int slot) {
+        if (closed) {
+            return false;
+        }
+
+        if (mode == SelectionMode.STACK) {
+            if (remaining[slot]++ == 0) {
+                stacks[stackCount++] = slot;
+            }
+            return true;
+        }
+
+        remaining[slot]++;
+        units[unitCount] = slot;
+        if (mode == SelectionMode.DECK) {
+            // 放回到牌堆中的随机位置，保持洗牌后的顺序随机
+            int swap = ThreadLocalRandom.current().nextInt(unitCount + 1);
+            units[unitCount] = units[swap];
+            units[swap] = slot;
+        }
+        unitCount++;
+        return true;
+    }
+
+    /**
+     * 槽位中的一件物品
+     */
+    public ItemStack unit(int slot) {
+        ItemStack item = templates[slot].clone();
+        item.setAmount(1);
+        return item;
+    }
+
+    /**
+     * 标记有未写回的变化，返回 true 表示需要安排一次写回
+     */
+    boolean markDirty() {
+        return dirty.compareAndSet(false, true);
+    }
+
+    boolean isDirty() {
+        return dirty.get();
+    }
+
+    /**
+     * 取得当前物品的快照并清除变化标记；close 为 true 时同时关闭物品池
+     */
+    synchronized ItemStack[] drain(boolean close) {
+        dirty.set(false);
+        if (close) {
+            closed = true;
+        }
+
+        ItemStack[] items = new ItemStack[templates.length];
+        for (int slot = 0; slot < templates.length; slot++) {
+            if (remaining[slot] > 0) {
+                items[slot] = templates[slot].clone();
+                items[slot].setAmount(remaining[slot]);
+            }
+        }
+        return items;
+    }
+
+    private void removeStack(int index) {
+        stacks[index] = stacks[--stackCount];
+    }
+
+    // Fisher-Yates 洗牌
+    private void shuffle() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = unitCount - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = units[i];
+            units[i] = units[j];
+            units[j] = tmp;
+        }
+    }
+}
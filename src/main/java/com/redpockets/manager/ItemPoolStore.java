@@ -0,0 +1,132 @@
+package com.redpockets.manager;
+
+import com.redpockets.RedPocketsPlugin;
+import com.redpockets.model.RedPocket;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 物品池管理
+ * 每个进行中的物品红包在首次被抢时从物品编辑存储加载一次物品池，
+ * 之后的取放都在内存中完成；取出物品后在确认前写回，同时取出的多件合并为一次写入，
+ * 放回物品的变化合并后延迟写回，红包结束时立即写回并释放
+ */
+public class ItemPoolStore {
+
+    private final RedPocketsPlugin plugin;
+    private final Map<String, Entry> pools;
+    // 只影响之后加载的物品池
+    private volatile ItemPool.SelectionMode selectionMode = ItemPool.SelectionMode.UNIT;
+
+    public ItemPoolStore(RedPocketsPlugin plugin) {
+        this.plugin = plugin;
+        this.pools = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 获取红包的物品池，未加载时从数据库加载（数据库线程）
+     * @return 物品池，发送者没有保存物品时返回 null
+     */
+    public ItemPool get(RedPocket redPocket) {
+        Entry entry = pools.computeIfAbsent(redPocket.getId(), id -> {
+            ItemStack[] items = plugin.getItemEditStorageManager().loadPlayerItems(redPocket.getSender());
+            if (items == null || items.length == 0) {
+                return null;
+            }
+            return new Entry(redPocket, new ItemPool(id, items, selectionMode));
+        });
+        return entry != null ? entry.pool : null;
+    }
+
+    public void setSelectionMode(ItemPool.SelectionMode selectionMode) {
+        this.selectionMode = selectionMode;
+    }
+
+    /**
+     * 物品池发生变化后调用，合并一段时间内的变化后写回一次
+     */
+    public void changed(ItemPool pool) {
+        if (!pool.markDirty()) {
+            return;
+        }
+
+        long delayTicks = Math.max(1, plugin.getConfigManager().getWriteBehindFlushInterval() / 50);
+        plugin.getScheduler().runAsyncLater(() -> plugin.getDatabaseManager().getExecutor().execute(() -> {
+            Entry entry = pools.get(pool.getRedPocketId());
+            if (entry != null && entry.pool == pool) {
+                flush(entry, false);
+            }
+        }), delayTicks);
+    }
+
+    /**
+     * 立即写回物品池（取出物品后、确认抢取之前在数据库线程调用）
+     * 同一物品池的写回串行执行，等待期间其他线程的写回已包含本次变化时直接返回
+     * @throws IllegalStateException 写入失败，变化保留到下一次写回
+     */
+    public void persist(ItemPool pool) {
+        pool.markDirty();
+        Entry entry = pools.get(pool.getRedPocketId());
+        if (entry == null || entry.pool != pool) {
+            // 物品池已被关闭，关闭时的写回已包含本次变化
+            return;
+        }
+
+        synchronized (entry) {
+            if (!pool.isDirty()) {
+                return;
+            }
+            ItemStack[] items = pool.drain(false);
+            if (!plugin.getItemEditStorageManager().savePlayerItems(entry.sender, items,
+                    entry.redPocketId, entry.expiresAt)) {
+                pool.markDirty();
+                throw new IllegalStateException("写回物品池失败: " + entry.redPocketId);
+            }
+        }
+    }
+
+    /**
+     * 写回并释放红包的物品池（红包抢完、过期或删除时在数据库线程调用）
+     */
+    public void close(String redPocketId) {
+        Entry entry = pools.remove(redPocketId);
+        if (entry != null) {
+            flush(entry, true);
+        }
+    }
+
+    /**
+     * 写回所有物品池（插件关闭时调用）
+     */
+    public void closeAll() {
+        for (String redPocketId : pools.keySet()) {
+            close(redPocketId);
+        }
+    }
+
+    private void flush(Entry entry, boolean close) {
+        // 同一物品池的写回串行执行，避免旧快照覆盖新快照
+        synchronized (entry) {
+            ItemStack[] items = entry.pool.drain(close);
+            plugin.getItemEditStorageManager().savePlayerItems(entry.sender, items,
+                entry.redPocketId, entry.expiresAt);
+        }
+    }
+
+    private static final class Entry {
+        private final String redPocketId;
+        private final UUID sender;
+        private final long expiresAt;
+        private final ItemPool pool;
+
+        private Entry(RedPocket redPocket, ItemPool pool) {
+            this.redPocketId = redPocket.getId();
+            this.sender = redPocket.getSender();
+            this.expiresAt = redPocket.getExpiresAt();
+            this.pool = pool;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.redpockets.manager;
+
+import com.redpockets.RedPocketsPlugin;
+import com.redpockets.database.DatabaseManager;
+import com.redpockets.model.Money;
+import org.bukkit.entity.Player;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 待发放金额管理器
+ * 抢取记录已保存但经济插件发放失败的金额保存在 pending_payouts 表中，玩家下次进入服务器时重新发放；
+ * 发放前先删除记录取得所有权，同一笔金额不会被重复发放，发放失败时重新写入
+ */
+public class PendingPayoutManager {
+
+    /**
+     * 一笔待发放的金额
+     */
+    private static final class Payout {
+        private final String id;
+        private final String redPocketId;
+        private final long amount;
+
+        private Payout(String id, String redPocketId, long amount) {
+            this.id = id;
+            this.redPocketId = redPocketId;
+            this.amount = amount;
+        }
+    }
+
+    private final RedPocketsPlugin plugin;
+    private final DatabaseManager databaseManager;
+
+    public PendingPayoutManager(RedPocketsPlugin plugin) {
+        this.plugin = plugin;
+        this.databaseManager = plugin.getDatabaseManager();
+    }
+
+    /**
+     * 记录一笔待发放的金额（异步写入）
+     */
+    public void add(UUID playerUUID, String redPocketId, long amount) {
+        Payout payout = new Payout(UUID.randomUUID().toString(), redPocketId, amount);
+        databaseManager.getExecutor().executeOrRetry(() -> insert(playerUUID, payout));
+    }
+
+    /**
+     * 重新发放玩家的待发放金额（玩家进入服务器时调用）
+     */
+    public void retry(Player player) {
+        UUID uuid = player.getUniqueId();
+        databaseManager.getExecutor().executeOrRetry(() -> {
+            for (Payout payout : load(uuid)) {
+                if (!claim(payout)) {
+                    // 已被其他线程取走
+                    continue;
+                }
+                Runnable deposit = () -> pay(player, payout);
+                plugin.getScheduler().runForEntity(player, deposit,
+                    () -> databaseManager.getExecutor().executeOrRetry(() -> insert(uuid, payout)));
+            }
+        });
+    }
+
+    /**
+     * 在玩家实体线程发放，失败时重新写入等待下次发放
+     */
+    private void pay(Player player, Payout payout) {
+        if (!player.isOnline() || !plugin.getEconomyManager().deposit(player, payout.amount)) {
+            plugin.getPluginLogger().warning("补发红包金额失败，等待下次进入时重试: 玩家=" + player.getName() +
+                " 金额=" + Money.format(payout.amount));
+            databaseManager.getExecutor().executeOrRetry(() -> insert(player.getUniqueId(), payout));
+            return;
+        }
+
+        plugin.getPluginLogger().info("补发红包金额: 玩家=" + player.getName() + " 红包=" + payout.redPocketId +
+            " 金额=" + Money.format(payout.amount));
+        Map<String, String> placeholders = new HashMap<>();
+        placeholders.put("amount", Money.format(payout.amount));
+        plugin.getMessageManager().sendSuccess(player, "commands.grab.payout_delivered", placeholders);
+    }
+
+    private List<Payout> load(UUID playerUUID) {
+        String sql = "SELECT id, redpocket_id, amount_minor FROM pending_payouts WHERE player = ?";
+        List<Payout> payouts = new ArrayList<>();
+
+        try (Connection conn = databaseManager.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, playerUUID.toString());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    payouts.add(new Payout(rs.getString("id"), rs.getString("redpocket_id"), rs.getLong("amount_minor")));
+                }
+            }
+
+        } catch (SQLException e) {
+            plugin.getPluginLogger().severe("加载待发放金额失败！UUID: " + playerUUID);
+            e.printStackTrace();
+        }
+
+        return payouts;
+    }
+
+    /**
+     * 删除记录，删除成功表示取得了这笔金额的发放权
+     */
+    private boolean claim(Payout payout) {
+        String sql = "DELETE FROM pending_payouts WHERE id = ?";
+
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, payout.id);
+            return stmt.executeUpdate() == 1;
+
+        } catch (SQLException e) {
+            plugin.getPluginLogger().severe("取出待发放金额失败: " + payout.id);
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void insert(UUID playerUUID, Payout payout) {
+        String sql = "INSERT INTO pending_payouts (id, player, redpocket_id, amount_minor, created_at) VALUES (?, ?, ?, ?, ?)";
+
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, payout.id);
+            stmt.setString(2, playerUUID.toString());
+            stmt.setString(3, payout.redPocketId);
+            stmt.setLong(4, payout.amount);
+            stmt.setLong(5, System.currentTimeMillis());
+            stmt.executeUpdate();
+
+        } catch (SQLException e) {
+            // 最后的记录，需要管理员手动补发
+            plugin.getPluginLogger().severe("保存待发放金额失败，需要手动补发: 玩家=" + playerUUID +
+                " 红包=" + payout.redPocketId + " 金额=" + Money.format(payout.amount));
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.redpockets.manager;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 在线玩家位置索引
+ * 按世界和区块划分的空间哈希，玩家移动跨区块、传送、进出服时更新
+ * 查询只读取索引中记录的坐标，不访问玩家实体，可以在 Folia 的任意区域线程上执行
+ */
+public class PlayerLocationIndex {
+
+    /**
+     * 玩家在索引中的位置，坐标为最近一次更新时的方块坐标
+     */
+    private static final class Entry {
+        private final Player player;
+        private volatile UUID world;
+        private volatile long chunk;
+        private volatile int x;
+        private volatile int z;
+
+        private Entry(Player player) {
+            this.player = player;
+        }
+    }
+
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<UUID, Map<Long, Set<Entry>>> worlds = new ConcurrentHashMap<>();
+
+    /**
+     * 更新玩家位置，只有跨区块或跨世界时才移动所在的格子
+     */
+    public void update(Player player, Location location) {
+        if (location == null || location.getWorld() == null) {
+            return;
+        }
+        UUID world = location.getWorld().getUID();
+        int x = location.getBlockX();
+        int z = location.getBlockZ();
+        long chunk = chunkKey(x >> 4, z >> 4);
+
+        Entry entry = entries.get(player.getUniqueId());
+        if (entry == null) {
+            entry = new Entry(player);
+            entry.world = world;
+            entry.chunk = chunk;
+            entry.x = x;
+            entry.z = z;
+            addToCell(entry, world, chunk);
+            entries.put(player.getUniqueId(), entry);
+            return;
+        }
+
+        // 同一玩家的事件只在其所在区域线程上触发，这里不会并发修改同一条目
+        entry.x = x;
+        entry.z = z;
+        if (entry.chunk != chunk || !entry.world.equals(world)) {
+            addToCell(entry, world, chunk);
+            removeFromCell(entry);
+            entry.world = world;
+            entry.chunk = chunk;
+        }
+    }
+
+    /**
+     * 移除玩家
+     */
+    public void remove(UUID uuid) {
+        Entry entry = entries.remove(uuid);
+        if (entry != null) {
+            removeFromCell(entry);
+        }
+    }
+
+    /**
+     * 清空索引
+     */
+    public void clear() {
+        entries.clear();
+        worlds.clear();
+    }
+
+    /**
+     * 判断玩家是否在索引中
+     */
+    public boolean contains(UUID uuid) {
+        return entries.containsKey(uuid);
+    }
+
+    /**
+     * 获取与指定玩家处于同一世界的所有玩家
+     */
+    public List<Player> inSameWorld(UUID origin) {
+        Entry entry = entries.get(origin);
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        Map<Long, Set<Entry>> cells = worlds.get(entry.world);
+        if (cells == null) {
+            return Collections.emptyList();
+        }
+
+        List<Player> result = new ArrayList<>();
+        for (Set<Entry> cell : cells.values()) {
+            for (Entry other : cell) {
+                result.add(other.player);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取指定玩家周围半径内的玩家
+     * 只检查半径覆盖的区块格子，开销与附近玩家密度成正比，与在线人数无关
+     */
+    public List<Player> nearby(UUID origin, int radius) {
+        Entry entry = entries.get(origin);
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        Map<Long, Set<Entry>> cells = worlds.get(entry.world);
+        if (cells == null) {
+            return Collections.emptyList();
+        }
+
+        int originX = entry.x;
+        int originZ = entry.z;
+        long radiusSquared = (long) radius * radius;
+        int minChunkX = (originX - radius) >> 4;
+        int maxChunkX = (originX + radius) >> 4;
+        int minChunkZ = (originZ - radius) >> 4;
+        int maxChunkZ = (originZ + radius) >> 4;
+
+        List<Player> result = new ArrayList<>();
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                Set<Entry> cell = cells.get(chunkKey(chunkX, chunkZ));
+                if (cell == null) {
+                    continue;
+                }
+                for (Entry other : cell) {
+                    long dx = other.x - originX;
+                    long dz = other.z - originZ;
+                    if (dx * dx + dz * dz <= radiusSquared) {
+                        result.add(other.player);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private void addToCell(Entry entry, UUID world, long chunk) {
+        // 在 compute 内加入，与移除空格子互斥，避免加入到刚被移除的格子
+        worlds.computeIfAbsent(world, key -> new ConcurrentHashMap<>())
+            .compute(chunk, (key, cell) -> {
+                Set<Entry> target = cell != null ? cell : ConcurrentHashMap.newKeySet();
+                target.add(entry);
+                return target;
+            });
+    }
+
+    private void removeFromCell(Entry entry) {
+        Map<Long, Set<Entry>> cells = worlds.get(entry.world);
+        if (cells == null) {
+            return;
+        }
+        // 格子为空时移除，避免玩家走过的区块一直留在索引里
+        cells.computeIfPresent(entry.chunk, (key, cell) -> {
+            cell.remove(entry);
+            return cell.isEmpty() ? null : cell;
+        });
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+}
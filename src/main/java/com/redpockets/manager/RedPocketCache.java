@@ -0,0 +1,302 @@
+package com.redpockets.manager;
+
+import com.redpockets.model.RedPocket;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 红包缓存
+ * 有容量上限，过期和已抢完的红包优先回收，超出容量时按时钟算法淘汰近期未访问的条目；
+ * 未命中时通过加载函数从数据库读取，条目较旧时在后台刷新领取状态
+ */
+public class RedPocketCache {
+
+    // 超出容量时一次淘汰到容量的 90%，避免每次插入都扫描
+    private static final double EVICT_TARGET_RATIO = 0.9;
+
+    public enum EvictionCause {
+        EXPIRED,   // 已过期
+        COMPLETED, // 已抢完
+        SIZE       // 超出容量
+    }
+
+    private final Map<String, Entry> entries;
+    // 时钟队列，按放入顺序排列；被移除的条目在淘汰或定期清理时丢弃
+    private final Queue<Entry> clock = new ConcurrentLinkedQueue<>();
+    private final Function<String, RedPocket> loader;
+    private final Executor refreshExecutor;
+    private final BiConsumer<RedPocket, EvictionCause> evictionListener;
+    private final int maxSize;
+    private final long refreshAfterMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param loader 未命中时的加载函数，在调用线程执行，找不到返回 null，读取失败抛出 IllegalStateException
+     * @param refreshExecutor 后台刷新使用的线程
+     * @param evictionListener 条目因过期、抢完或超出容量被回收时调用（不含主动移除）
+     * @param refreshAfterMillis 条目加载多久后在访问时触发后台刷新，0 为不刷新
+     */
+    public RedPocketCache(int maxSize, long refreshAfterMillis, Function<String, RedPocket> loader,
+                          Executor refreshExecutor, BiConsumer<RedPocket, EvictionCause> evictionListener) {
+        this.entries = new ConcurrentHashMap<>();
+        this.maxSize = Math.max(1, maxSize);
+        this.refreshAfterMillis = refreshAfterMillis;
+        this.loader = loader;
+        this.refreshExecutor = refreshExecutor;
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * 获取红包，未命中时加载并放入缓存（会访问数据库，不要在主线程调用）
+     * 数据库读取失败时抛出 IllegalStateException，不会当作不存在
+     */
+    public RedPocket get(String id) {
+        RedPocket cached = getIfPresent(id);
+        if (cached != null) {
+            return cached;
+        }
+
+        RedPocket loaded = loader.apply(id);
+        loads.increment();
+        if (loaded == null || staleCause(loaded) != null) {
+            // 不存在、已过期或已抢完的红包不放入缓存
+            return loaded;
+        }
+        // 并发加载时以先放入的对象为准，保证同一个红包只有一个实例
+        return putIfAbsent(loaded);
+    }
+
+    /**
+     * 只从缓存获取，不加载；过期的条目在此处回收
+     */
+    public RedPocket getIfPresent(String id) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.redPocket.isExpired()) {
+            evict(id, entry, EvictionCause.EXPIRED);
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        entry.referenced = true;
+        long now = System.currentTimeMillis();
+        if (refreshAfterMillis > 0 && now - entry.loadedAt >= refreshAfterMillis) {
+            refreshAhead(id, entry, now);
+        }
+        return entry.redPocket;
+    }
+
+    /**
+     * 放入新创建的红包
+     */
+    public void put(RedPocket redPocket) {
+        Entry entry = new Entry(redPocket);
+        entries.put(redPocket.getId(), entry);
+        clock.add(entry);
+        evictIfOversized();
+    }
+
+    /**
+     * 放入从数据库加载的红包，已存在时返回缓存中的对象
+     */
+    public RedPocket putIfAbsent(RedPocket redPocket) {
+        Entry entry = new Entry(redPocket);
+        Entry existing = entries.putIfAbsent(redPocket.getId(), entry);
+        if (existing != null) {
+            return existing.redPocket;
+        }
+        clock.add(entry);
+        evictIfOversized();
+        return redPocket;
+    }
+
+    /**
+     * 主动移除（删除红包时调用，不通知回收监听器）
+     */
+    public void invalidate(String id) {
+        if (entries.remove(id) != null) {
+            evictions.increment();
+        }
+    }
+
+    /**
+     * 回收已过期和已抢完的条目，并丢弃时钟队列中已移除的条目
+     */
+    public void cleanUp() {
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            EvictionCause cause = staleCause(e.getValue().redPocket);
+            if (cause != null) {
+                evict(e.getKey(), e.getValue(), cause);
+            }
+        }
+        clock.removeIf(entry -> entries.get(entry.redPocket.getId()) != entry);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 获取统计信息快照
+     */
+    public Stats getStats() {
+        return new Stats(entries.size(), maxSize, hits.sum(), misses.sum(), loads.sum(),
+            refreshes.sum(), evictions.sum());
+    }
+
+    /**
+     * 后台重新读取红包，把其他服务器写入的领取状态合并到缓存中的对象上
+     */
+    private void refreshAhead(String id, Entry entry, long now) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        entry.loadedAt = now;
+
+        refreshExecutor.execute(() -> {
+            try {
+                RedPocket fresh;
+                try {
+                    fresh = loader.apply(id);
+                } catch (IllegalStateException e) {
+                    // 读取失败，保留缓存中的对象等待下次刷新
+                    return;
+                }
+                refreshes.increment();
+                if (fresh == null) {
+                    // 已在其他地方删除
+                    invalidate(id);
+                } else if (fresh.isClaimed() && !entry.redPocket.isClaimed()) {
+                    entry.redPocket.setClaimed(true);
+                    evict(id, entry, EvictionCause.COMPLETED);
+                }
+            } finally {
+                entry.refreshing.set(false);
+            }
+        });
+    }
+
+    private void evictIfOversized() {
+        if (entries.size() <= maxSize) {
+            return;
+        }
+
+        synchronized (this) {
+            if (entries.size() <= maxSize) {
+                return;
+            }
+
+            // 时钟算法：从最早放入的条目开始，过期和已抢完的直接回收，
+            // 最近访问过的清除标记后放回队尾，其余的淘汰；扫描次数有上限，未淘汰够时由下次放入继续
+            int target = (int) (maxSize * EVICT_TARGET_RATIO);
+            int budget = entries.size() * 2;
+            while (entries.size() > target && budget-- > 0) {
+                Entry entry = clock.poll();
+                if (entry == null) {
+                    return;
+                }
+                String id = entry.redPocket.getId();
+                if (entries.get(id) != entry) {
+                    continue;
+                }
+
+                EvictionCause cause = staleCause(entry.redPocket);
+                if (cause != null) {
+                    evict(id, entry, cause);
+                } else if (entry.referenced) {
+                    entry.referenced = false;
+                    clock.add(entry);
+                } else {
+                    evict(id, entry, EvictionCause.SIZE);
+                }
+            }
+        }
+    }
+
+    private void evict(String id, Entry entry, EvictionCause cause) {
+        if (entries.remove(id, entry)) {
+            evictions.increment();
+            evictionListener.accept(entry.redPocket, cause);
+        }
+    }
+
+    private static EvictionCause staleCause(RedPocket redPocket) {
+        if (redPocket.isClaimed()) {
+            return EvictionCause.COMPLETED;
+        }
+        if (redPocket.isExpired()) {
+            return EvictionCause.EXPIRED;
+        }
+        return null;
+    }
+
+    private static final class Entry {
+        private final RedPocket redPocket;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long loadedAt;
+        // 上次淘汰扫描后是否被访问过
+        private volatile boolean referenced;
+
+        private Entry(RedPocket redPocket) {
+            this.redPocket = redPocket;
+            this.loadedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public static final class Stats {
+        private final int size;
+        private final int maxSize;
+        private final long hits;
+        private final long misses;
+        private final long loads;
+        private final long refreshes;
+        private final long evictions;
+
+        private Stats(int size, int maxSize, long hits, long misses, long loads, long refreshes, long evictions) {
+            this.size = size;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.misses = misses;
+            this.loads = loads;
+            this.refreshes = refreshes;
+            this.evictions = evictions;
+        }
+
+        public int getSize() { return size; }
+        public int getMaxSize() { return maxSize; }
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getLoads() { return loads; }
+        public long getRefreshes() { return refreshes; }
+        public long getEvictions() { return evictions; }
+
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.redpockets.manager;
+
+import com.redpockets.RedPocketsPlugin;
+import com.redpockets.model.Money;
+import com.redpockets.model.RedPocket;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * 红包过期管理器
+ * 用时间轮跟踪所有未过期的红包，到期后批量标记为已过期，
+ * 金币红包把未领取的金额退还给发送者，物品红包解除发送者物品的锁定
+ */
+public class RedPocketExpiryManager {
+
+    // 时间轮每刻 1 秒，512 个槽
+    private static final long TICK_MILLIS = 1000;
+    private static final int WHEEL_SIZE = 512;
+    // 每条语句处理的红包数量上限
+    private static final int BATCH_SIZE = 500;
+    // 经济系统不可用时推迟退款的时间
+    private static final long RETRY_DELAY_MILLIS = 60_000;
+
+    private final RedPocketsPlugin plugin;
+    private final RedPocketManager redPocketManager;
+    private final Executor databaseExecutor;
+    private final boolean clusterMode;
+    private final TimingWheel wheel;
+
+    public RedPocketExpiryManager(RedPocketsPlugin plugin, RedPocketManager redPocketManager,
+                                  Executor databaseExecutor, boolean clusterMode) {
+        this.plugin = plugin;
+        this.redPocketManager = redPocketManager;
+        this.databaseExecutor = databaseExecutor;
+        this.clusterMode = clusterMode;
+        this.wheel = new TimingWheel(TICK_MILLIS, WHEEL_SIZE);
+    }
+
+    /**
+     * 启动时间轮，进行中的红包由启动预加载登记
+     */
+    public void start() {
+        long periodTicks = Math.max(1, TICK_MILLIS / 50);
+        plugin.getScheduler().runSyncTimer(this::tick, periodTicks, periodTicks);
+    }
+
+    /**
+     * 登记红包的过期时间，永久有效的红包不登记
+     */
+    public void track(RedPocket redPocket) {
+        if (redPocket.getExpiresAt() > 0) {
+            wheel.schedule(redPocket.getId(), redPocket.getExpiresAt());
+        }
+    }
+
+    /**
+     * 取消红包的过期登记（抢完或删除时调用）
+     */
+    public void untrack(String redPocketId) {
+        wheel.cancel(redPocketId);
+    }
+
+    public int getTrackedCount() {
+        return wheel.size();
+    }
+
+    private void tick() {
+        List<String> expired = wheel.advance(System.currentTimeMillis());
+        if (expired.isEmpty()) {
+            return;
+        }
+
+        // 先提交积压的抢取记录，剩余金额以数据库为准时才准确
+        plugin.getDatabaseManager().getWriteBehindQueue().flushAsync()
+            .thenRunAsync(() -> expire(expired), databaseExecutor);
+    }
+
+    /**
+     * 批量处理到期的红包（数据库线程）
+     */
+    private void expire(List<String> ids) {
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            List<String> batch = ids.subList(from, Math.min(ids.size(), from + BATCH_SIZE));
+            List<ExpiredPocket> expired = markExpired(batch);
+            if (!expired.isEmpty()) {
+                plugin.getScheduler().runSync(() -> settle(expired));
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中锁定并标记一批红包为已过期，返回本次实际标记的红包
+     * 已抢完、已删除或已被其他服务器处理的红包不会返回，保证每个红包只退款一次；
+     * 处理完成的红包在这里释放领取账本，推迟处理的红包保留账本
+     */
+    private List<ExpiredPocket> markExpired(List<String> ids) {
+        boolean economyEnabled = plugin.getEconomyManager().isEnabled();
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        String selectSql = "SELECT id, sender, type, remaining_amount FROM redpockets " +
+                           "WHERE id IN (" + placeholders + ") AND is_claimed = 0 AND is_expired = 0" +
+                           (plugin.getConfigManager().getDatabaseType().equalsIgnoreCase("mysql") ? " FOR UPDATE" : "");
+        String updateSql = "UPDATE redpockets SET is_expired = 1 WHERE id = ?";
+
+        List<ExpiredPocket> expired = new ArrayList<>();
+        Set<String> postponed = new HashSet<>();
+
+        try (Connection conn = plugin.getDatabaseManager().getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(selectSql)) {
+                    for (int i = 0; i < ids.size(); i++) {
+                        stmt.setString(i + 1, ids.get(i));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            String id = rs.getString("id");
+                            RedPocket.RedPocketType type = RedPocket.RedPocketType.valueOf(rs.getString("type"));
+
+                            if (type != RedPocket.RedPocketType.ITEM && !economyEnabled) {
+                                // 无法退款时暂不处理，稍后重试
+                                wheel.schedule(id, System.currentTimeMillis() + RETRY_DELAY_MILLIS);
+                                postponed.add(id);
+                                continue;
+                            }
+
+                            long remaining = rs.getLong("remaining_amount");
+                            expired.add(new ExpiredPocket(id, UUID.fromString(rs.getString("sender")), type, remaining));
+                        }
+                    }
+                }
+
+                try (PreparedStatement stmt = conn.prepareStatement(updateSql)) {
+                    for (ExpiredPocket pocket : expired) {
+                        stmt.setString(1, pocket.id);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            plugin.getPluginLogger().severe("标记过期红包失败: " + e.getMessage());
+            e.printStackTrace();
+            // 保留账本，稍后重试
+            long retryAt = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+            for (String id : ids) {
+                wheel.schedule(id, retryAt);
+            }
+            return Collections.emptyList();
+        }
+
+        for (ExpiredPocket pocket : expired) {
+            if (pocket.type == RedPocket.RedPocketType.ITEM) {
+                redPocketManager.closeClaims(pocket.id);
+                redPocketManager.closeItemPool(pocket.id);
+                plugin.getItemEditStorageManager().releaseItemLock(pocket.sender, pocket.id);
+                continue;
+            }
+            // 单服模式下以内存账本为准，已取出但尚未写入数据库的份额不会被重复退还
+            long unclaimed = clusterMode ? -1 : redPocketManager.closeClaims(pocket.id);
+            if (unclaimed >= 0) {
+                pocket.refund = unclaimed;
+            }
+        }
+
+        // 关闭后仍在处理中的抢取持有账本引用，撤销时通过 refundReleased 退款
+        for (String id : ids) {
+            if (!postponed.contains(id)) {
+                redPocketManager.removeClaims(id);
+            }
+        }
+
+        return expired;
+    }
+
+    /**
+     * 退款并通知在线的发送者（主线程）
+     */
+    private void settle(List<ExpiredPocket> expired) {
+        for (ExpiredPocket pocket : expired) {
+            OfflinePlayer sender = plugin.getServer().getOfflinePlayer(pocket.sender);
+
+            if (pocket.type == RedPocket.RedPocketType.ITEM) {
+                plugin.getPreviewManager().removePreview(pocket.id);
+                plugin.getPluginLogger().info("物品红包已过期: " + pocket.id);
+                notifySender(sender, "gui.redpocket.expired.items", new HashMap<>());
+                continue;
+            }
+
+            if (pocket.refund <= 0) {
+                plugin.getPluginLogger().info("红包已过期: " + pocket.id);
+                continue;
+            }
+
+            if (!plugin.getEconomyManager().depositOffline(sender, pocket.refund)) {
+                plugin.getPluginLogger().severe("退还过期红包失败: " + pocket.id + " 发送者=" + pocket.sender +
+                    " 金额=" + Money.format(pocket.refund));
+                continue;
+            }
+
+            plugin.getPluginLogger().info("红包已过期: " + pocket.id + " 退还 " + Money.format(pocket.refund));
+            Map<String, String> placeholders = new HashMap<>();
+            placeholders.put("amount", Money.format(pocket.refund));
+            notifySender(sender, "gui.redpocket.expired.refund", placeholders);
+        }
+    }
+
+    /**
+     * 退还红包关闭后才被撤销的份额（任意线程）
+     * 过期时这部分份额已被取出，没有计入退款，撤销后单独退还给发送者
+     */
+    public void refundReleased(RedPocket redPocket, long amount) {
+        ExpiredPocket pocket = new ExpiredPocket(redPocket.getId(), redPocket.getSender(), redPocket.getType(), amount);
+        plugin.getScheduler().runSync(() -> settle(Collections.singletonList(pocket)));
+    }
+
+    private void notifySender(OfflinePlayer sender, String key, Map<String, String> placeholders) {
+        Player player = sender.getPlayer();
+        if (player != null) {
+            plugin.getScheduler().runForEntity(player,
+                () -> plugin.getMessageManager().sendInfo(player, key, placeholders));
+        }
+    }
+
+    private static final class ExpiredPocket {
+        private final String id;
+        private final UUID sender;
+        private final RedPocket.RedPocketType type;
+        private long refund;
+
+        private ExpiredPocket(String id, UUID sender, RedPocket.RedPocketType type, long refund) {
+            this.id = id;
+            this.sender = sender;
+            this.type = type;
+            this.refund = refund;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.redpockets.manager;
+
+import com.redpockets.RedPocketsPlugin;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 红包ID过滤器
+ * 用布隆过滤器记录所有已知的红包ID，并缓存最近查不到的ID，
+ * 不存在的ID在内存中直接拒绝，不再访问数据库
+ */
+public class RedPocketIdFilter {
+
+    // 布隆过滤器误判率
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    // 布隆过滤器最少容纳的ID数量
+    private static final int MIN_CAPACITY = 10000;
+    // 查不到的ID缓存时间和数量上限
+    private static final long NEGATIVE_TTL_MILLIS = 60_000;
+    private static final int NEGATIVE_MAX_SIZE = 10000;
+
+    private final RedPocketsPlugin plugin;
+    // 多服模式下其他服务器创建的红包不会经过本服，布隆过滤器不可用
+    private final boolean bloomEnabled;
+    private final Map<String, Long> negativeCache;
+    private final LongAdder rejected;
+    private final AtomicBoolean rebuildScheduled;
+
+    // 尚未从数据库构建完成时为 null，此时不拦截
+    private volatile BloomFilter current;
+    // 正在重建的过滤器，重建期间新创建的ID同时写入
+    private volatile BloomFilter building;
+
+    public RedPocketIdFilter(RedPocketsPlugin plugin, boolean bloomEnabled) {
+        this.plugin = plugin;
+        this.bloomEnabled = bloomEnabled;
+        this.negativeCache = new ConcurrentHashMap<>();
+        this.rejected = new LongAdder();
+        this.rebuildScheduled = new AtomicBoolean();
+    }
+
+    /**
+     * 检查ID是否可能存在，返回 false 时一定不存在
+     */
+    public boolean mightExist(String id) {
+        if (!isWellFormed(id)) {
+            rejected.increment();
+            return false;
+        }
+
+        Long expiresAt = negativeCache.get(id);
+        if (expiresAt != null) {
+            if (expiresAt > System.currentTimeMillis()) {
+                rejected.increment();
+                return false;
+            }
+            negativeCache.remove(id, expiresAt);
+        }
+
+        BloomFilter filter = current;
+        if (filter != null && !filter.mightContain(id)) {
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 记录新创建的红包ID
+     */
+    public void add(String id) {
+        negativeCache.remove(id);
+        if (!bloomEnabled) {
+            return;
+        }
+
+        BloomFilter next = building;
+        if (next != null) {
+            next.put(id);
+        }
+        BloomFilter filter = current;
+        if (filter != null) {
+            filter.put(id);
+            // 超出容量后误判率上升，按当前数量重建
+            if (filter.isOverloaded() && rebuildScheduled.compareAndSet(false, true)) {
+                try {
+                    plugin.getDatabaseManager().getExecutor().execute(() -> {
+                        try {
+                            rebuild();
+                        } finally {
+                            rebuildScheduled.set(false);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // 队列已满，下次写入时再安排重建
+                    rebuildScheduled.set(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录数据库中查不到的ID（包括已删除的红包）
+     */
+    public void recordMiss(String id) {
+        if (negativeCache.size() >= NEGATIVE_MAX_SIZE) {
+            negativeCache.clear();
+        }
+        negativeCache.put(id, System.currentTimeMillis() + NEGATIVE_TTL_MILLIS);
+    }
+
+    /**
+     * 从 redpockets 表重建布隆过滤器（数据库线程）
+     */
+    public synchronized void rebuild() {
+        if (!bloomEnabled) {
+            return;
+        }
+
+        try (Connection conn = plugin.getDatabaseManager().getReadConnection();
+             Statement stmt = conn.createStatement()) {
+
+            int count;
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM redpockets")) {
+                count = rs.next() ? rs.getInt(1) : 0;
+            }
+
+            BloomFilter filter = new BloomFilter(Math.max(MIN_CAPACITY, count * 2), FALSE_POSITIVE_RATE);
+            building = filter;
+            try (ResultSet rs = stmt.executeQuery("SELECT id FROM redpockets")) {
+                while (rs.next()) {
+                    filter.put(rs.getString(1));
+                }
+            }
+            current = filter;
+            plugin.getPluginLogger().debug("红包ID过滤器已构建: " + filter.size() + " 个ID");
+
+        } catch (SQLException e) {
+            plugin.getPluginLogger().severe("构建红包ID过滤器失败: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            building = null;
+        }
+    }
+
+    /**
+     * 被拒绝的查询次数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * 红包ID由 UUID.randomUUID() 生成，格式不对的直接拒绝
+     */
+    private static boolean isWellFormed(String id) {
+        if (id == null || id.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 线程安全的布隆过滤器，使用双重哈希生成各个位置
+     */
+    private static final class BloomFilter {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+        private final int capacity;
+        private final AtomicInteger size;
+
+        private BloomFilter(int capacity, double falsePositiveRate) {
+            long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bits = new AtomicLongArray((int) ((m + 63) >>> 6));
+            this.bitCount = (long) bits.length() << 6;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+            this.capacity = capacity;
+            this.size = new AtomicInteger();
+        }
+
+        private void put(String id) {
+            long h1 = hash(id);
+            long h2 = mix(h1) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long index = Long.remainderUnsigned(h1 + i * h2, bitCount);
+                int word = (int) (index >>> 6);
+                long mask = 1L << index;
+                long value;
+                do {
+                    value = bits.get(word);
+                    if ((value & mask) != 0) {
+                        break;
+                    }
+                } while (!bits.compareAndSet(word, value, value | mask));
+            }
+            size.incrementAndGet();
+        }
+
+        private boolean mightContain(String id) {
+            long h1 = hash(id);
+            long h2 = mix(h1) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long index = Long.remainderUnsigned(h1 + i * h2, bitCount);
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int size() {
+            return size.get();
+        }
+
+        private boolean isOverloaded() {
+            return size.get() > capacity;
+        }
+
+        // ID 不区分大小写（UUID 的十六进制表示）
+        private static long hash(String id) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < id.length(); i++) {
+                h ^= Character.toLowerCase(id.charAt(i));
+                h *= 0x100000001b3L;
+            }
+            return mix(h);
+        }
+
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb53fe63f9a85L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
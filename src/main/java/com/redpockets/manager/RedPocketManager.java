@@ -1,13 +1,26 @@
 package com.redpockets.manager;
 
 import com.redpockets.RedPocketsPlugin;
+import com.redpockets.manager.allocation.AllocationStrategy;
+import com.redpockets.manager.allocation.EqualSplitAllocation;
+import com.redpockets.model.GrabResult;
+import com.redpockets.model.Money;
 import com.redpockets.model.RedPocket;
 import com.redpockets.model.RedPocketRecord;
+import net.md_5.bungee.api.chat.BaseComponent;
 import net.md_5.bungee.api.chat.TextComponent;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 /**
  * 红包管理器
@@ -15,20 +28,187 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class RedPocketManager {
 
+    // 物品红包的抢取记录固定记为 1（与旧数据中的 1.0 保持一致）
+    private static final long ITEM_RECORD_AMOUNT = Money.SCALE;
+
     private final RedPocketsPlugin plugin;
-    private final Map<String, RedPocket> redPocketCache;
+    private final RedPocketCache redPocketCache;
+    private final RedPocketIdFilter idFilter;
+    private final RedPocketExpiryManager expiryManager;
+    private final ItemPoolStore itemPools;
+    // 金币红包抢取广播合并
+    private final GrabBroadcastCoalescer grabBroadcasts;
+    private final ClaimLedger claimLedger;
+    // 多服模式下由数据库判定金币红包的领取，单服模式为 null
+    private final ClusterClaimStore clusterClaimStore;
+    private final Executor databaseExecutor;
+    // 写入抢取记录使用的执行器：队列满时拒绝，不在调用线程执行
+    private final Executor persistExecutor;
+    // 启动预加载完成后完成
+    private final CompletableFuture<Void> ready;
+    // 红包尚未写入数据库的发送者，写入完成前不能再次创建
+    private final Set<UUID> creating = ConcurrentHashMap.newKeySet();
+
+    // 随机红包分配设置
+    private volatile AllocationStrategy randomStrategy;
+    private volatile double randomMinPercent;
+    private volatile double randomMaxPercent;
 
     public RedPocketManager(RedPocketsPlugin plugin) {
         this.plugin = plugin;
-        this.redPocketCache = new ConcurrentHashMap<>();
+        this.claimLedger = new ClaimLedger();
+        this.itemPools = new ItemPoolStore(plugin);
+        this.grabBroadcasts = new GrabBroadcastCoalescer(plugin, this::broadcastCoinRedPocketGrabs);
+        this.clusterClaimStore = plugin.getConfigManager().isClusterMode() ? new ClusterClaimStore(plugin) : null;
+        if (clusterClaimStore != null) {
+            plugin.getPluginLogger().info("多服模式已启用，金币红包由数据库判定领取");
+        }
+        this.databaseExecutor = plugin.getDatabaseManager().getExecutor();
+        this.persistExecutor = plugin.getDatabaseManager().getExecutor().rejecting();
+        this.idFilter = new RedPocketIdFilter(plugin, clusterClaimStore == null);
+        databaseExecutor.execute(idFilter::rebuild);
+        this.redPocketCache = new RedPocketCache(
+            plugin.getConfigManager().getCacheMaxSize(),
+            plugin.getConfigManager().getCacheRefreshAfter() * 1000,
+            this::loadKnownRedPocket,
+            databaseExecutor,
+            this::onRedPocketEvicted);
+
+        long cleanupTicks = Math.max(1, plugin.getConfigManager().getCacheCleanupInterval()) * 20;
+        plugin.getScheduler().runSyncTimer(redPocketCache::cleanUp, cleanupTicks, cleanupTicks);
+
+        this.expiryManager = new RedPocketExpiryManager(plugin, this, databaseExecutor, clusterClaimStore != null);
+        expiryManager.start();
+        reloadAllocationSettings();
+
+        // 先提交上次遗留的日志记录，再预加载，保证领取状态完整
+        this.ready = new CompletableFuture<>();
+        plugin.getDatabaseManager().getWriteBehindQueue().flushAsync()
+            .thenRunAsync(this::warmLoad, databaseExecutor)
+            .whenComplete((ignored, e) -> {
+                if (e != null) {
+                    plugin.getPluginLogger().severe("预加载红包失败: " + e.getMessage());
+                }
+                ready.complete(null);
+            });
+    }
+
+    /**
+     * 预加载是否已完成
+     */
+    public boolean isReady() {
+        return ready.isDone();
+    }
+
+    /**
+     * 用一条只进游标查询流式读取所有未抢完、未过期的红包及其抢取记录（数据库线程）
+     * 结果按红包ID排序，同一个红包的记录连续出现，边读边放入缓存和领取账本
+     */
+    private void warmLoad() {
+        String sql = "SELECT p.*, r.claimer, r.amount_minor AS claimed_amount FROM redpockets p " +
+                     "LEFT JOIN redpocket_records r ON r.redpocket_id = p.id " +
+                     "WHERE p.is_claimed = 0 AND p.is_expired = 0 ORDER BY p.id";
+        long start = System.currentTimeMillis();
+        int loaded = 0;
+
+        try (Connection conn = plugin.getDatabaseManager().getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            stmt.setFetchSize(plugin.getConfigManager().getWarmLoadFetchSize());
+            try (ResultSet rs = stmt.executeQuery()) {
+                RedPocket current = null;
+                Map<UUID, Long> claimed = null;
+
+                while (rs.next()) {
+                    String id = rs.getString("id");
+                    if (current == null || !current.getId().equals(id)) {
+                        if (current != null) {
+                            warmUp(current, claimed);
+                            loaded++;
+                        }
+                        current = readRedPocket(rs);
+                        claimed = new HashMap<>();
+                    }
+
+                    String claimer = rs.getString("claimer");
+                    if (claimer != null) {
+                        claimed.merge(UUID.fromString(claimer), rs.getLong("claimed_amount"), Long::sum);
+                    }
+                }
+
+                if (current != null) {
+                    warmUp(current, claimed);
+                    loaded++;
+                }
+            }
+
+        } catch (SQLException e) {
+            plugin.getPluginLogger().severe("预加载红包失败: " + e.getMessage());
+            e.printStackTrace();
+            return;
+        }
+
+        plugin.getPluginLogger().info("已预加载 " + loaded + " 个进行中的红包，用时 " +
+            (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private void warmUp(RedPocket redPocket, Map<UUID, Long> claimed) {
+        // 已到期但尚未处理的红包也要登记，由过期管理器补发退款
+        expiryManager.track(redPocket);
+        if (redPocket.isExpired() || redPocketCache.size() >= redPocketCache.getMaxSize()) {
+            return;
+        }
+
+        if (redPocketCache.putIfAbsent(redPocket) == redPocket) {
+            claimLedger.putIfAbsent(redPocket.getId(), buildClaims(redPocket, claimed));
+        }
+    }
+
+    /**
+     * 读取并校验随机红包分配配置
+     */
+    public void reloadAllocationSettings() {
+        String algorithm = plugin.getConfigManager().getRandomAlgorithm();
+        AllocationStrategy strategy = AllocationStrategy.forName(algorithm);
+        if (strategy == null) {
+            plugin.getPluginLogger().warning("未知的随机红包算法: " + algorithm + "，使用 DOUBLE_MEAN");
+            strategy = AllocationStrategy.forName("DOUBLE_MEAN");
+        }
+
+        double minPercent = plugin.getConfigManager().getRandomMinPercent();
+        double maxPercent = plugin.getConfigManager().getRandomMaxPercent();
+        if (minPercent < 0 || minPercent >= 1 || maxPercent <= 0 || maxPercent > 1 || minPercent > maxPercent) {
+            plugin.getPluginLogger().warning("随机红包金额百分比配置无效 (min-percent: " + minPercent +
+                ", max-percent: " + maxPercent + ")，使用默认值 0.01 / 0.5");
+            minPercent = 0.01;
+            maxPercent = 0.5;
+        }
+
+        this.randomStrategy = strategy;
+        this.randomMinPercent = minPercent;
+        this.randomMaxPercent = maxPercent;
+
+        String selection = plugin.getConfigManager().getItemSelectionMode();
+        ItemPool.SelectionMode selectionMode = ItemPool.SelectionMode.forName(selection);
+        if (selectionMode == null) {
+            plugin.getPluginLogger().warning("未知的物品红包抽取方式: " + selection + "，使用 UNIT");
+            selectionMode = ItemPool.SelectionMode.UNIT;
+        }
+        itemPools.setSelectionMode(selectionMode);
+
+        plugin.getPluginLogger().debug("随机红包算法: " + strategy.getName() +
+            " 金额范围: " + minPercent + " - " + maxPercent);
     }
 
     /**
      * 创建红包
      * 注意：此方法不扣除玩家余额，调用者需要先验证余额并扣除
+     * 红包在数据库线程写入，写入成功后才加入缓存和领取账本，抢取记录写入时红包已经存在
+     * @param totalAmount 总金额（分）
+     * @return 创建的红包，写入数据库失败时异常完成
      */
-    public RedPocket createRedPocket(UUID sender, RedPocket.RedPocketType type,
-                                     double totalAmount, int count, String note) {
+    public CompletableFuture<RedPocket> createRedPocket(UUID sender, RedPocket.RedPocketType type,
+                                                        long totalAmount, int count, String note) {
         String id = UUID.randomUUID().toString();
         long createdAt = System.currentTimeMillis();
         long expirationTime = plugin.getConfigManager().getExpirationTime();
@@ -36,15 +216,25 @@ public class RedPocketManager {
 
         RedPocket redPocket = new RedPocket(id, sender, type, totalAmount, count, note, createdAt, expiresAt);
 
-        // 保存到数据库
-        saveRedPocketToDatabase(redPocket);
+        // 一次性生成每份金额，与红包一起保存到数据库
+        long[] shares = allocateShares(type, totalAmount, count);
 
-        // 添加到缓存
-        redPocketCache.put(id, redPocket);
+        return supplyOnDatabase(() -> {
+            saveRedPocketToDatabase(redPocket, shares);
 
-        plugin.getPluginLogger().info("创建红包: " + id + " 类型: " + type);
+            // 添加到缓存
+            redPocketCache.put(redPocket);
+            idFilter.add(id);
+            expiryManager.track(redPocket);
+            claimLedger.register(id, shares);
+            if (clusterClaimStore != null) {
+                clusterClaimStore.register(id, shares);
+            }
 
-        return redPocket;
+            plugin.getPluginLogger().info("创建红包: " + id + " 类型: " + type);
+
+            return redPocket;
+        });
     }
 
     /**
@@ -52,363 +242,767 @@ public class RedPocketManager {
      * @param player 创建红包的玩家
      * @param count 红包数量
      * @param note 备注
-     * @return 创建成功的红包对象，如果失败返回 null
+     * @return 创建成功的红包对象，如果失败结果为 null（已向玩家发送提示）
      */
-    public RedPocket createItemRedPocket(org.bukkit.entity.Player player, int count, String note) {
+    public CompletableFuture<RedPocket> createItemRedPocket(org.bukkit.entity.Player player, int count, String note) {
+        UUID sender = player.getUniqueId();
+        if (!creating.add(sender)) {
+            plugin.getMessageManager().sendError(player, "commands.create.in_progress");
+            return CompletableFuture.completedFuture(null);
+        }
+
         String id = UUID.randomUUID().toString();
         long createdAt = System.currentTimeMillis();
         long expirationTime = plugin.getConfigManager().getExpirationTime();
         long expiresAt = expirationTime > 0 ? createdAt + (expirationTime * 1000) : 0;
 
-        RedPocket redPocket = new RedPocket(id, player.getUniqueId(),
+        RedPocket redPocket = new RedPocket(id, sender,
             RedPocket.RedPocketType.ITEM, 0, count, note, createdAt, expiresAt);
 
-        // 保存到数据库
-        saveRedPocketToDatabase(redPocket);
-
-        // 添加到缓存
-        redPocketCache.put(id, redPocket);
-
-        // 加载并保存物品预览
-        org.bukkit.inventory.ItemStack[] items = plugin.getItemEditStorageManager().loadPlayerItems(player.getUniqueId());
-        if (items != null && items.length > 0) {
-            List<org.bukkit.inventory.ItemStack> itemList = new ArrayList<>();
-            for (org.bukkit.inventory.ItemStack item : items) {
-                if (item != null) {
-                    itemList.add(item.clone());
+        return supplyOnDatabase(() -> {
+            // 先读取物品，读取失败时红包不会写入
+            ItemStack[] items = plugin.getItemEditStorageManager().loadPlayerItems(sender);
+
+            // 保存到数据库
+            saveRedPocketToDatabase(redPocket, null);
+
+            // 添加到缓存
+            redPocketCache.put(redPocket);
+            idFilter.add(id);
+            expiryManager.track(redPocket);
+            // 物品红包每份不含金额，只占用名额
+            claimLedger.register(id, new long[count]);
+
+            // 保存物品预览
+            if (items != null && items.length > 0) {
+                List<ItemStack> itemList = new ArrayList<>();
+                for (ItemStack item : items) {
+                    if (item != null) {
+                        itemList.add(item.clone());
+                    }
                 }
+                plugin.getPreviewManager().savePreview(id, itemList, expiresAt);
             }
-            plugin.getPreviewManager().savePreview(id, itemList, expiresAt);
-        }
-
-        // 关联物品到红包
-        plugin.getItemRedPocketGUI().associateRedPocket(player, id, expiresAt);
-
-        plugin.getPluginLogger().info("创建物品红包: " + id + " 数量: " + count);
 
-        return redPocket;
+            plugin.getPluginLogger().info("创建物品红包: " + id + " 数量: " + count);
+            return redPocket;
+        }).thenApplyAsync(created -> {
+            // 关联物品到红包
+            plugin.getItemRedPocketGUI().associateRedPocket(player, id, expiresAt);
+            return created;
+        }, entityExecutor(player)).handle((created, error) -> {
+            creating.remove(sender);
+            if (error != null) {
+                plugin.getMessageManager().sendError(player, "commands.create.failed");
+                return null;
+            }
+            return created;
+        });
     }
 
     /**
      * 验证并扣除玩家余额后创建红包
      * @param player 创建红包的玩家
      * @param type 红包类型
-     * @param totalAmount 总金额
+     * @param totalAmount 总金额（分）
      * @param count 红包数量
      * @param note 备注
-     * @return 创建成功的红包对象，如果失败返回 null
+     * @return 创建成功的红包对象，如果失败结果为 null（已向玩家发送提示，写入数据库失败时已退还金额）
      */
-    public RedPocket createRedPocketWithValidation(org.bukkit.entity.Player player,
-                                                    RedPocket.RedPocketType type,
-                                                    double totalAmount, int count, String note) {
+    public CompletableFuture<RedPocket> createRedPocketWithValidation(org.bukkit.entity.Player player,
+                                                                       RedPocket.RedPocketType type,
+                                                                       long totalAmount, int count, String note) {
         // 验证金额
         if (totalAmount <= 0) {
             plugin.getMessageManager().sendError(player, "commands.create.invalid_amount");
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
 
         // 验证数量
         if (count <= 0) {
             plugin.getMessageManager().sendError(player, "commands.create.invalid_count");
-            return null;
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // 每份至少 0.01
+        if (totalAmount < count) {
+            plugin.getMessageManager().sendError(player, "commands.create.amount_too_small");
+            return CompletableFuture.completedFuture(null);
         }
 
         // 检查经济系统
         if (!plugin.getEconomyManager().isEnabled()) {
             plugin.getMessageManager().sendError(player, "economy.not_enabled");
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
 
         // 检查余额是否足够
         if (!plugin.getEconomyManager().hasEnough(player, totalAmount)) {
             plugin.getMessageManager().sendError(player, "commands.create.insufficient_funds");
-            return null;
+            return CompletableFuture.completedFuture(null);
+        }
+
+        UUID sender = player.getUniqueId();
+        if (!creating.add(sender)) {
+            plugin.getMessageManager().sendError(player, "commands.create.in_progress");
+            return CompletableFuture.completedFuture(null);
         }
 
         // 扣除金额
         if (!plugin.getEconomyManager().withdraw(player, totalAmount)) {
+            creating.remove(sender);
             plugin.getMessageManager().sendError(player, "economy.withdraw_failed");
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
 
-        // 创建红包
-        RedPocket redPocket = createRedPocket(player.getUniqueId(), type, totalAmount, count, note);
-        return redPocket;
+        // 创建红包，写入数据库失败时退还已扣除的金额
+        return createRedPocket(sender, type, totalAmount, count, note).handle((redPocket, error) -> {
+            creating.remove(sender);
+            if (error != null) {
+                refundCreation(player, totalAmount);
+                return null;
+            }
+            return redPocket;
+        });
     }
 
     /**
-     * 抢红包（仅计算金额，不发放）
+     * 红包创建失败时在玩家实体线程退还已扣除的金额
      */
-    public Optional<Double> grabRedPocket(String redPocketId, UUID claimer) {
-        RedPocket redPocket = getRedPocket(redPocketId);
+    private void refundCreation(Player player, long amount) {
+        Runnable refund = () -> {
+            boolean deposited = player.isOnline()
+                ? plugin.getEconomyManager().deposit(player, amount)
+                : plugin.getEconomyManager().depositOffline(player, amount);
+            if (deposited) {
+                plugin.getMessageManager().sendError(player, "commands.create.failed_refunded");
+            } else {
+                plugin.getPluginLogger().severe("退还创建红包的金额失败: 玩家=" + player.getName() +
+                    " 金额=" + Money.format(amount));
+                plugin.getMessageManager().sendError(player, "economy.deposit_failed");
+            }
+        };
+        plugin.getScheduler().runForEntity(player, refund, refund);
+    }
 
-        if (redPocket == null) {
-            plugin.getPluginLogger().debug("红包不存在: " + redPocketId);
-            return Optional.empty();
+    /**
+     * 在数据库线程执行，任务被拒绝时返回异常完成的结果
+     */
+    private <T> CompletableFuture<T> supplyOnDatabase(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, databaseExecutor);
+        } catch (RejectedExecutionException e) {
+            plugin.getPluginLogger().warning("数据库任务队列已满: " + e.getMessage());
+            return CompletableFuture.failedFuture(e);
         }
+    }
 
-        if (!redPocket.isValid()) {
-            plugin.getPluginLogger().debug("红包无效: " + redPocketId);
-            return Optional.empty();
+    /**
+     * 异步抢红包
+     * 分四段执行：玩家实体线程校验并预占份额 → 数据库线程写入记录 → 玩家实体线程发放 → 全局线程广播，
+     * 数据库和经济插件的耗时都不会落在 tick 线程上；
+     * 红包可能在数据库线程上加载完成，预占阶段要检查背包，因此切回玩家实体线程执行
+     * @param redPocketId 红包ID
+     * @param player 抢红包的玩家
+     * @return 抢红包结果，在发放完成后完成（广播不在等待范围内）
+     */
+    public CompletableFuture<GrabResult> grabRedPocketAsync(String redPocketId, Player player) {
+        return resolveRedPocket(redPocketId)
+            .thenApplyAsync(redPocket -> reserveGrab(redPocket, player), entityExecutor(player))
+            .thenCompose(this::submitPersist)
+            .thenCompose(grab -> grab.result != null
+                ? CompletableFuture.completedFuture(grab.result)
+                : CompletableFuture.supplyAsync(() -> deliverGrab(grab, player), entityExecutor(player)))
+            .whenComplete((result, error) -> {
+                if (result != null && result.isClaimed()) {
+                    broadcastGrab(result, player);
+                }
+            })
+            .exceptionally(error -> {
+                plugin.getPluginLogger().severe("抢红包流程异常: 红包=" + redPocketId + " 玩家=" + player.getName() +
+                    " 错误=" + error.getMessage());
+                error.printStackTrace();
+                return GrabResult.failure(GrabResult.Status.FAILED, null);
+            });
+    }
+
+    /**
+     * 根据抢红包结果向玩家发送提示
+     */
+    public void sendGrabFeedback(Player player, GrabResult result) {
+        Map<String, String> placeholders = new HashMap<>();
+
+        switch (result.getStatus()) {
+            case SUCCESS:
+                if (result.isItem()) {
+                    placeholders.put("item", result.getItemName());
+                    placeholders.put("amount", String.valueOf(result.getItemAmount()));
+                    plugin.getMessageManager().sendSuccess(player, "gui.redpocket.grab.success_item", placeholders);
+                } else {
+                    placeholders.put("amount", Money.format(result.getAmount()));
+                    plugin.getMessageManager().sendSuccess(player, "commands.grab.success", placeholders);
+                }
+                break;
+            case ALREADY_CLAIMED:
+                plugin.getMessageManager().sendError(player, "gui.redpocket.grab.already_grabbed");
+                break;
+            case EMPTY:
+                plugin.getMessageManager().sendError(player, "gui.redpocket.grab.empty");
+                break;
+            case ECONOMY_DISABLED:
+                plugin.getMessageManager().sendError(player, "economy.not_enabled");
+                break;
+            case INVENTORY_FULL:
+                plugin.getMessageManager().sendError(player, "gui.redpocket.grab.inventory_full");
+                break;
+            case PAYOUT_PENDING:
+                placeholders.put("amount", Money.format(result.getAmount()));
+                plugin.getMessageManager().sendError(player, "commands.grab.payout_pending", placeholders);
+                break;
+            default:
+                plugin.getMessageManager().sendError(player, "commands.grab.failed");
         }
+    }
 
-        // 检查是否已经抢过
-        if (hasClaimed(redPocketId, claimer)) {
-            plugin.getPluginLogger().debug("玩家已抢过红包: " + claimer);
-            return Optional.empty();
+    /**
+     * 获取红包及其领取账本，缓存未命中时在数据库线程加载
+     */
+    private CompletableFuture<RedPocket> resolveRedPocket(String redPocketId) {
+        RedPocket cached = redPocketCache.getIfPresent(redPocketId);
+        if (cached != null && claimLedger.get(redPocketId) != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        if (cached == null && !idFilter.mightExist(redPocketId)) {
+            // 不存在的ID在内存中直接拒绝
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!ready.isDone()) {
+            // 预加载期间等待其完成，而不是逐个查询数据库
+            return ready.thenCompose(ignored -> resolveRedPocket(redPocketId));
         }
 
-        // 计算金额
-        double amount = calculateAmount(redPocket);
+        return CompletableFuture.supplyAsync(() -> {
+            RedPocket redPocket = getRedPocket(redPocketId);
+            if (redPocket != null && redPocket.isValid()) {
+                getClaims(redPocket);
+            }
+            return redPocket;
+        }, databaseExecutor);
+    }
+
+    /**
+     * 第一段：在玩家实体线程校验并在内存中预占一个份额
+     */
+    private PendingGrab reserveGrab(RedPocket redPocket, Player player) {
+        if (redPocket == null) {
+            return PendingGrab.rejected(GrabResult.failure(GrabResult.Status.NOT_FOUND, null));
+        }
+        if (!redPocket.isValid()) {
+            plugin.getPluginLogger().debug("红包无效: " + redPocket.getId());
+            return PendingGrab.rejected(GrabResult.failure(GrabResult.Status.INVALID, redPocket));
+        }
 
-        if (amount <= 0) {
-            return Optional.empty();
+        boolean isItem = redPocket.getType() == RedPocket.RedPocketType.ITEM;
+        if (!isItem && !plugin.getEconomyManager().isEnabled()) {
+            return PendingGrab.rejected(GrabResult.failure(GrabResult.Status.ECONOMY_DISABLED, redPocket));
+        }
+        if (isItem && player.getInventory().firstEmpty() == -1) {
+            return PendingGrab.rejected(GrabResult.failure(GrabResult.Status.INVENTORY_FULL, redPocket));
         }
 
-        // 保存记录
-        RedPocketRecord record = new RedPocketRecord(
-            UUID.randomUUID().toString(),
-            redPocketId,
-            claimer,
-            amount,
-            System.currentTimeMillis()
-        );
+        // 多服模式下金币红包的判定放到数据库线程
+        if (!isItem && clusterClaimStore != null) {
+            return new PendingGrab(redPocket, player.getUniqueId(), null, null);
+        }
 
-        saveRecordToDatabase(record);
+        ClaimLedger.PocketClaims claims = getClaims(redPocket);
+        ClaimLedger.ClaimResult claim = claims.tryClaim(player.getUniqueId());
+        if (!claim.isSuccess()) {
+            return PendingGrab.rejected(claimFailure(redPocket, player.getUniqueId(), claim));
+        }
 
-        plugin.getPluginLogger().info("玩家 " + claimer + " 抢到红包: " + amount);
+        return new PendingGrab(redPocket, player.getUniqueId(), claims, claim);
+    }
 
-        return Optional.of(amount);
+    private GrabResult claimFailure(RedPocket redPocket, UUID claimer, ClaimLedger.ClaimResult claim) {
+        plugin.getPluginLogger().debug("红包领取失败: " + redPocket.getId() + " 玩家: " + claimer +
+            " 原因: " + claim.getStatus());
+        GrabResult.Status status;
+        switch (claim.getStatus()) {
+            case ALREADY_CLAIMED:
+                status = GrabResult.Status.ALREADY_CLAIMED;
+                break;
+            case FAILED:
+                status = GrabResult.Status.FAILED;
+                break;
+            default:
+                status = GrabResult.Status.EMPTY;
+        }
+        return GrabResult.failure(status, redPocket);
     }
 
     /**
-     * 抢红包并发放（带玩家对象）
-     * @param redPocketId 红包ID
-     * @param player 抢红包的玩家
-     * @return 抢到的金额，物品红包返回1.0，如果失败返回 Optional.empty()
+     * 多服模式：在数据库事务中领取，记录随事务一起写入
      */
-    public Optional<Double> grabRedPocketWithPayment(String redPocketId, org.bukkit.entity.Player player) {
-        RedPocket redPocket = getRedPocket(redPocketId);
-        if (redPocket == null) {
-            return Optional.empty();
+    private PendingGrab persistClusterGrab(PendingGrab grab) {
+        RedPocket redPocket = grab.redPocket;
+        ClaimLedger.ClaimResult claim = clusterClaimStore.claim(redPocket, grab.claimer);
+
+        if (claim == null) {
+            // 升级前创建的红包没有份额表，仍由本服账本判定
+            grab.claims = getClaims(redPocket);
+            grab.claim = grab.claims.tryClaim(grab.claimer);
+            if (!grab.claim.isSuccess()) {
+                grab.result = claimFailure(redPocket, grab.claimer, grab.claim);
+                return grab;
+            }
+            return persistGrab(grab);
         }
 
-        // 检查红包类型
-        if (redPocket.getType() == RedPocket.RedPocketType.ITEM) {
-            // 物品红包处理
-            return grabItemRedPocket(redPocketId, player);
+        grab.claim = claim;
+        if (!claim.isSuccess()) {
+            grab.result = claimFailure(redPocket, grab.claimer, claim);
+        } else if (claim.isCompleted()) {
+            // is_claimed 已在同一条语句中更新
+            redPocket.setClaimed(true);
         }
+        return grab;
+    }
 
-        // 金币红包处理
-        // 先计算金额
-        Optional<Double> amountOpt = grabRedPocket(redPocketId, player.getUniqueId());
-
-        if (amountOpt.isEmpty()) {
-            return amountOpt;
+    /**
+     * 提交第二段到数据库线程
+     * 此时份额已经预占，数据库队列已满时撤销预占并返回失败，玩家可以稍后重试
+     */
+    private CompletableFuture<PendingGrab> submitPersist(PendingGrab grab) {
+        if (grab.result != null) {
+            return CompletableFuture.completedFuture(grab);
         }
+        try {
+            return CompletableFuture.supplyAsync(() -> persistGrab(grab), persistExecutor);
+        } catch (RejectedExecutionException e) {
+            plugin.getPluginLogger().warning("数据库任务队列已满，取消抢红包: 红包=" + grab.redPocket.getId() +
+                " 玩家=" + grab.claimer);
+            if (grab.claims != null) {
+                releaseShare(grab);
+            }
+            grab.result = GrabResult.failure(GrabResult.Status.FAILED, grab.redPocket);
+            return CompletableFuture.completedFuture(grab);
+        }
+    }
 
-        double amount = amountOpt.get();
-
-        // 检查经济系统
-        if (!plugin.getEconomyManager().isEnabled()) {
-            plugin.getMessageManager().sendError(player, "economy.not_enabled");
-            return Optional.empty();
+    /**
+     * 撤销预占的份额；红包已过期关闭时该份额直接退还给发送者
+     */
+    private void releaseShare(PendingGrab grab) {
+        long refund = grab.claims.release(grab.claimer, grab.claim);
+        if (refund > 0) {
+            expiryManager.refundReleased(grab.redPocket, refund);
         }
+    }
 
-        // 发放金额
-        if (!plugin.getEconomyManager().deposit(player, amount)) {
-            plugin.getPluginLogger().severe("发放红包金额失败: 玩家=" + player.getName() + " 金额=" + amount);
-            // 即使发放失败，记录已经保存，避免重复领取
-            return amountOpt;
+    /**
+     * 第二段：在数据库线程写入抢取记录（物品红包同时从发送者的物品中取出一件）
+     */
+    private PendingGrab persistGrab(PendingGrab grab) {
+        if (grab.result != null) {
+            return grab;
+        }
+        if (grab.claim == null) {
+            return persistClusterGrab(grab);
         }
 
-        // 广播抢红包结果
-        broadcastCoinRedPocketGrab(redPocket, player, amount);
+        RedPocket redPocket = grab.redPocket;
+        long amount = grab.claim.getAmount();
 
-        // 检查红包是否被抢完
-        if (isRedPocketCompleted(redPocket)) {
-            // 标记为已抢完
-            redPocket.setClaimed(true);
-            updateRedPocketClaimedStatus(redPocketId, true);
+        if (redPocket.getType() == RedPocket.RedPocketType.ITEM) {
+            try {
+                grab.item = takeItemFromSender(redPocket, grab);
+            } catch (IllegalStateException e) {
+                // 发送者的物品读取或写回失败，物品仍在发送者的物品中，稍后可以重试
+                releaseShare(grab);
+                grab.result = GrabResult.failure(GrabResult.Status.FAILED, redPocket);
+                return grab;
+            }
+            if (grab.item == null) {
+                releaseShare(grab);
+                grab.result = GrabResult.failure(GrabResult.Status.EMPTY, redPocket);
+                return grab;
+            }
+            amount = ITEM_RECORD_AMOUNT;
+        }
 
-            // 广播红包抢完信息（显示气运最佳）
-            broadcastRedPocketCompleted(redPocket);
+        RedPocketRecord record = new RedPocketRecord(
+            UUID.randomUUID().toString(),
+            redPocket.getId(),
+            grab.claimer,
+            amount,
+            System.currentTimeMillis()
+        );
+        // 日志落盘后才确认这次领取；写日志失败时撤销，记录不会写入数据库
+        try {
+            plugin.getDatabaseManager().getWriteBehindQueue().enqueueRecord(record).join();
+        } catch (CompletionException e) {
+            plugin.getPluginLogger().severe("写入抢取记录失败，取消抢红包: 红包=" + redPocket.getId() +
+                " 玩家=" + grab.claimer);
+            if (grab.item != null) {
+                returnItemToSender(redPocket, grab);
+            }
+            releaseShare(grab);
+            grab.result = GrabResult.failure(GrabResult.Status.FAILED, redPocket);
+            return grab;
+        }
+        if (redPocket.getType() != RedPocket.RedPocketType.ITEM) {
+            grab.claims.commit(grab.claimer, amount);
+        }
+
+        if (grab.claim.isCompleted()) {
+            completeRedPocket(redPocket);
         }
 
-        return amountOpt;
+        return grab;
     }
 
     /**
-     * 抢物品红包
-     * @param redPocketId 红包ID
-     * @param player 抢红包的玩家
-     * @return 抢到的物品数量（固定1），如果失败返回 Optional.empty()
+     * 从红包的物品池中随机取出一件，并在写入抢取记录之前写回发送者的物品，
+     * 进程在确认前退出时物品最多少发一件，不会同时留在发送者的物品中又发给玩家
+     * @throws IllegalStateException 读取或写回发送者的物品失败，取出的物品已放回
      */
-    private Optional<Double> grabItemRedPocket(String redPocketId, org.bukkit.entity.Player player) {
-        RedPocket redPocket = getRedPocket(redPocketId);
-        if (redPocket == null || redPocket.getType() != RedPocket.RedPocketType.ITEM) {
-            return Optional.empty();
+    private ItemStack takeItemFromSender(RedPocket redPocket, PendingGrab grab) {
+        ItemPool pool = itemPools.get(redPocket);
+        if (pool == null) {
+            return null;
         }
 
-        // 检查是否已经抢过
-        if (hasClaimed(redPocketId, player.getUniqueId())) {
-            plugin.getMessageManager().sendError(player, "gui.redpocket.grab.already_grabbed");
-            return Optional.empty();
+        int slot = pool.take();
+        if (slot < 0) {
+            return null;
+        }
+        try {
+            itemPools.persist(pool);
+        } catch (IllegalStateException e) {
+            if (pool.giveBack(slot)) {
+                itemPools.changed(pool);
+            }
+            throw e;
         }
 
-        // 获取红包发送者的物品
-        UUID senderUUID = redPocket.getSender();
-        org.bukkit.inventory.ItemStack[] senderItems = plugin.getItemEditStorageManager().loadPlayerItems(senderUUID);
+        grab.pool = pool;
+        grab.itemSlot = slot;
+        return pool.unit(slot);
+    }
 
-        if (senderItems == null || senderItems.length == 0) {
-            plugin.getMessageManager().sendError(player, "gui.redpocket.grab.failed");
-            return Optional.empty();
+    /**
+     * 将未能发放的物品放回物品池；红包已结束、物品池已写回时直接放回发送者的物品中
+     */
+    private void returnItemToSender(RedPocket redPocket, PendingGrab grab) {
+        if (grab.pool != null && grab.pool.giveBack(grab.itemSlot)) {
+            itemPools.changed(grab.pool);
+            return;
         }
 
-        // 随机选择一个有物品的槽位
-        java.util.Random random = new java.util.Random();
-        org.bukkit.inventory.ItemStack selectedItem = null;
-        int selectedSlot = -1;
-        int attempts = 0;
-        int maxAttempts = 100;
+        ItemStack item = grab.item;
+        synchronized (grab.claims) {
+            UUID senderUUID = redPocket.getSender();
+            ItemStack[] senderItems;
+            String associatedId;
+            long associatedExpiresAt;
+            try {
+                senderItems = plugin.getItemEditStorageManager().loadPlayerItems(senderUUID);
+                associatedId = plugin.getItemEditStorageManager().getRedPocketId(senderUUID);
+                associatedExpiresAt = plugin.getItemEditStorageManager().getRedPocketExpiresAt(senderUUID);
+            } catch (IllegalStateException e) {
+                // 读取失败时不能当作空物品写回，否则会覆盖发送者的物品
+                plugin.getPluginLogger().severe("退回物品失败，无法读取发送者物品: " + senderUUID + " 物品: " + item);
+                return;
+            }
+            if (senderItems == null) {
+                senderItems = new ItemStack[54];
+            }
 
-        while (selectedItem == null && attempts < maxAttempts) {
-            int slot = random.nextInt(senderItems.length);
-            org.bukkit.inventory.ItemStack item = senderItems[slot];
-            if (item != null && item.getAmount() > 0) {
-                selectedItem = item;
-                selectedSlot = slot;
+            for (int i = 0; i < senderItems.length; i++) {
+                if (senderItems[i] == null) {
+                    senderItems[i] = item;
+                    plugin.getItemEditStorageManager().savePlayerItems(senderUUID, senderItems,
+                        associatedId, associatedExpiresAt);
+                    return;
+                }
             }
-            attempts++;
-        }
 
-        if (selectedItem == null) {
-            plugin.getMessageManager().sendError(player, "gui.redpocket.grab.empty");
-            return Optional.empty();
+            plugin.getPluginLogger().severe("退回物品失败，发送者物品已满: " + senderUUID);
         }
+    }
 
-        // 创建物品副本给玩家
-        org.bukkit.inventory.ItemStack itemToGive = selectedItem.clone();
-        itemToGive.setAmount(1);
+    /**
+     * 红包被抢完后的收尾（数据库线程）
+     */
+    private void completeRedPocket(RedPocket redPocket) {
+        if (redPocket.getType() == RedPocket.RedPocketType.ITEM) {
+            // 移除预览数据
+            plugin.getPreviewManager().removePreview(redPocket.getId());
 
-        // 检查玩家背包是否有空间
-        if (player.getInventory().firstEmpty() == -1) {
-            plugin.getMessageManager().sendError(player, "gui.redpocket.grab.inventory_full");
-            return Optional.empty();
+            // 写回剩余物品后清除红包关联，解除物品锁定
+            itemPools.close(redPocket.getId());
+            plugin.getItemEditStorageManager().clearRedPocketAssociation(redPocket.getSender());
         }
 
-        // 减少发送者物品数量或移除
-        if (selectedItem.getAmount() > 1) {
-            selectedItem.setAmount(selectedItem.getAmount() - 1);
-        } else {
-            senderItems[selectedSlot] = null;
+        // 标记为已抢完（物品红包也标记，便于缓存回收）
+        redPocket.setClaimed(true);
+        String id = redPocket.getId();
+        expiryManager.untrack(id);
+        plugin.getDatabaseManager().getWriteBehindQueue().enqueueClaimed(id);
+
+        // 金币红包等所有份额写入、记录提交到数据库后释放账本；
+        // 因容量被淘汰的红包不会再触发缓存回收，不在这里释放会一直保留
+        ClaimLedger.PocketClaims claims = claimLedger.get(id);
+        CompletableFuture<?> committed = claims != null && redPocket.getType() != RedPocket.RedPocketType.ITEM
+            ? claims.whenAllCommitted() : CompletableFuture.completedFuture(null);
+        committed.thenCompose(ignored -> plugin.getDatabaseManager().getWriteBehindQueue().flushAsync())
+            .thenRun(() -> removeClaims(id));
+    }
+
+    /**
+     * 红包过期时关闭领取账本，返回未被取出的金额；本服没有该红包的账本时返回 -1
+     */
+    long closeClaims(String redPocketId) {
+        ClaimLedger.PocketClaims claims = claimLedger.get(redPocketId);
+        return claims != null ? claims.close() : -1;
+    }
+
+    /**
+     * 红包抢完或过期处理完成后释放领取账本
+     */
+    void removeClaims(String redPocketId) {
+        claimLedger.remove(redPocketId);
+        if (clusterClaimStore != null) {
+            clusterClaimStore.remove(redPocketId);
         }
+    }
 
-        // 保存更新后的物品
-        plugin.getItemEditStorageManager().savePlayerItems(senderUUID, senderItems,
-            redPocketId, redPocket.getExpiresAt());
+    /**
+     * 写回并释放物品红包的物品池（数据库线程）
+     */
+    void closeItemPool(String redPocketId) {
+        itemPools.close(redPocketId);
+    }
+
+    /**
+     * 插件关闭时写回所有物品池
+     */
+    public void shutdown() {
+        itemPools.closeAll();
+        grabBroadcasts.flushAll();
+    }
 
-        // 给玩家物品
-        player.getInventory().addItem(itemToGive);
+    /**
+     * 红包被缓存回收时调用
+     * 已抢完的红包在抢取记录写入数据库后释放领取账本，之后再访问会从数据库得到最终状态；
+     * 已过期的红包由过期管理器退款后释放账本，退款金额要以账本为准；
+     * 仅因容量被淘汰的红包保留账本，避免重新加载时漏掉尚未写入的记录，账本在红包抢完或过期处理后释放
+     */
+    private void onRedPocketEvicted(RedPocket redPocket, RedPocketCache.EvictionCause cause) {
+        plugin.getPluginLogger().debug("红包移出缓存: " + redPocket.getId() + " 原因: " + cause);
+        if (cause != RedPocketCache.EvictionCause.COMPLETED) {
+            return;
+        }
 
-        // 获取物品名称（用于显示）
-        String itemName = itemToGive.getItemMeta() != null && itemToGive.getItemMeta().hasDisplayName() ?
-            itemToGive.getItemMeta().getDisplayName() : itemToGive.getType().name();
-        int itemAmount = itemToGive.getAmount();
+        String id = redPocket.getId();
+        plugin.getDatabaseManager().getWriteBehindQueue().flushAsync().thenRun(() -> {
+            claimLedger.remove(id);
+            if (clusterClaimStore != null) {
+                clusterClaimStore.remove(id);
+            }
+        });
+    }
 
-        // 保存抢取记录（amount字段用于记录物品数量，这里存1）
-        RedPocketRecord record = new RedPocketRecord(
-            UUID.randomUUID().toString(),
-            redPocketId,
-            player.getUniqueId(),
-            1.0,
-            System.currentTimeMillis()
-        );
-        saveRecordToDatabase(record);
+    /**
+     * 获取红包缓存统计信息
+     */
+    public RedPocketCache.Stats getCacheStats() {
+        return redPocketCache.getStats();
+    }
 
-        plugin.getPluginLogger().info("玩家 " + player.getName() + " 抢到了物品红包中的物品");
+    /**
+     * 第三段：在玩家实体线程发放金额或物品
+     */
+    private GrabResult deliverGrab(PendingGrab grab, Player player) {
+        RedPocket redPocket = grab.redPocket;
+        boolean completed = grab.claim.isCompleted();
+
+        if (grab.item != null) {
+            if (!player.isOnline()) {
+                // 发放前玩家已离线，物品退回发送者
+                plugin.getPluginLogger().warning("玩家 " + player.getName() + " 已离线，物品退回红包发送者");
+                plugin.getDatabaseManager().getExecutor().executeOrRetry(() -> returnItemToSender(redPocket, grab));
+                return GrabResult.failure(GrabResult.Status.FAILED, redPocket);
+            }
 
-        // 发送抢取成功的消息
-        java.util.Map<String, String> placeholders = new java.util.HashMap<>();
-        placeholders.put("item", itemName);
-        placeholders.put("amount", String.valueOf(itemAmount));
-        plugin.getMessageManager().sendSuccess(player, "gui.redpocket.grab.success_item", placeholders);
+            // 背包在预占后被塞满时，放不下的部分掉落在玩家脚下
+            Map<Integer, ItemStack> leftover = player.getInventory().addItem(grab.item);
+            leftover.values().forEach(item -> player.getWorld().dropItemNaturally(player.getLocation(), item));
 
-        // 广播抢红包结果
-        broadcastItemRedPocketGrab(redPocket, player, itemName, itemAmount);
+            ItemMeta meta = grab.item.getItemMeta();
+            String itemName = meta != null && meta.hasDisplayName() ? meta.getDisplayName() : grab.item.getType().name();
 
-        // 检查红包是否被抢完
-        int claimedCount = getClaimedCount(redPocketId);
-        if (claimedCount >= redPocket.getCount()) {
-            // 移除预览数据
-            plugin.getPreviewManager().removePreview(redPocketId);
+            plugin.getPluginLogger().info("玩家 " + player.getName() + " 抢到了物品红包中的物品");
+            return GrabResult.item(redPocket, ITEM_RECORD_AMOUNT, itemName, grab.item.getAmount(), completed);
+        }
 
-            // 清除红包关联，解除物品锁定
-            plugin.getItemEditStorageManager().clearRedPocketAssociation(redPocket.getSender());
+        long amount = grab.claim.getAmount();
+        if (!plugin.getEconomyManager().deposit(player, amount)) {
+            // 记录已经保存，份额属于该玩家：记入待发放，玩家下次进入时补发
+            plugin.getPluginLogger().severe("发放红包金额失败，记入待发放: 玩家=" + player.getName() +
+                " 金额=" + Money.format(amount));
+            plugin.getPendingPayoutManager().add(player.getUniqueId(), redPocket.getId(), amount);
+            return GrabResult.payoutPending(redPocket, amount, completed);
         }
 
-        return Optional.of(1.0);
+        plugin.getPluginLogger().info("玩家 " + player.getName() + " 抢到红包: " + Money.format(amount));
+        return GrabResult.coin(redPocket, amount, completed);
     }
 
     /**
-     * 计算红包金额
+     * 第四段：广播抢红包结果
+     * 物品红包通过全局调度器逐条广播，金币红包按窗口合并后广播，红包抢完时立即输出当前窗口
      */
-    private double calculateAmount(RedPocket redPocket) {
-        if (redPocket.getType() == RedPocket.RedPocketType.AVERAGE) {
-            // 平分红包
-            return redPocket.getTotalAmount() / redPocket.getCount();
+    private void broadcastGrab(GrabResult result, Player player) {
+        RedPocket redPocket = result.getRedPocket();
+        String playerName = player.getName();
+        UUID playerId = player.getUniqueId();
+
+        if (result.isItem()) {
+            plugin.getScheduler().runSync(() ->
+                broadcastItemRedPocketGrab(redPocket, playerId, playerName, result.getItemName(), result.getItemAmount()));
         } else {
-            // 随机红包 - 使用加权随机算法
-            return calculateRandomAmount(redPocket);
+            grabBroadcasts.add(redPocket, playerId, playerName, result.getAmount(), result.isCompleted());
+        }
+
+        if (!result.isCompleted() || result.isItem()) {
+            return;
+        }
+
+        // 金币红包抢完后广播气运最佳：本服账本在所有份额写入后直接给出结果
+        ClaimLedger.PocketClaims claims = claimLedger.get(redPocket.getId());
+        if (claims != null && clusterClaimStore == null) {
+            claims.whenAllCommitted().thenAccept(bestLucky -> {
+                if (bestLucky != null) {
+                    plugin.getScheduler().runSync(() -> broadcastRedPocketCompleted(redPocket, bestLucky));
+                }
+            });
+            return;
         }
+
+        // 多服模式下领取记录由各服写入，先提交积压的记录再在数据库线程查询
+        plugin.getDatabaseManager().getWriteBehindQueue().flushAsync().thenRunAsync(() -> {
+            Map.Entry<UUID, Long> bestLucky = getBestLuckyPlayer(redPocket.getId());
+            if (bestLucky != null) {
+                plugin.getScheduler().runSync(() -> broadcastRedPocketCompleted(redPocket, bestLucky));
+            }
+        }, databaseExecutor);
     }
 
     /**
-     * 计算随机红包金额
+     * 玩家实体调度器对应的执行器
+     * 玩家在任务执行前退出时仍执行任务（发放流程会按离线处理），保证抢红包流程总能完成
      */
-    private double calculateRandomAmount(RedPocket redPocket) {
-        double totalAmount = redPocket.getTotalAmount();
-        int count = redPocket.getCount();
+    private Executor entityExecutor(Player player) {
+        return task -> plugin.getScheduler().runForEntity(player, task, task);
+    }
 
-        // 简单的随机算法
-        // 实际项目中可以使用更复杂的算法保证公平性
-        double minAmount = totalAmount / count * 0.1; // 最小10%
-        double maxAmount = totalAmount / count * 3.0;  // 最大300%
+    /**
+     * 进行中的一次抢红包
+     */
+    private static final class PendingGrab {
+
+        private final RedPocket redPocket;
+        private final UUID claimer;
+        private ClaimLedger.PocketClaims claims;
+        private ClaimLedger.ClaimResult claim;       // 多服模式下在数据库线程得到
+        private ItemStack item;
+        private ItemPool pool;       // 物品取自的物品池和槽位
+        private int itemSlot;
+        private GrabResult result;   // 不为 null 时表示流程已提前结束
+
+        private PendingGrab(RedPocket redPocket, UUID claimer,
+                            ClaimLedger.PocketClaims claims, ClaimLedger.ClaimResult claim) {
+            this.redPocket = redPocket;
+            this.claimer = claimer;
+            this.claims = claims;
+            this.claim = claim;
+        }
 
-        double amount;
-        if (count == 1) {
-            amount = totalAmount;
-        } else {
-            amount = minAmount + Math.random() * (maxAmount - minAmount);
-            amount = Math.min(amount, totalAmount);
+        private static PendingGrab rejected(GrabResult result) {
+            PendingGrab grab = new PendingGrab(result.getRedPocket(), null, null, null);
+            grab.result = result;
+            return grab;
+        }
+    }
+
+    /**
+     * 生成红包的每份金额（单位：分）
+     * 平分红包均分；随机红包使用配置的分配策略，每份限制在总额的 min-percent ~ max-percent 之间，
+     * 份数与上下限冲突时自动放宽，每份至少 1 分，总和恰好等于总金额
+     */
+    private long[] allocateShares(RedPocket.RedPocketType type, long totalCents, int count) {
+        long[] shares = new long[count];
+        SplittableRandom random = new SplittableRandom();
+
+        if (type == RedPocket.RedPocketType.AVERAGE) {
+            EqualSplitAllocation.INSTANCE.allocate(shares, totalCents, 1, totalCents, random);
+            return shares;
         }
 
-        return Math.round(amount * 100.0) / 100.0;
+        long minCents = Math.max(1, (long) Math.floor(totalCents * randomMinPercent));
+        long maxCents = Math.max(minCents, (long) Math.ceil(totalCents * randomMaxPercent));
+        minCents = Math.min(minCents, totalCents / count);
+        maxCents = Math.max(maxCents, (totalCents + count - 1) / count);
+
+        randomStrategy.allocate(shares, totalCents, minCents, maxCents, random);
+        return shares;
     }
 
     /**
      * 获取红包
      */
     public RedPocket getRedPocket(String id) {
-        // 先从缓存获取
-        RedPocket redPocket = redPocketCache.get(id);
+        // 缓存未命中时从数据库加载
+        return redPocketCache.get(id);
+    }
 
-        if (redPocket == null) {
-            // 从数据库加载
-            redPocket = loadRedPocketFromDatabase(id);
-            if (redPocket != null) {
-                redPocketCache.put(id, redPocket);
+    /**
+     * 获取红包的领取账本
+     * 首次访问时从抢取记录恢复一次，之后的判定都在内存中完成；
+     * 读取抢取记录失败时不建立账本并抛出异常，否则已领取的玩家可以再次领取
+     */
+    private ClaimLedger.PocketClaims getClaims(RedPocket redPocket) {
+        ClaimLedger.PocketClaims claims = claimLedger.get(redPocket.getId());
+        if (claims == null) {
+            try {
+                claims = claimLedger.putIfAbsent(redPocket.getId(), loadClaimsFromDatabase(redPocket));
+            } catch (SQLException e) {
+                plugin.getPluginLogger().severe("加载抢取记录失败: " + e.getMessage());
+                throw new IllegalStateException("无法恢复红包的领取账本: " + redPocket.getId(), e);
             }
         }
+        return claims;
+    }
 
-        return redPocket;
+    /**
+     * 获取红包的领取排行（按金额从高到低），直接取自本服的领取账本；
+     * 账本不在内存中或多服模式下返回空列表
+     */
+    public List<Map.Entry<UUID, Long>> getClaimLeaderboard(String redPocketId) {
+        ClaimLedger.PocketClaims claims = claimLedger.get(redPocketId);
+        if (claims == null || clusterClaimStore != null) {
+            return Collections.emptyList();
+        }
+        return claims.getLeaderboard();
     }
 
     /**
      * 从缓存获取红包
      */
     public Optional<RedPocket> getRedPocketFromCache(String id) {
-        return Optional.ofNullable(redPocketCache.get(id));
+        return Optional.ofNullable(redPocketCache.getIfPresent(id));
     }
 
     /**
@@ -419,7 +1013,7 @@ public class RedPocketManager {
 
         String sql = "SELECT * FROM redpocket_records WHERE redpocket_id = ? ORDER BY claimed_at DESC";
 
-        try (Connection conn = plugin.getDatabaseManager().getConnection();
+        try (Connection conn = plugin.getDatabaseManager().getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, redPocketId);
@@ -430,7 +1024,7 @@ public class RedPocketManager {
                 map.put("id", rs.getString("id"));
                 map.put("redPocketId", rs.getString("redpocket_id"));
                 map.put("claimer", rs.getString("claimer"));
-                map.put("amount", rs.getDouble("amount"));
+                map.put("amount", rs.getLong("amount_minor"));
                 map.put("claimedAt", rs.getLong("claimed_at"));
 
                 records.add(new RedPocketRecord(map));
@@ -445,35 +1039,62 @@ public class RedPocketManager {
     }
 
     /**
-     * 检查玩家是否已抢过红包
+     * 从抢取记录恢复红包的领取账本
      */
-    private boolean hasClaimed(String redPocketId, UUID claimer) {
-        String sql = "SELECT COUNT(*) FROM redpocket_records WHERE redpocket_id = ? AND claimer = ?";
+    private ClaimLedger.PocketClaims loadClaimsFromDatabase(RedPocket redPocket) throws SQLException {
+        String sql = "SELECT claimer, amount_minor FROM redpocket_records WHERE redpocket_id = ?";
 
-        try (Connection conn = plugin.getDatabaseManager().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        Map<UUID, Long> claimed = new HashMap<>();
 
-            stmt.setString(1, redPocketId);
-            stmt.setString(2, claimer.toString());
+        try (Connection conn = plugin.getDatabaseManager().getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
 
+            stmt.setString(1, redPocket.getId());
             ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1) > 0;
+
+            while (rs.next()) {
+                claimed.merge(UUID.fromString(rs.getString("claimer")), rs.getLong("amount_minor"), Long::sum);
             }
+        }
 
-        } catch (SQLException e) {
-            plugin.getPluginLogger().severe("检查抢取记录失败: " + e.getMessage());
+        return buildClaims(redPocket, claimed);
+    }
+
+    /**
+     * 由每个玩家已领取的金额恢复领取账本
+     */
+    private ClaimLedger.PocketClaims buildClaims(RedPocket redPocket, Map<UUID, Long> claimed) {
+        Set<UUID> claimers = ConcurrentHashMap.newKeySet();
+        claimers.addAll(claimed.keySet());
+        long claimedAmount = 0;
+        for (long amount : claimed.values()) {
+            claimedAmount += amount;
+        }
+
+        // 按剩余数量和剩余金额重新生成尚未领取的份额
+        int remainingCount = Math.max(0, redPocket.getCount() - claimers.size());
+        long[] shares;
+        if (redPocket.getType() == RedPocket.RedPocketType.ITEM || remainingCount == 0) {
+            shares = new long[remainingCount];
+        } else {
+            long remainingAmount = Math.max(remainingCount, redPocket.getTotalAmount() - claimedAmount);
+            shares = allocateShares(redPocket.getType(), remainingAmount, remainingCount);
         }
 
-        return false;
+        ClaimLedger.PocketClaims claims = new ClaimLedger.PocketClaims(shares, claimers);
+        claimed.forEach(claims::restore);
+        return claims;
     }
 
     /**
-     * 保存红包到数据库
+     * 保存红包到数据库（数据库线程）
+     * @param shares 每份金额，物品红包为 null
+     * @throws IllegalStateException 写入失败
      */
-    private void saveRedPocketToDatabase(RedPocket redPocket) {
-        String sql = "INSERT INTO redpockets (id, sender, type, total_amount, count, note, created_at, expires_at, is_claimed) " +
-                     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private void saveRedPocketToDatabase(RedPocket redPocket, long[] shares) {
+        String sql = "INSERT INTO redpockets (id, sender, type, total_amount, total_amount_minor, count, note, created_at, " +
+                     "expires_at, is_claimed, remaining_count, remaining_amount, shares) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
         try (Connection conn = plugin.getDatabaseManager().getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -481,84 +1102,102 @@ public class RedPocketManager {
             stmt.setString(1, redPocket.getId());
             stmt.setString(2, redPocket.getSender().toString());
             stmt.setString(3, redPocket.getType().name());
-            stmt.setDouble(4, redPocket.getTotalAmount());
-            stmt.setInt(5, redPocket.getCount());
-            stmt.setString(6, redPocket.getNote());
-            stmt.setLong(7, redPocket.getCreatedAt());
-            stmt.setLong(8, redPocket.getExpiresAt());
-            stmt.setBoolean(9, redPocket.isClaimed());
+            stmt.setDouble(4, Money.toMajor(redPocket.getTotalAmount()));
+            stmt.setLong(5, redPocket.getTotalAmount());
+            stmt.setInt(6, redPocket.getCount());
+            stmt.setString(7, redPocket.getNote());
+            stmt.setLong(8, redPocket.getCreatedAt());
+            stmt.setLong(9, redPocket.getExpiresAt());
+            stmt.setBoolean(10, redPocket.isClaimed());
+            stmt.setInt(11, redPocket.getCount());
+            stmt.setLong(12, redPocket.getTotalAmount());
+            stmt.setString(13, shares != null ? ClusterClaimStore.encodeShares(shares) : null);
 
             stmt.executeUpdate();
 
         } catch (SQLException e) {
             plugin.getPluginLogger().severe("保存红包到数据库失败: " + e.getMessage());
             e.printStackTrace();
+            throw new IllegalStateException("保存红包失败: " + redPocket.getId(), e);
         }
     }
 
     /**
-     * 保存红包记录到数据库
+     * 缓存未命中时的加载函数，先经过ID过滤器，数据库中查不到的ID记入过滤器
+     * 读取失败时抛出 IllegalStateException，不记入过滤器，避免短暂的数据库错误把存在的红包挡住
      */
-    private void saveRecordToDatabase(RedPocketRecord record) {
-        String sql = "INSERT INTO redpocket_records (id, redpocket_id, claimer, amount, claimed_at) " +
-                     "VALUES (?, ?, ?, ?, ?)";
-
-        try (Connection conn = plugin.getDatabaseManager().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, record.getId());
-            stmt.setString(2, record.getRedPocketId());
-            stmt.setString(3, record.getClaimer().toString());
-            stmt.setDouble(4, record.getAmount());
-            stmt.setLong(5, record.getClaimedAt());
-
-            stmt.executeUpdate();
+    private RedPocket loadKnownRedPocket(String id) {
+        if (!idFilter.mightExist(id)) {
+            return null;
+        }
 
+        RedPocket redPocket;
+        try {
+            redPocket = loadRedPocketFromDatabase(id);
         } catch (SQLException e) {
-            plugin.getPluginLogger().severe("保存红包记录失败: " + e.getMessage());
+            plugin.getPluginLogger().severe("加载红包失败: " + e.getMessage());
             e.printStackTrace();
+            throw new IllegalStateException("加载红包失败: " + id, e);
+        }
+
+        if (redPocket == null) {
+            idFilter.recordMiss(id);
         }
+        return redPocket;
     }
 
     /**
-     * 从数据库加载红包
+     * 获取被ID过滤器拒绝的查询次数
      */
-    private RedPocket loadRedPocketFromDatabase(String id) {
+    public long getRejectedLookupCount() {
+        return idFilter.getRejectedCount();
+    }
+
+    /**
+     * 从数据库加载红包，不存在返回 null
+     */
+    private RedPocket loadRedPocketFromDatabase(String id) throws SQLException {
         String sql = "SELECT * FROM redpockets WHERE id = ?";
 
-        try (Connection conn = plugin.getDatabaseManager().getConnection();
+        try (Connection conn = plugin.getDatabaseManager().getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, id);
             ResultSet rs = stmt.executeQuery();
 
             if (rs.next()) {
-                Map<String, Object> map = new HashMap<>();
-                map.put("id", rs.getString("id"));
-                map.put("sender", rs.getString("sender"));
-                map.put("type", rs.getString("type"));
-                map.put("totalAmount", rs.getDouble("total_amount"));
-                map.put("count", rs.getInt("count"));
-                map.put("note", rs.getString("note"));
-                map.put("createdAt", rs.getLong("created_at"));
-                map.put("expiresAt", rs.getLong("expires_at"));
-                map.put("isClaimed", rs.getBoolean("is_claimed"));
-
-                return new RedPocket(map);
+                return readRedPocket(rs);
             }
-
-        } catch (SQLException e) {
-            plugin.getPluginLogger().severe("加载红包失败: " + e.getMessage());
-            e.printStackTrace();
         }
 
         return null;
     }
 
+    private RedPocket readRedPocket(ResultSet rs) throws SQLException {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", rs.getString("id"));
+        map.put("sender", rs.getString("sender"));
+        map.put("type", rs.getString("type"));
+        map.put("totalAmount", rs.getLong("total_amount_minor"));
+        map.put("count", rs.getInt("count"));
+        map.put("note", rs.getString("note"));
+        map.put("createdAt", rs.getLong("created_at"));
+        map.put("expiresAt", rs.getLong("expires_at"));
+        map.put("isClaimed", rs.getBoolean("is_claimed"));
+
+        return new RedPocket(map);
+    }
+
     /**
-     * 删除红包
+     * 删除红包，在数据库线程执行
+     * @return 是否删除成功
      */
-    public void deleteRedPocket(String id) {
+    public CompletableFuture<Boolean> deleteRedPocket(String id) {
+        return supplyOnDatabase(() -> deleteRedPocketFromDatabase(id))
+            .exceptionally(error -> false);
+    }
+
+    private boolean deleteRedPocketFromDatabase(String id) {
         String sql = "DELETE FROM redpockets WHERE id = ?";
 
         try (Connection conn = plugin.getDatabaseManager().getConnection();
@@ -567,37 +1206,63 @@ public class RedPocketManager {
             stmt.setString(1, id);
             stmt.executeUpdate();
 
-            redPocketCache.remove(id);
+            redPocketCache.invalidate(id);
+            idFilter.recordMiss(id);
+            expiryManager.untrack(id);
+            itemPools.close(id);
+            claimLedger.remove(id);
+            if (clusterClaimStore != null) {
+                clusterClaimStore.remove(id);
+            }
             plugin.getPluginLogger().info("删除红包: " + id);
+            return true;
 
         } catch (SQLException e) {
             plugin.getPluginLogger().severe("删除红包失败: " + e.getMessage());
             e.printStackTrace();
+            return false;
         }
     }
 
     /**
      * 向所有玩家广播红包发送消息
+     * 消息语言由服务器统一配置，与接收者无关，因此每个红包只构建一次组件，所有在线玩家共享同一份
      */
     public void broadcastRedPocket(RedPocket redPocket) {
-        org.bukkit.Bukkit.getOnlinePlayers().forEach(player -> {
-            if (redPocket.getType() == RedPocket.RedPocketType.ITEM) {
-                // 物品红包广播
-                broadcastItemRedPocket(player, redPocket);
-            } else {
-                // 金币红包广播
-                broadcastCoinRedPocket(player, redPocket);
-            }
-        });
+        String senderName = resolveSenderName(redPocket);
+        TextComponent message;
+        if (redPocket.getType() == RedPocket.RedPocketType.ITEM) {
+            // 物品红包广播
+            message = buildItemRedPocketBroadcast(redPocket, senderName);
+        } else {
+            // 金币红包广播
+            message = buildCoinRedPocketBroadcast(redPocket, senderName);
+        }
+        // 以发送者位置为广播来源
+        broadcast(message, redPocket.getSender());
     }
 
     /**
-     * 广播金币红包
+     * 按广播范围发送
+     * 组件构建完成后不再修改，所有接收者共享同一个数组
      */
-    private void broadcastCoinRedPocket(org.bukkit.entity.Player player, RedPocket redPocket) {
+    private void broadcast(TextComponent message, UUID... origins) {
+        plugin.getBroadcastRouter().broadcast(new BaseComponent[]{message}, origins);
+    }
+
+    /**
+     * 获取红包发送者名称
+     */
+    private String resolveSenderName(RedPocket redPocket) {
         String senderName = plugin.getServer().getOfflinePlayer(redPocket.getSender()).getName();
         if (senderName == null) senderName = plugin.getMessageManager().getMessage("gui.redpocket.broadcast.unknown_player");
+        return senderName;
+    }
 
+    /**
+     * 构建金币红包广播消息
+     */
+    private TextComponent buildCoinRedPocketBroadcast(RedPocket redPocket, String senderName) {
         // 获取类型名称
         String typeName;
         switch (redPocket.getType()) {
@@ -618,7 +1283,7 @@ public class RedPocketManager {
         message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.send_coin_middle1")));
         message.addExtra(new TextComponent(String.valueOf(redPocket.getCount())));
         message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.send_coin_middle2")));
-        message.addExtra(new TextComponent(String.valueOf(redPocket.getTotalAmount())));
+        message.addExtra(new TextComponent(Money.format(redPocket.getTotalAmount())));
         message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.send_coin_middle3")));
         message.addExtra(new TextComponent(typeName));
         message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.send_coin_suffix")));
@@ -626,42 +1291,71 @@ public class RedPocketManager {
         // 添加可点击的抢红包文本
         message.addExtra(plugin.getChatClickListener().createClickableGrabText(redPocket.getId()));
 
-        player.spigot().sendMessage(message);
+        return message;
     }
 
     /**
      * 广播金币红包抢取结果
      */
-    private void broadcastCoinRedPocketGrab(RedPocket redPocket, org.bukkit.entity.Player player, double amount) {
-        String senderName = plugin.getServer().getOfflinePlayer(redPocket.getSender()).getName();
-        if (senderName == null) senderName = plugin.getMessageManager().getMessage("gui.redpocket.broadcast.unknown_player");
+    private void broadcastCoinRedPocketGrab(RedPocket redPocket, UUID playerId, String playerName, long amount) {
+        String senderName = resolveSenderName(redPocket);
 
         // 构建消息：玩家 {player} 在 {sender} 的红包中抢到了 {amount} 元
         TextComponent message = new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.coin_prefix"));
         message.setColor(net.md_5.bungee.api.ChatColor.YELLOW);
-        message.addExtra(new TextComponent(player.getName()));
+        message.addExtra(new TextComponent(playerName));
         message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.coin_middle")));
         message.addExtra(new TextComponent(senderName));
         message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.coin_middle2")));
-        message.addExtra(new TextComponent(String.valueOf(amount)));
+        message.addExtra(new TextComponent(Money.format(amount)));
         message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.coin_middle3")));
         message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.coin_suffix")));
 
-        // 发送给所有在线玩家
-        org.bukkit.Bukkit.getOnlinePlayers().forEach(p -> p.spigot().sendMessage(message));
+        // 以抢红包的玩家位置为广播来源，玩家已离线时使用发送者位置
+        broadcast(message, playerId, redPocket.getSender());
+    }
+
+    /**
+     * 广播一个合并窗口内的金币红包抢取结果
+     * 窗口内只有一次抢取时沿用单条消息，否则合并为一条，最多列出前两名玩家
+     */
+    private void broadcastCoinRedPocketGrabs(GrabBroadcastCoalescer.Window window) {
+        RedPocket redPocket = window.getRedPocket();
+        List<String> names = window.getPlayerNames();
+        if (window.getCount() == 1) {
+            broadcastCoinRedPocketGrab(redPocket, window.getLastPlayer(), names.get(0), window.getTotalAmount());
+            return;
+        }
+
+        int shown = Math.min(2, names.size());
+        String separator = plugin.getMessageManager().getMessage("gui.redpocket.broadcast.name_separator");
+        Map<String, String> placeholders = new HashMap<>();
+        placeholders.put("players", String.join(separator, names.subList(0, shown)));
+        placeholders.put("count", String.valueOf(names.size()));
+        placeholders.put("others", String.valueOf(names.size() - shown));
+        placeholders.put("sender", resolveSenderName(redPocket));
+        placeholders.put("amount", Money.format(window.getTotalAmount()));
+
+        String key = names.size() > shown
+            ? "gui.redpocket.broadcast.coin_aggregate_others"
+            : "gui.redpocket.broadcast.coin_aggregate";
+        TextComponent message = new TextComponent(plugin.getMessageManager().getMessage(key, placeholders));
+        message.setColor(net.md_5.bungee.api.ChatColor.YELLOW);
+
+        // 以最后抢到的玩家位置为广播来源，玩家已离线时使用发送者位置
+        broadcast(message, window.getLastPlayer(), redPocket.getSender());
     }
 
     /**
      * 广播物品红包抢取结果
      */
-    private void broadcastItemRedPocketGrab(RedPocket redPocket, org.bukkit.entity.Player player, String itemName, int itemAmount) {
-        String senderName = plugin.getServer().getOfflinePlayer(redPocket.getSender()).getName();
-        if (senderName == null) senderName = plugin.getMessageManager().getMessage("gui.redpocket.broadcast.unknown_player");
+    private void broadcastItemRedPocketGrab(RedPocket redPocket, UUID playerId, String playerName, String itemName, int itemAmount) {
+        String senderName = resolveSenderName(redPocket);
 
         // 构建消息：玩家 {player} 领取了 {sender} 的物品红包 {itemName}×{itemAmount}
         TextComponent message = new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.item_prefix"));
         message.setColor(net.md_5.bungee.api.ChatColor.YELLOW);
-        message.addExtra(new TextComponent(player.getName()));
+        message.addExtra(new TextComponent(playerName));
         message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.item_middle")));
         message.addExtra(new TextComponent(senderName));
         message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.item_middle2")));
@@ -670,97 +1364,43 @@ public class RedPocketManager {
         message.addExtra(new TextComponent(String.valueOf(itemAmount)));
         message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.item_suffix")));
 
-        // 发送给所有在线玩家
-        org.bukkit.Bukkit.getOnlinePlayers().forEach(p -> p.spigot().sendMessage(message));
-    }
-
-    /**
-     * 检查红包是否被抢完
-     */
-    private boolean isRedPocketCompleted(RedPocket redPocket) {
-        int claimedCount = getClaimedCount(redPocket.getId());
-        return claimedCount >= redPocket.getCount();
-    }
-
-    /**
-     * 获取红包已抢取数量
-     */
-    private int getClaimedCount(String redPocketId) {
-        String sql = "SELECT COUNT(*) FROM redpocket_records WHERE redpocket_id = ?";
-
-        try (Connection conn = plugin.getDatabaseManager().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, redPocketId);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1);
-            }
-
-        } catch (SQLException e) {
-            plugin.getPluginLogger().severe("获取红包抢取数量失败: " + e.getMessage());
-        }
-
-        return 0;
-    }
-
-    /**
-     * 更新红包的抢取状态
-     */
-    private void updateRedPocketClaimedStatus(String redPocketId, boolean claimed) {
-        String sql = "UPDATE redpockets SET is_claimed = ? WHERE id = ?";
-
-        try (Connection conn = plugin.getDatabaseManager().getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setBoolean(1, claimed);
-            stmt.setString(2, redPocketId);
-            stmt.executeUpdate();
-
-        } catch (SQLException e) {
-            plugin.getPluginLogger().severe("更新红包状态失败: " + e.getMessage());
-        }
+        // 以抢红包的玩家位置为广播来源，玩家已离线时使用发送者位置
+        broadcast(message, playerId, redPocket.getSender());
     }
 
     /**
      * 广播红包抢完信息（显示气运最佳）
      */
-    private void broadcastRedPocketCompleted(RedPocket redPocket) {
-        String senderName = plugin.getServer().getOfflinePlayer(redPocket.getSender()).getName();
-        if (senderName == null) senderName = plugin.getMessageManager().getMessage("gui.redpocket.broadcast.unknown_player");
+    private void broadcastRedPocketCompleted(RedPocket redPocket, Map.Entry<UUID, Long> bestLucky) {
+        String senderName = resolveSenderName(redPocket);
 
-        // 获取抢到最多的玩家（气运最佳）
-        Map.Entry<UUID, Double> bestLucky = getBestLuckyPlayer(redPocket.getId());
+        String bestPlayerName = plugin.getServer().getOfflinePlayer(bestLucky.getKey()).getName();
+        if (bestPlayerName == null) bestPlayerName = plugin.getMessageManager().getMessage("gui.redpocket.broadcast.unknown_player");
 
-        if (bestLucky != null) {
-            String bestPlayerName = plugin.getServer().getOfflinePlayer(bestLucky.getKey()).getName();
-            if (bestPlayerName == null) bestPlayerName = plugin.getMessageManager().getMessage("gui.redpocket.broadcast.unknown_player");
-
-            // 构建消息：玩家 {bestPlayer} 在 {sender} 的红包中抢到了 {amount} 元，气运爆棚！
-            TextComponent message = new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.completed_prefix"));
-            message.setColor(net.md_5.bungee.api.ChatColor.GOLD);
-            message.addExtra(new TextComponent(bestPlayerName));
-            message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.completed_middle")));
-            message.addExtra(new TextComponent(senderName));
-            message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.completed_middle2")));
-            message.addExtra(new TextComponent(String.valueOf(bestLucky.getValue())));
-            message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.completed_middle3")));
-            message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.completed_suffix")));
-            message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.completed_end")));
-
-            // 发送给所有在线玩家
-            org.bukkit.Bukkit.getOnlinePlayers().forEach(p -> p.spigot().sendMessage(message));
-        }
+        // 构建消息：玩家 {bestPlayer} 在 {sender} 的红包中抢到了 {amount} 元，气运爆棚！
+        TextComponent message = new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.completed_prefix"));
+        message.setColor(net.md_5.bungee.api.ChatColor.GOLD);
+        message.addExtra(new TextComponent(bestPlayerName));
+        message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.completed_middle")));
+        message.addExtra(new TextComponent(senderName));
+        message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.completed_middle2")));
+        message.addExtra(new TextComponent(Money.format(bestLucky.getValue())));
+        message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.completed_middle3")));
+        message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.completed_suffix")));
+        message.addExtra(new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.completed_end")));
+
+        // 以发送者位置为广播来源，发送者已离线时使用气运最佳玩家位置
+        broadcast(message, redPocket.getSender(), bestLucky.getKey());
     }
 
     /**
      * 获取抢到最多的玩家（气运最佳）
      */
-    private Map.Entry<UUID, Double> getBestLuckyPlayer(String redPocketId) {
-        String sql = "SELECT claimer, SUM(amount) as total_amount FROM redpocket_records " +
+    private Map.Entry<UUID, Long> getBestLuckyPlayer(String redPocketId) {
+        String sql = "SELECT claimer, SUM(amount_minor) as total_amount FROM redpocket_records " +
                      "WHERE redpocket_id = ? GROUP BY claimer ORDER BY total_amount DESC LIMIT 1";
 
-        try (Connection conn = plugin.getDatabaseManager().getConnection();
+        try (Connection conn = plugin.getDatabaseManager().getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, redPocketId);
@@ -768,7 +1408,7 @@ public class RedPocketManager {
 
             if (rs.next()) {
                 UUID claimer = UUID.fromString(rs.getString("claimer"));
-                double totalAmount = rs.getDouble("total_amount");
+                long totalAmount = rs.getLong("total_amount");
                 return Map.entry(claimer, totalAmount);
             }
 
@@ -780,12 +1420,9 @@ public class RedPocketManager {
     }
 
     /**
-     * 广播物品红包
+     * 构建物品红包广播消息
      */
-    private void broadcastItemRedPocket(org.bukkit.entity.Player player, RedPocket redPocket) {
-        String senderName = plugin.getServer().getOfflinePlayer(redPocket.getSender()).getName();
-        if (senderName == null) senderName = plugin.getMessageManager().getMessage("gui.redpocket.broadcast.unknown_player");
-
+    private TextComponent buildItemRedPocketBroadcast(RedPocket redPocket, String senderName) {
         // 构建消息前缀
         TextComponent message = new TextComponent(plugin.getMessageManager().getMessage("gui.redpocket.broadcast.send_item_prefix"));
         message.setColor(net.md_5.bungee.api.ChatColor.YELLOW);
@@ -818,6 +1455,6 @@ public class RedPocketManager {
         // 添加可点击的抢红包文本
         message.addExtra(plugin.getChatClickListener().createClickableGrabText(redPocket.getId()));
 
-        player.spigot().sendMessage(message);
+        return message;
     }
 }
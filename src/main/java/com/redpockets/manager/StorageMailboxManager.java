@@ -0,0 +1,245 @@
+package com.redpockets.manager;
+
+import com.redpockets.RedPocketsPlugin;
+import com.redpockets.database.DatabaseManager;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 储物间持久化管理器
+ * 每个玩家的储物间保存在 storage_mailbox 表中，首次使用时加载，
+ * 修改后异步写回，玩家退出时写回并释放
+ */
+public class StorageMailboxManager {
+
+    private final RedPocketsPlugin plugin;
+    private final DatabaseManager databaseManager;
+    private final Map<UUID, Mailbox> mailboxes;
+
+    public StorageMailboxManager(RedPocketsPlugin plugin) {
+        this.plugin = plugin;
+        this.databaseManager = plugin.getDatabaseManager();
+        this.mailboxes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 获取玩家的储物间，未加载时从数据库加载（会访问数据库，不要在主线程调用）
+     * @throws IllegalStateException 读取失败，此时不缓存储物间，下次调用重新读取
+     */
+    public Mailbox get(UUID playerUUID) {
+        return mailboxes.computeIfAbsent(playerUUID, uuid -> {
+            try {
+                return new Mailbox(uuid, readRow(uuid));
+            } catch (SQLException | IOException e) {
+                plugin.getPluginLogger().severe("加载储物间失败！UUID: " + uuid);
+                e.printStackTrace();
+                throw new IllegalStateException("无法加载储物间: " + uuid, e);
+            }
+        });
+    }
+
+    /**
+     * 获取已加载的储物间，未加载时返回 null
+     */
+    public Mailbox getIfLoaded(UUID playerUUID) {
+        return mailboxes.get(playerUUID);
+    }
+
+    /**
+     * 向玩家的储物间添加物品，玩家不在线时也会保存（异步执行）
+     * @return 加入储物间后完成，储物间加载失败时异常完成，物品没有加入
+     */
+    public CompletableFuture<Void> add(UUID playerUUID, List<ItemStack> items) {
+        List<ItemStack> copy = new ArrayList<>(items.size());
+        for (ItemStack item : items) {
+            if (item != null && item.getAmount() > 0) {
+                copy.add(item.clone());
+            }
+        }
+        if (copy.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return CompletableFuture.runAsync(() -> {
+            Mailbox mailbox = get(playerUUID);
+            synchronized (mailbox) {
+                mailbox.items.addAll(copy);
+                mailbox.dirty = true;
+            }
+            flush(mailbox);
+        }, databaseManager.getExecutor());
+    }
+
+    /**
+     * 储物间内容发生变化后调用，异步写回
+     */
+    public void changed(Mailbox mailbox) {
+        synchronized (mailbox) {
+            mailbox.dirty = true;
+        }
+        databaseManager.getExecutor().executeOrRetry(() -> flush(mailbox));
+    }
+
+    /**
+     * 写回并释放玩家的储物间（玩家退出时调用）
+     */
+    public void close(UUID playerUUID) {
+        Mailbox mailbox = mailboxes.get(playerUUID);
+        if (mailbox == null) {
+            return;
+        }
+        databaseManager.getExecutor().executeOrRetry(() -> {
+            flush(mailbox);
+            mailboxes.remove(playerUUID, mailbox);
+        });
+    }
+
+    /**
+     * 写回所有储物间（插件关闭时调用）
+     */
+    public void shutdown() {
+        for (Mailbox mailbox : mailboxes.values()) {
+            flush(mailbox);
+        }
+        mailboxes.clear();
+    }
+
+    /**
+     * 写回储物间，同一储物间的写入串行执行
+     */
+    private void flush(Mailbox mailbox) {
+        synchronized (mailbox) {
+            if (!mailbox.dirty) {
+                return;
+            }
+            mailbox.dirty = false;
+            if (mailbox.items.isEmpty()) {
+                deleteRow(mailbox.playerUUID);
+            } else {
+                writeRow(mailbox.playerUUID, mailbox.items.toArray(new ItemStack[0]));
+            }
+        }
+    }
+
+    /**
+     * 读取玩家的储物间，没有记录时返回空列表
+     */
+    private List<ItemStack> readRow(UUID playerUUID) throws SQLException, IOException {
+        String sql = "SELECT items_blob FROM storage_mailbox WHERE uuid = ?";
+        List<ItemStack> items = new ArrayList<>();
+
+        try (Connection conn = databaseManager.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, playerUUID.toString());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    for (ItemStack item : ItemCodec.decode(rs.getBytes("items_blob"))) {
+                        if (item != null) {
+                            items.add(item);
+                        }
+                    }
+                }
+            }
+        }
+
+        return items;
+    }
+
+    private void writeRow(UUID playerUUID, ItemStack[] items) {
+        String sql;
+        if (plugin.getConfigManager().getDatabaseType().equalsIgnoreCase("mysql")) {
+            sql = "INSERT INTO storage_mailbox (uuid, items_blob, updated_at) VALUES (?, ?, ?) " +
+                  "ON DUPLICATE KEY UPDATE items_blob = VALUES(items_blob), updated_at = VALUES(updated_at)";
+        } else {
+            sql = "INSERT OR REPLACE INTO storage_mailbox (uuid, items_blob, updated_at) VALUES (?, ?, ?)";
+        }
+
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, playerUUID.toString());
+            stmt.setBytes(2, ItemCodec.encode(items, plugin.getConfigManager().isItemStorageCompression()));
+            stmt.setLong(3, System.currentTimeMillis());
+            stmt.executeUpdate();
+
+        } catch (SQLException | IOException e) {
+            plugin.getPluginLogger().severe("保存储物间失败！UUID: " + playerUUID);
+            e.printStackTrace();
+        }
+    }
+
+    private void deleteRow(UUID playerUUID) {
+        String sql = "DELETE FROM storage_mailbox WHERE uuid = ?";
+
+        try (Connection conn = databaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, playerUUID.toString());
+            stmt.executeUpdate();
+
+        } catch (SQLException e) {
+            plugin.getPluginLogger().severe("清空储物间失败！UUID: " + playerUUID);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 玩家的储物间，读写时需要在对象上同步
+     */
+    public static final class Mailbox {
+        private final UUID playerUUID;
+        private final List<ItemStack> items;
+        private boolean dirty;
+
+        private Mailbox(UUID playerUUID, List<ItemStack> items) {
+            this.playerUUID = playerUUID;
+            this.items = items;
+        }
+
+        public synchronized int size() {
+            return items.size();
+        }
+
+        /**
+         * 一页的物品副本，from 为起始下标
+         */
+        public synchronized List<ItemStack> page(int from, int count) {
+            List<ItemStack> page = new ArrayList<>(count);
+            for (int i = from; i < items.size() && i < from + count; i++) {
+                page.add(items.get(i).clone());
+            }
+            return page;
+        }
+
+        /**
+         * 取出指定下标的物品，下标无效时返回 null
+         */
+        public synchronized ItemStack remove(int index) {
+            return index >= 0 && index < items.size() ? items.remove(index) : null;
+        }
+
+        /**
+         * 放回物品到指定下标（背包放不下时调用）
+         */
+        public synchronized void insert(int index, ItemStack item) {
+            items.add(Math.min(Math.max(index, 0), items.size()), item);
+        }
+
+        public synchronized void clear() {
+            items.clear();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.redpockets.manager;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 哈希时间轮
+ * 按到期时间把ID放入对应的槽，每次推进只处理当前槽，与登记的总数无关
+ */
+public class TimingWheel {
+
+    private final long tickMillis;
+    private final int mask;
+    private final Queue<Entry>[] buckets;
+    private final Map<String, Entry> entries;
+    // 推进时持有写锁，登记时持有读锁，保证不会登记到正在处理或已处理过的槽
+    private final ReadWriteLock tickLock;
+
+    // 最近一次处理的刻度（毫秒时间 / tickMillis）
+    private volatile long currentTick;
+
+    /**
+     * @param tickMillis 每一刻的毫秒数
+     * @param wheelSize 槽数量，会向上取整为 2 的幂
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, int wheelSize) {
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.buckets = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.entries = new ConcurrentHashMap<>();
+        this.tickLock = new ReentrantReadWriteLock();
+        this.currentTick = System.currentTimeMillis() / tickMillis - 1;
+    }
+
+    /**
+     * 登记ID在 deadline（毫秒时间）到期，已登记的ID会被替换；已过期的在下一刻触发
+     */
+    public void schedule(String id, long deadline) {
+        tickLock.readLock().lock();
+        try {
+            long tick = Math.max(deadline / tickMillis, currentTick + 1);
+            Entry entry = new Entry(id, tick);
+            Entry previous = entries.put(id, entry);
+            if (previous != null) {
+                previous.cancelled = true;
+            }
+            buckets[(int) (tick & mask)].add(entry);
+        } finally {
+            tickLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 取消ID的到期登记
+     */
+    public void cancel(String id) {
+        Entry entry = entries.remove(id);
+        if (entry != null) {
+            entry.cancelled = true;
+        }
+    }
+
+    /**
+     * 推进到当前时间，返回这期间到期的ID
+     */
+    public List<String> advance(long now) {
+        List<String> expired = new ArrayList<>();
+        long targetTick = now / tickMillis;
+
+        while (currentTick < targetTick) {
+            long tick;
+            tickLock.writeLock().lock();
+            try {
+                tick = ++currentTick;
+            } finally {
+                tickLock.writeLock().unlock();
+            }
+
+            Iterator<Entry> iterator = buckets[(int) (tick & mask)].iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.cancelled) {
+                    iterator.remove();
+                } else if (entry.tick <= tick) {
+                    iterator.remove();
+                    if (entries.remove(entry.id, entry)) {
+                        expired.add(entry.id);
+                    }
+                }
+            }
+        }
+
+        return expired;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final String id;
+        private final long tick;
+        private volatile boolean cancelled;
+
+        private Entry(String id, long tick) {
+            this.id = id;
+            this.tick = tick;
+        }
+    }
+}
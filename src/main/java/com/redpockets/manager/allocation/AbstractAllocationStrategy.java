@@ -0,0 +1,63 @@
+package com.redpockets.manager.allocation;
+
+import java.util.SplittableRandom;
+
+/**
+ * 分配策略基类
+ * 先给每份发放下限，再把剩余金额按策略分配到各份，每份追加部分不超过 (上限 - 下限)
+ */
+public abstract class AbstractAllocationStrategy implements AllocationStrategy {
+
+    @Override
+    public final void allocate(long[] shares, long totalCents, long minCents, long maxCents, SplittableRandom random) {
+        int count = shares.length;
+        if (count == 0) {
+            return;
+        }
+
+        long distributable = totalCents - minCents * count;
+        long cap = maxCents - minCents;
+
+        if (count == 1 || distributable == 0) {
+            java.util.Arrays.fill(shares, minCents);
+            shares[0] += distributable;
+            return;
+        }
+
+        distribute(shares, distributable, cap, random);
+
+        for (int i = 0; i < count; i++) {
+            shares[i] += minCents;
+        }
+    }
+
+    /**
+     * 把 distributable 分配到 shares 中，每份在 [0, cap] 之间，总和恰好为 distributable
+     */
+    protected abstract void distribute(long[] shares, long distributable, long cap, SplittableRandom random);
+
+    /**
+     * 将超过 cap 的部分削掉，并从随机位置开始依次补给仍有余量的份额
+     * 调用前需保证总和等于目标值且 shares.length * cap >= 目标值
+     */
+    protected static void fitToCap(long[] shares, long cap, SplittableRandom random) {
+        long overflow = 0;
+        for (int i = 0; i < shares.length; i++) {
+            if (shares[i] > cap) {
+                overflow += shares[i] - cap;
+                shares[i] = cap;
+            }
+        }
+
+        int index = random.nextInt(shares.length);
+        while (overflow > 0) {
+            long room = cap - shares[index];
+            if (room > 0) {
+                long add = Math.min(room, overflow);
+                shares[index] += add;
+                overflow -= add;
+            }
+            index = index + 1 == shares.length ? 0 : index + 1;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.redpockets.manager.allocation;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * 红包金额分配策略
+ * 一次性批量生成全部份额（单位：分），结果总和恰好等于总金额，且每份都在 [minCents, maxCents] 之间
+ */
+public interface AllocationStrategy {
+
+    /**
+     * 生成份额
+     * @param shares 输出数组，长度即份数
+     * @param totalCents 总金额（分）
+     * @param minCents 每份下限（分），调用方保证 shares.length * minCents <= totalCents
+     * @param maxCents 每份上限（分），调用方保证 shares.length * maxCents >= totalCents
+     * @param random 随机源
+     */
+    void allocate(long[] shares, long totalCents, long minCents, long maxCents, SplittableRandom random);
+
+    /**
+     * 策略名称（与 config.yml 中 random-redpocket.algorithm 对应）
+     */
+    String getName();
+
+    /**
+     * 根据配置名称获取策略，未知名称返回 null
+     * 兼容旧配置：WEIGHTED 对应二倍均值，NORMAL 对应截断正态
+     */
+    static AllocationStrategy forName(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        switch (name.trim().toUpperCase(Locale.ROOT)) {
+            case "DOUBLE_MEAN":
+            case "WEIGHTED":
+                return DoubleMeanAllocation.INSTANCE;
+            case "LINE_SEGMENT":
+                return LineSegmentAllocation.INSTANCE;
+            case "TRUNCATED_NORMAL":
+            case "NORMAL":
+                return TruncatedNormalAllocation.INSTANCE;
+            case "EQUAL":
+                return EqualSplitAllocation.INSTANCE;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.redpockets.manager.allocation;
+
+import java.util.SplittableRandom;
+
+/**
+ * 二倍均值法
+ * 每份在 [0, 剩余均值×2] 之间随机，同时保证之后的份额都能落在上限以内，最后一份取剩余全部
+ */
+public final class DoubleMeanAllocation extends AbstractAllocationStrategy {
+
+    public static final DoubleMeanAllocation INSTANCE = new DoubleMeanAllocation();
+
+    private DoubleMeanAllocation() {
+    }
+
+    @Override
+    protected void distribute(long[] shares, long distributable, long cap, SplittableRandom random) {
+        int count = shares.length;
+        long remaining = distributable;
+
+        for (int i = 0; i < count - 1; i++) {
+            int left = count - i;
+            long lower = Math.max(0, remaining - (left - 1) * cap);
+            long upper = Math.min(cap, Math.min(remaining, remaining / left * 2));
+            shares[i] = upper <= lower ? lower : random.nextLong(lower, upper + 1);
+            remaining -= shares[i];
+        }
+        shares[count - 1] = remaining;
+    }
+
+    @Override
+    public String getName() {
+        return "DOUBLE_MEAN";
+    }
+}
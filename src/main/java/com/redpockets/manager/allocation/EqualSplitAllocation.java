@@ -0,0 +1,30 @@
+package com.redpockets.manager.allocation;
+
+import java.util.SplittableRandom;
+
+/**
+ * 平均分配
+ * 每份相同，除不尽的余数每份 1 分分给前几份
+ */
+public final class EqualSplitAllocation extends AbstractAllocationStrategy {
+
+    public static final EqualSplitAllocation INSTANCE = new EqualSplitAllocation();
+
+    private EqualSplitAllocation() {
+    }
+
+    @Override
+    protected void distribute(long[] shares, long distributable, long cap, SplittableRandom random) {
+        int count = shares.length;
+        long base = distributable / count;
+        long remainder = distributable % count;
+        for (int i = 0; i < count; i++) {
+            shares[i] = i < remainder ? base + 1 : base;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "EQUAL";
+    }
+}
@@ -0,0 +1,42 @@
+package com.redpockets.manager.allocation;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 线段切割法
+ * 在 [0, 总额] 上随机取 (份数 - 1) 个切点，相邻切点之间的长度即为每份金额
+ */
+public final class LineSegmentAllocation extends AbstractAllocationStrategy {
+
+    public static final LineSegmentAllocation INSTANCE = new LineSegmentAllocation();
+
+    private LineSegmentAllocation() {
+    }
+
+    @Override
+    protected void distribute(long[] shares, long distributable, long cap, SplittableRandom random) {
+        int count = shares.length;
+
+        // 切点先写入 shares[0..count-2]，排序后原地换算成线段长度
+        for (int i = 0; i < count - 1; i++) {
+            shares[i] = random.nextLong(distributable + 1);
+        }
+        shares[count - 1] = distributable;
+        Arrays.sort(shares, 0, count - 1);
+
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long cut = shares[i];
+            shares[i] = cut - previous;
+            previous = cut;
+        }
+
+        fitToCap(shares, cap, random);
+    }
+
+    @Override
+    public String getName() {
+        return "LINE_SEGMENT";
+    }
+}
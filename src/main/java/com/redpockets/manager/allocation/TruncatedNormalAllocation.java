@@ -0,0 +1,54 @@
+package com.redpockets.manager.allocation;
+
+import java.util.SplittableRandom;
+
+/**
+ * 截断正态分布
+ * 每份以均值为中心、均值一半为标准差取样并截断到 [0, 上限]，再按比例缩放使总和等于总额
+ */
+public final class TruncatedNormalAllocation extends AbstractAllocationStrategy {
+
+    public static final TruncatedNormalAllocation INSTANCE = new TruncatedNormalAllocation();
+
+    private TruncatedNormalAllocation() {
+    }
+
+    @Override
+    protected void distribute(long[] shares, long distributable, long cap, SplittableRandom random) {
+        int count = shares.length;
+        double mean = (double) distributable / count;
+        double deviation = mean / 2;
+
+        // 样本放大 1024 倍存成整数，避免额外分配 double 数组
+        long sampleSum = 0;
+        for (int i = 0; i < count; i++) {
+            double sample = mean + random.nextGaussian() * deviation;
+            sample = Math.max(0, Math.min(cap, sample));
+            shares[i] = (long) (sample * 1024) + 1;
+            sampleSum += shares[i];
+        }
+
+        double scale = (double) distributable / sampleSum;
+        long assigned = 0;
+        for (int i = 0; i < count; i++) {
+            shares[i] = (long) (shares[i] * scale);
+            assigned += shares[i];
+        }
+
+        // 向下取整产生的差额从随机位置开始每份补 1 分
+        long shortfall = distributable - assigned;
+        int index = random.nextInt(count);
+        while (shortfall > 0) {
+            shares[index]++;
+            shortfall--;
+            index = index + 1 == count ? 0 : index + 1;
+        }
+
+        fitToCap(shares, cap, random);
+    }
+
+    @Override
+    public String getName() {
+        return "TRUNCATED_NORMAL";
+    }
+}
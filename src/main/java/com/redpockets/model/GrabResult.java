@@ -0,0 +1,76 @@
+package com.redpockets.model;
+
+/**
+ * 抢红包结果
+ * 由异步抢红包流程返回，描述领取状态以及抢到的金额或物品
+ */
+public final class GrabResult {
+
+    public enum Status {
+        SUCCESS,           // 领取成功
+        NOT_FOUND,         // 红包不存在
+        INVALID,           // 红包已过期或已抢完
+        ALREADY_CLAIMED,   // 已领取过
+        EMPTY,             // 已被抢完
+        ECONOMY_DISABLED,  // 经济系统不可用
+        INVENTORY_FULL,    // 背包已满
+        PAYOUT_PENDING,    // 已领取，金额发放失败，等待补发
+        FAILED             // 其他原因失败
+    }
+
+    private final Status status;
+    private final RedPocket redPocket;
+    private final long amount;       // 单位：分，见 Money；物品红包为 Money.SCALE
+    private final String itemName;
+    private final int itemAmount;
+    private final boolean completed;
+
+    private GrabResult(Status status, RedPocket redPocket, long amount,
+                       String itemName, int itemAmount, boolean completed) {
+        this.status = status;
+        this.redPocket = redPocket;
+        this.amount = amount;
+        this.itemName = itemName;
+        this.itemAmount = itemAmount;
+        this.completed = completed;
+    }
+
+    /**
+     * 金币红包领取成功
+     */
+    public static GrabResult coin(RedPocket redPocket, long amount, boolean completed) {
+        return new GrabResult(Status.SUCCESS, redPocket, amount, null, 0, completed);
+    }
+
+    /**
+     * 物品红包领取成功
+     */
+    public static GrabResult item(RedPocket redPocket, long amount, String itemName, int itemAmount, boolean completed) {
+        return new GrabResult(Status.SUCCESS, redPocket, amount, itemName, itemAmount, completed);
+    }
+
+    /**
+     * 金币红包已领取，但金额发放失败，已记入待发放
+     */
+    public static GrabResult payoutPending(RedPocket redPocket, long amount, boolean completed) {
+        return new GrabResult(Status.PAYOUT_PENDING, redPocket, amount, null, 0, completed);
+    }
+
+    /**
+     * 领取失败
+     */
+    public static GrabResult failure(Status status, RedPocket redPocket) {
+        return new GrabResult(status, redPocket, 0, null, 0, false);
+    }
+
+    public Status getStatus() { return status; }
+    public RedPocket getRedPocket() { return redPocket; }
+    public long getAmount() { return amount; }
+    public String getItemName() { return itemName; }
+    public int getItemAmount() { return itemAmount; }
+    public boolean isCompleted() { return completed; }
+    public boolean isSuccess() { return status == Status.SUCCESS; }
+    // 份额已被该玩家领取（包括等待补发的金额）
+    public boolean isClaimed() { return status == Status.SUCCESS || status == Status.PAYOUT_PENDING; }
+    public boolean isItem() { return itemName != null; }
+}
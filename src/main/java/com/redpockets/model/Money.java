@@ -0,0 +1,67 @@
+package com.redpockets.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 金额工具
+ * 插件内部统一使用 long 表示金额，单位为最小货币单位（分，1 元 = 100 分），
+ * 只在与 Vault 交互时才换算为 double
+ */
+public final class Money {
+
+    /**
+     * 每 1 元对应的最小单位数
+     */
+    public static final long SCALE = 100;
+
+    private Money() {
+    }
+
+    /**
+     * 元 → 分（四舍五入）
+     */
+    public static long fromMajor(double major) {
+        return Math.round(major * SCALE);
+    }
+
+    /**
+     * 分 → 元
+     */
+    public static double toMajor(long minor) {
+        return (double) minor / SCALE;
+    }
+
+    /**
+     * 解析玩家输入的金额（元），最多保留两位小数
+     * @throws NumberFormatException 输入不是有效数字或超出范围
+     */
+    public static long parse(String input) {
+        try {
+            return new BigDecimal(input.trim())
+                .setScale(2, RoundingMode.HALF_UP)
+                .movePointRight(2)
+                .longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("金额超出范围: " + input);
+        }
+    }
+
+    /**
+     * 格式化为两位小数的元，例如 1234 → "12.34"
+     */
+    public static String format(long minor) {
+        long abs = Math.abs(minor);
+        long fraction = abs % SCALE;
+
+        StringBuilder builder = new StringBuilder(24);
+        if (minor < 0) {
+            builder.append('-');
+        }
+        builder.append(abs / SCALE).append('.');
+        if (fraction < 10) {
+            builder.append('0');
+        }
+        return builder.append(fraction).toString();
+    }
+}
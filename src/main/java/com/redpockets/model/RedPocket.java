@@ -14,12 +14,12 @@ public class RedPocket implements ConfigurationSerializable {
     private final String id;
     private final UUID sender;
     private final RedPocketType type;
-    private final double totalAmount;
+    private final long totalAmount;   // 单位：分，见 Money
     private final int count;
     private final String note;
     private final long createdAt;
     private final long expiresAt;
-    private boolean isClaimed;
+    private volatile boolean isClaimed;
 
     /**
      * 红包类型
@@ -30,7 +30,7 @@ public class RedPocket implements ConfigurationSerializable {
         ITEM      // 物品红包
     }
 
-    public RedPocket(String id, UUID sender, RedPocketType type, double totalAmount,
+    public RedPocket(String id, UUID sender, RedPocketType type, long totalAmount,
                      int count, String note, long createdAt, long expiresAt) {
         this.id = id;
         this.sender = sender;
@@ -47,7 +47,7 @@ public class RedPocket implements ConfigurationSerializable {
         this.id = (String) map.get("id");
         this.sender = UUID.fromString((String) map.get("sender"));
         this.type = RedPocketType.valueOf((String) map.get("type"));
-        this.totalAmount = (Double) map.get("totalAmount");
+        this.totalAmount = ((Number) map.get("totalAmount")).longValue();
         this.count = (Integer) map.get("count");
         this.note = (String) map.get("note");
         this.createdAt = ((Number) map.get("createdAt")).longValue();
@@ -61,7 +61,7 @@ public class RedPocket implements ConfigurationSerializable {
     public String getId() { return id; }
     public UUID getSender() { return sender; }
     public RedPocketType getType() { return type; }
-    public double getTotalAmount() { return totalAmount; }
+    public long getTotalAmount() { return totalAmount; }
     public int getCount() { return count; }
     public String getNote() { return note; }
     public long getCreatedAt() { return createdAt; }
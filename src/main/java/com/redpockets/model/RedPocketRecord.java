@@ -14,10 +14,10 @@ public class RedPocketRecord implements ConfigurationSerializable {
     private final String id;
     private final String redPocketId;
     private final UUID claimer;
-    private final double amount;
+    private final long amount;   // 单位：分，见 Money
     private final long claimedAt;
 
-    public RedPocketRecord(String id, String redPocketId, UUID claimer, double amount, long claimedAt) {
+    public RedPocketRecord(String id, String redPocketId, UUID claimer, long amount, long claimedAt) {
         this.id = id;
         this.redPocketId = redPocketId;
         this.claimer = claimer;
@@ -29,7 +29,7 @@ public class RedPocketRecord implements ConfigurationSerializable {
         this.id = (String) map.get("id");
         this.redPocketId = (String) map.get("redPocketId");
         this.claimer = UUID.fromString((String) map.get("claimer"));
-        this.amount = (Double) map.get("amount");
+        this.amount = ((Number) map.get("amount")).longValue();
         this.claimedAt = ((Number) map.get("claimedAt")).longValue();
     }
 
@@ -37,7 +37,7 @@ public class RedPocketRecord implements ConfigurationSerializable {
     public String getId() { return id; }
     public String getRedPocketId() { return redPocketId; }
     public UUID getClaimer() { return claimer; }
-    public double getAmount() { return amount; }
+    public long getAmount() { return amount; }
     public long getClaimedAt() { return claimedAt; }
 
     @Override
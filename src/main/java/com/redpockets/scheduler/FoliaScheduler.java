@@ -6,22 +6,46 @@ import org.bukkit.Location;
 import org.bukkit.entity.Entity;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Folia 调度器适配器
- * 为 Folia 和标准服务器提供统一的调度接口
- * 使用反射避免硬依赖 Folia API
+ * 为 Folia 和标准服务器提供统一的调度接口，所有调度方法都返回可取消的任务句柄
+ * Folia API 的方法在构造时查找一次并缓存为方法句柄，调度时不再使用反射
  */
 public class FoliaScheduler {
 
+    private static final String FOLIA_PACKAGE = "io.papermc.paper.threadedregions.scheduler.";
+
     private final RedPocketsPlugin plugin;
     private boolean isFolia;
     private final BukkitScheduler scheduler;
-    private Object regionScheduler;
-    private Object asyncScheduler;
-    private Object globalRegionScheduler;
+
+    // Folia 调度器方法，调度器实例已绑定为第一个参数
+    private MethodHandle asyncRunNow;           // (Plugin, Consumer) -> ScheduledTask
+    private MethodHandle asyncRunDelayed;       // (Plugin, Consumer, long, TimeUnit) -> ScheduledTask
+    private MethodHandle asyncCancelTasks;      // (Plugin)
+    private MethodHandle globalRun;             // (Plugin, Consumer) -> ScheduledTask
+    private MethodHandle globalRunDelayed;      // (Plugin, Consumer, long) -> ScheduledTask
+    private MethodHandle globalRunAtFixedRate;  // (Plugin, Consumer, long, long) -> ScheduledTask
+    private MethodHandle globalCancelTasks;     // (Plugin)
+    private MethodHandle regionRun;             // (Plugin, Location, Consumer) -> ScheduledTask
+    private MethodHandle entityGetScheduler;    // (Entity) -> EntityScheduler
+    private MethodHandle entityRun;             // (EntityScheduler, Plugin, Consumer, Runnable) -> ScheduledTask
+    private MethodHandle entityRunDelayed;      // (EntityScheduler, Plugin, Consumer, Runnable, long) -> ScheduledTask
+    private MethodHandle taskCancel;            // (ScheduledTask) -> CancelledState
+    private MethodHandle taskIsCancelled;       // (ScheduledTask) -> boolean
+
+    // Folia 的区域和实体调度器没有按插件取消的接口，记录尚未执行的任务以便统一取消
+    private final Set<FoliaTask> pendingTasks = ConcurrentHashMap.newKeySet();
 
     public FoliaScheduler(RedPocketsPlugin plugin) {
         this.plugin = plugin;
@@ -32,240 +56,398 @@ public class FoliaScheduler {
 
         if (isFolia) {
             try {
-                Class<?> serverClass = Bukkit.getServer().getClass();
-                regionScheduler = serverClass.getMethod("getRegionScheduler").invoke(Bukkit.getServer());
-                asyncScheduler = serverClass.getMethod("getAsyncScheduler").invoke(Bukkit.getServer());
-                globalRegionScheduler = serverClass.getMethod("getGlobalRegionScheduler").invoke(Bukkit.getServer());
-            } catch (Exception e) {
+                lookupFoliaMethods();
+            } catch (Throwable e) {
                 plugin.getPluginLogger().warning("Folia API检测失败，降级为标准模式");
                 isFolia = false;
             }
         }
     }
 
+    private void lookupFoliaMethods() throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        Class<?> taskClass = Class.forName(FOLIA_PACKAGE + "ScheduledTask");
+        Class<?> asyncClass = Class.forName(FOLIA_PACKAGE + "AsyncScheduler");
+        Class<?> globalClass = Class.forName(FOLIA_PACKAGE + "GlobalRegionScheduler");
+        Class<?> regionClass = Class.forName(FOLIA_PACKAGE + "RegionScheduler");
+        Class<?> entityClass = Class.forName(FOLIA_PACKAGE + "EntityScheduler");
+        Class<?> cancelledStateClass = Class.forName(FOLIA_PACKAGE + "ScheduledTask$CancelledState");
+
+        Object server = Bukkit.getServer();
+        Class<?> serverClass = server.getClass();
+        Object asyncScheduler = lookup.findVirtual(serverClass, "getAsyncScheduler", MethodType.methodType(asyncClass))
+            .invoke(server);
+        Object globalScheduler = lookup.findVirtual(serverClass, "getGlobalRegionScheduler", MethodType.methodType(globalClass))
+            .invoke(server);
+        Object regionScheduler = lookup.findVirtual(serverClass, "getRegionScheduler", MethodType.methodType(regionClass))
+            .invoke(server);
+
+        asyncRunNow = lookup.findVirtual(asyncClass, "runNow",
+                MethodType.methodType(taskClass, Plugin.class, Consumer.class))
+            .bindTo(asyncScheduler);
+        asyncRunDelayed = lookup.findVirtual(asyncClass, "runDelayed",
+                MethodType.methodType(taskClass, Plugin.class, Consumer.class, long.class, TimeUnit.class))
+            .bindTo(asyncScheduler);
+        asyncCancelTasks = lookup.findVirtual(asyncClass, "cancelTasks",
+                MethodType.methodType(void.class, Plugin.class))
+            .bindTo(asyncScheduler);
+
+        globalRun = lookup.findVirtual(globalClass, "run",
+                MethodType.methodType(taskClass, Plugin.class, Consumer.class))
+            .bindTo(globalScheduler);
+        globalRunDelayed = lookup.findVirtual(globalClass, "runDelayed",
+                MethodType.methodType(taskClass, Plugin.class, Consumer.class, long.class))
+            .bindTo(globalScheduler);
+        globalRunAtFixedRate = lookup.findVirtual(globalClass, "runAtFixedRate",
+                MethodType.methodType(taskClass, Plugin.class, Consumer.class, long.class, long.class))
+            .bindTo(globalScheduler);
+        globalCancelTasks = lookup.findVirtual(globalClass, "cancelTasks",
+                MethodType.methodType(void.class, Plugin.class))
+            .bindTo(globalScheduler);
+
+        regionRun = lookup.findVirtual(regionClass, "run",
+                MethodType.methodType(taskClass, Plugin.class, Location.class, Consumer.class))
+            .bindTo(regionScheduler);
+
+        entityGetScheduler = lookup.findVirtual(Entity.class, "getScheduler", MethodType.methodType(entityClass));
+        entityRun = lookup.findVirtual(entityClass, "run",
+            MethodType.methodType(taskClass, Plugin.class, Consumer.class, Runnable.class));
+        entityRunDelayed = lookup.findVirtual(entityClass, "runDelayed",
+            MethodType.methodType(taskClass, Plugin.class, Consumer.class, Runnable.class, long.class));
+
+        taskCancel = lookup.findVirtual(taskClass, "cancel", MethodType.methodType(cancelledStateClass));
+        taskIsCancelled = lookup.findVirtual(taskClass, "isCancelled", MethodType.methodType(boolean.class));
+    }
+
+    /**
+     * 当前线程是否为服务器 tick 线程
+     * Folia 的区域线程不是主线程，按线程类型（TickThread 及其子类）判断
+     */
+    public boolean isTickThread() {
+        if (Bukkit.isPrimaryThread()) {
+            return true;
+        }
+        if (!isFolia) {
+            return false;
+        }
+        for (Class<?> type = Thread.currentThread().getClass(); type != null; type = type.getSuperclass()) {
+            if (type.getSimpleName().equals("TickThread")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 运行异步任务
      */
-    public void runAsync(Runnable task) {
+    public TaskHandle runAsync(Runnable task) {
         if (!plugin.isEnabled()) {
             task.run();
-            return;
+            return TaskHandle.NONE;
         }
 
-        if (isFolia && asyncScheduler != null) {
+        if (isFolia) {
             try {
-                asyncScheduler.getClass()
-                    .getMethod("runNow", Plugin.class, Runnable.class)
-                    .invoke(asyncScheduler, plugin, task);
-            } catch (Exception e) {
-                scheduler.runTaskAsynchronously(plugin, task);
+                return new FoliaTask(asyncRunNow.invoke((Plugin) plugin, consumer(task)));
+            } catch (Throwable e) {
+                return new BukkitTaskHandle(scheduler.runTaskAsynchronously(plugin, task));
             }
-        } else {
-            scheduler.runTaskAsynchronously(plugin, task);
         }
+        return new BukkitTaskHandle(scheduler.runTaskAsynchronously(plugin, task));
     }
 
     /**
      * 运行延迟异步任务
      */
-    public void runAsyncLater(Runnable task, long delayTicks) {
+    public TaskHandle runAsyncLater(Runnable task, long delayTicks) {
         if (!plugin.isEnabled()) {
             task.run();
-            return;
+            return TaskHandle.NONE;
         }
 
-        long delayMillis = delayTicks * 50L;
-
-        if (isFolia && asyncScheduler != null) {
+        if (isFolia) {
             try {
-                asyncScheduler.getClass()
-                    .getMethod("runDelayed", Plugin.class, Runnable.class, long.class, TimeUnit.class)
-                    .invoke(asyncScheduler, plugin, task, delayMillis, TimeUnit.MILLISECONDS);
-            } catch (Exception e) {
-                scheduler.runTaskLaterAsynchronously(plugin, task, delayTicks);
+                long delayMillis = delayTicks * 50L;
+                return new FoliaTask(asyncRunDelayed.invoke((Plugin) plugin, consumer(task),
+                    delayMillis, TimeUnit.MILLISECONDS));
+            } catch (Throwable e) {
+                return new BukkitTaskHandle(scheduler.runTaskLaterAsynchronously(plugin, task, delayTicks));
             }
-        } else {
-            scheduler.runTaskLaterAsynchronously(plugin, task, delayTicks);
         }
+        return new BukkitTaskHandle(scheduler.runTaskLaterAsynchronously(plugin, task, delayTicks));
     }
 
     /**
      * 运行主线程任务
      */
-    public void runSync(Runnable task) {
-        if (isFolia) {
-            runFoliaSync(task);
-        } else {
-            scheduler.runTask(plugin, task);
+    public TaskHandle runSync(Runnable task) {
+        if (!isFolia) {
+            return new BukkitTaskHandle(scheduler.runTask(plugin, task));
+        }
+
+        try {
+            return new FoliaTask(globalRun.invoke((Plugin) plugin, consumer(task)));
+        } catch (Throwable e) {
+            plugin.getPluginLogger().severe("Folia 主线程任务调度失败: " + e.getMessage());
+            e.printStackTrace();
+            return TaskHandle.NONE;
         }
     }
 
     /**
      * 延迟运行主线程任务（tick）
      */
-    public void runSyncLater(Runnable task, long delayTicks) {
-        if (isFolia) {
-            runFoliaSyncLater(task, delayTicks);
-        } else {
-            scheduler.runTaskLater(plugin, task, delayTicks);
+    public TaskHandle runSyncLater(Runnable task, long delayTicks) {
+        if (!isFolia) {
+            return new BukkitTaskHandle(scheduler.runTaskLater(plugin, task, delayTicks));
+        }
+
+        try {
+            // Folia 的延迟至少为 1 tick
+            return new FoliaTask(globalRunDelayed.invoke((Plugin) plugin, consumer(task), Math.max(1, delayTicks)));
+        } catch (Throwable e) {
+            plugin.getPluginLogger().severe("Folia 延迟主线程任务调度失败: " + e.getMessage());
+            e.printStackTrace();
+            return TaskHandle.NONE;
         }
     }
 
     /**
      * 重复运行主线程任务
      */
-    public void runSyncTimer(Runnable task, long delayTicks, long periodTicks) {
-        if (isFolia) {
-            runFoliaSyncTimer(task, delayTicks, periodTicks);
-        } else {
-            scheduler.runTaskTimer(plugin, task, delayTicks, periodTicks);
+    public TaskHandle runSyncTimer(Runnable task, long delayTicks, long periodTicks) {
+        if (!isFolia) {
+            return new BukkitTaskHandle(scheduler.runTaskTimer(plugin, task, delayTicks, periodTicks));
         }
-    }
 
-    /**
-     * Folia 立即主线程任务
-     */
-    private void runFoliaSync(Runnable task) {
         try {
-            if (globalRegionScheduler == null) {
-                throw new IllegalStateException("GlobalRegionScheduler not initialized");
-            }
-            globalRegionScheduler.getClass()
-                .getMethod("execute", Plugin.class, Runnable.class)
-                .invoke(globalRegionScheduler, plugin, task);
-        } catch (Exception e) {
-            plugin.getPluginLogger().severe("Folia 主线程任务调度失败: " + e.getMessage());
+            return new FoliaTask(globalRunAtFixedRate.invoke((Plugin) plugin, consumer(task),
+                Math.max(1, delayTicks), Math.max(1, periodTicks)));
+        } catch (Throwable e) {
+            plugin.getPluginLogger().severe("Folia 定时主线程任务调度失败: " + e.getMessage());
             e.printStackTrace();
+            return TaskHandle.NONE;
         }
     }
 
     /**
-     * Folia 延迟主线程任务
+     * 运行位置相关的主线程任务
      */
-    private void runFoliaSyncLater(Runnable task, long delayTicks) {
+    public TaskHandle runAtLocation(Location location, Runnable task) {
+        if (!isFolia) {
+            return runSync(task);
+        }
+
+        FoliaTask handle = new FoliaTask();
+        pendingTasks.add(handle);
         try {
-            if (globalRegionScheduler == null) {
-                throw new IllegalStateException("GlobalRegionScheduler not initialized");
-            }
-            long delayMillis = delayTicks * 50L;
-            globalRegionScheduler.getClass()
-                .getMethod("runDelayed", Plugin.class, Runnable.class, long.class, TimeUnit.class)
-                .invoke(globalRegionScheduler, plugin, task, delayMillis, TimeUnit.MILLISECONDS);
-        } catch (Exception e) {
-            plugin.getPluginLogger().severe("Folia 延迟主线程任务调度失败: " + e.getMessage());
+            handle.bind(regionRun.invoke((Plugin) plugin, location, trackedTask(handle, task)));
+            return handle;
+        } catch (Throwable e) {
+            pendingTasks.remove(handle);
+            plugin.getPluginLogger().severe("Folia 位置任务调度失败: " + e.getMessage());
             e.printStackTrace();
+            return TaskHandle.NONE;
         }
     }
 
     /**
-     * Folia 重复主线程任务
+     * 运行实体相关的主线程任务
+     */
+    public TaskHandle runForEntity(Entity entity, Runnable task) {
+        return runForEntity(entity, task, null);
+    }
+
+    /**
+     * 运行实体相关的主线程任务
+     * @param retired Folia 上实体在任务执行前被移除（如玩家退出）时改为执行该回调，可为 null；
+     *                标准服务器上任务总会执行
      */
-    private void runFoliaSyncTimer(Runnable task, long delayTicks, long periodTicks) {
+    public TaskHandle runForEntity(Entity entity, Runnable task, Runnable retired) {
+        if (!isFolia) {
+            return runSync(task);
+        }
+
+        FoliaTask handle = new FoliaTask();
+        pendingTasks.add(handle);
         try {
-            if (globalRegionScheduler == null) {
-                throw new IllegalStateException("GlobalRegionScheduler not initialized");
-            }
-            long delayMillis = delayTicks * 50L;
-            long periodMillis = periodTicks * 50L;
-            globalRegionScheduler.getClass()
-                .getMethod("runAtFixedRate", Plugin.class, Runnable.class, long.class, long.class, TimeUnit.class)
-                .invoke(globalRegionScheduler, plugin, task, delayMillis, periodMillis, TimeUnit.MILLISECONDS);
-        } catch (Exception e) {
-            plugin.getPluginLogger().severe("Folia 定时主线程任务调度失败: " + e.getMessage());
+            Object entityScheduler = entityGetScheduler.invoke(entity);
+            Object scheduled = entityRun.invoke(entityScheduler, (Plugin) plugin, trackedTask(handle, task),
+                trackedRetired(handle, retired));
+            return bindOrRetire(handle, scheduled, retired);
+        } catch (Throwable e) {
+            pendingTasks.remove(handle);
+            plugin.getPluginLogger().severe("Folia 实体任务调度失败: " + e.getMessage());
             e.printStackTrace();
+            return TaskHandle.NONE;
         }
     }
 
     /**
-     * 运行位置相关的主线程任务
+     * 延迟运行实体相关的主线程任务
      */
-    public void runAtLocation(Location location, Runnable task) {
-        if (isFolia) {
-            runFoliaAtLocation(location, task);
-        } else {
-            runSync(task);
-        }
+    public TaskHandle runForEntityLater(Entity entity, Runnable task, long delayTicks) {
+        return runForEntityLater(entity, task, null, delayTicks);
     }
 
     /**
-     * Folia 位置相关任务
+     * 延迟运行实体相关的主线程任务
+     * @param retired Folia 上实体在任务执行前被移除时改为执行该回调，可为 null
      */
-    private void runFoliaAtLocation(Location location, Runnable task) {
+    public TaskHandle runForEntityLater(Entity entity, Runnable task, Runnable retired, long delayTicks) {
+        if (!isFolia) {
+            return runSyncLater(task, delayTicks);
+        }
+
+        FoliaTask handle = new FoliaTask();
+        pendingTasks.add(handle);
         try {
-            if (regionScheduler == null) {
-                throw new IllegalStateException("RegionScheduler not initialized");
-            }
-            regionScheduler.getClass()
-                .getMethod("execute", Plugin.class, Runnable.class, Location.class)
-                .invoke(regionScheduler, plugin, task, location);
-        } catch (Exception e) {
-            plugin.getPluginLogger().severe("Folia 位置任务调度失败: " + e.getMessage());
+            Object entityScheduler = entityGetScheduler.invoke(entity);
+            Object scheduled = entityRunDelayed.invoke(entityScheduler, (Plugin) plugin, trackedTask(handle, task),
+                trackedRetired(handle, retired), Math.max(1, delayTicks));
+            return bindOrRetire(handle, scheduled, retired);
+        } catch (Throwable e) {
+            pendingTasks.remove(handle);
+            plugin.getPluginLogger().severe("Folia 延迟实体任务调度失败: " + e.getMessage());
             e.printStackTrace();
+            return TaskHandle.NONE;
         }
     }
 
     /**
-     * 运行实体相关的主线程任务
+     * 取消所有任务
      */
-    public void runForEntity(Entity entity, Runnable task) {
-        if (isFolia) {
-            runFoliaForEntity(entity, task);
-        } else {
-            runSync(task);
+    public void cancelAllTasks() {
+        if (!isFolia) {
+            scheduler.cancelTasks(plugin);
+            return;
+        }
+
+        try {
+            asyncCancelTasks.invoke((Plugin) plugin);
+            globalCancelTasks.invoke((Plugin) plugin);
+        } catch (Throwable e) {
+            plugin.getPluginLogger().severe("Folia 取消任务失败: " + e.getMessage());
+            e.printStackTrace();
         }
+        for (FoliaTask task : pendingTasks) {
+            task.cancel();
+        }
+        pendingTasks.clear();
+    }
+
+    private static Consumer<Object> consumer(Runnable task) {
+        return scheduledTask -> task.run();
     }
 
     /**
-     * 延迟运行实体相关的主线程任务
+     * 执行后从待执行集合中移除的任务
      */
-    public void runForEntityLater(Entity entity, Runnable task, long delayTicks) {
-        if (isFolia) {
-            runFoliaForEntityLater(entity, task, delayTicks);
-        } else {
-            runSyncLater(task, delayTicks);
+    private Consumer<Object> trackedTask(FoliaTask handle, Runnable task) {
+        return scheduledTask -> {
+            pendingTasks.remove(handle);
+            task.run();
+        };
+    }
+
+    private Runnable trackedRetired(FoliaTask handle, Runnable retired) {
+        if (retired == null) {
+            return () -> pendingTasks.remove(handle);
         }
+        return () -> {
+            pendingTasks.remove(handle);
+            retired.run();
+        };
     }
 
     /**
-     * Folia 实体相关任务
+     * 实体已被移除时 Folia 不会调度任务也不会调用回调，此处直接执行回调
      */
-    private void runFoliaForEntity(Entity entity, Runnable task) {
-        try {
-            Class<?> schedulerClass = Class.forName("io.papermc.paper.threadedregions.scheduler.EntityScheduler");
-            Object scheduler = entity.getClass().getMethod("getScheduler").invoke(entity);
-
-            schedulerClass.getMethod("run", Plugin.class, Runnable.class, Object.class, long.class)
-                .invoke(scheduler, plugin, task, null, 1L);
-        } catch (Exception e) {
-            plugin.getPluginLogger().severe("Folia 实体任务调度失败: " + e.getMessage());
-            e.printStackTrace();
+    private TaskHandle bindOrRetire(FoliaTask handle, Object scheduled, Runnable retired) {
+        if (scheduled == null) {
+            pendingTasks.remove(handle);
+            if (retired != null) {
+                retired.run();
+            }
+            return TaskHandle.NONE;
         }
+        handle.bind(scheduled);
+        return handle;
     }
 
     /**
-     * Folia 延迟实体相关任务
+     * 标准服务器任务句柄
      */
-    private void runFoliaForEntityLater(Entity entity, Runnable task, long delayTicks) {
-        try {
-            Class<?> schedulerClass = Class.forName("io.papermc.paper.threadedregions.scheduler.EntityScheduler");
-            Object scheduler = entity.getClass().getMethod("getScheduler").invoke(entity);
+    private static final class BukkitTaskHandle implements TaskHandle {
+        private final BukkitTask task;
 
-            long delayMillis = delayTicks * 50L;
-            schedulerClass.getMethod("runDelayed", Plugin.class, Runnable.class, long.class, TimeUnit.class)
-                .invoke(scheduler, plugin, task, delayMillis, TimeUnit.MILLISECONDS);
-        } catch (Exception e) {
-            plugin.getPluginLogger().severe("Folia 延迟实体任务调度失败: " + e.getMessage());
-            e.printStackTrace();
+        private BukkitTaskHandle(BukkitTask task) {
+            this.task = task;
+        }
+
+        @Override
+        public void cancel() {
+            task.cancel();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return task.isCancelled();
         }
     }
 
     /**
-     * 取消所有任务
+     * Folia 任务句柄，包装 ScheduledTask
      */
-    public void cancelAllTasks() {
-        if (!isFolia) {
-            scheduler.cancelTasks(plugin);
+    private final class FoliaTask implements TaskHandle {
+        private volatile Object task;
+        // 在 ScheduledTask 返回前被取消时，绑定后立即取消
+        private volatile boolean cancelled;
+
+        private FoliaTask() {
+        }
+
+        private FoliaTask(Object task) {
+            this.task = task;
+        }
+
+        private void bind(Object task) {
+            this.task = task;
+            if (cancelled) {
+                cancelScheduled(task);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            pendingTasks.remove(this);
+            Object scheduled = task;
+            if (scheduled != null) {
+                cancelScheduled(scheduled);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            Object scheduled = task;
+            if (scheduled == null) {
+                return cancelled;
+            }
+            try {
+                return (boolean) taskIsCancelled.invoke(scheduled);
+            } catch (Throwable e) {
+                return cancelled;
+            }
+        }
+
+        private void cancelScheduled(Object scheduled) {
+            try {
+                taskCancel.invoke(scheduled);
+            } catch (Throwable e) {
+                plugin.getPluginLogger().warning("取消 Folia 任务失败: " + e.getMessage());
+            }
         }
-        // Folia会自动管理任务生命周期，无需手动取消
     }
 }
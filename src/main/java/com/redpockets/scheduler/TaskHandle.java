@@ -0,0 +1,29 @@
+package com.redpockets.scheduler;
+
+/**
+ * 已调度任务的句柄
+ * 标准服务器和 Folia 上的任务都可以通过它取消
+ */
+public interface TaskHandle {
+
+    /**
+     * 已直接执行或未能调度的任务，取消不产生任何效果
+     */
+    TaskHandle NONE = new TaskHandle() {
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * 取消任务，已执行的任务不受影响；重复任务不再执行
+     */
+    void cancel();
+
+    boolean isCancelled();
+}